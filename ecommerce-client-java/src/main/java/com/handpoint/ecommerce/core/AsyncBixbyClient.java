@@ -0,0 +1,283 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.Config;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.messages.ErrorMessage;
+import com.handpoint.ecommerce.messages.payment.*;
+import com.handpoint.ecommerce.messages.token.Token;
+import com.handpoint.ecommerce.messages.token.TokenRequest;
+import org.apache.http.HttpResponse;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Non-blocking counterpart of BixbyClient. Every request returns a future that is completed when the
+ * Handpoint E-Commerce web service responds, so no thread waits for the round trip.
+ * <p/>
+ * Futures complete exceptionally with HpServerError if the web service returns an error response and with
+ * HpECommerceException, carrying the terminalDateTime, if the request could not be sent or the response not read.
+ * <p/>
+ * Responses are decoded and futures completed on the client's completion threads, never on the event loop, so
+ * stages chained with thenApply or thenAccept do not hold up the I/O of other requests. Stages doing blocking work
+ * should still use the *Async variants with an executor of their own, they would otherwise hold up other responses.
+ * <p/>
+ * Requests are screened and counted in the wire metrics like those of BixbyClient, but none of its other request
+ * handling applies: there is no retry policy, no circuit breakers, no concurrency or rate limiters, no transaction
+ * journal, idempotency store or auto canceller and no token cache. Each request is sent once, with the default
+ * timeout, and a failed one has to be cancelled or sent again by the caller.
+ */
+public class AsyncBixbyClient implements Closeable {
+
+    private static final AtomicInteger CLIENT_NUMBER = new AtomicInteger();
+
+    private final AsyncHttpClient httpClient;
+    private final MessageCodec messageCodec;
+    private final WireMetrics wireMetrics = new WireMetrics();
+    private CardScreener cardScreener;
+    private final Environment environment;
+    private final ExecutorService completionExecutor;
+
+
+    /**
+     * Constructor for the client. Sets the environment and shared secret.
+     *
+     * @param sharedSecret to authenticate with Handpoint E-Commerce web service
+     * @param environment  the environment which is used. Live or Test
+     */
+    public AsyncBixbyClient(String sharedSecret, Environment environment) {
+        this.environment = environment;
+        int maxTotal = ConnectionPool.DEFAULT_MAX_TOTAL;
+        int maxPerHost = ConnectionPool.DEFAULT_MAX_PER_HOST;
+        int connectTimeout = ConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS;
+        long timeout = Timeouts.DEFAULT_TIMEOUT_MILLIS;
+        try {
+            maxTotal = Config.getInstance().getHttpPoolMaxTotal(maxTotal);
+            maxPerHost = Config.getInstance().getHttpPoolMaxPerHost(maxPerHost);
+            connectTimeout = Config.getInstance().getConnectTimeoutMillis(connectTimeout);
+            timeout = Config.getInstance().getTimeoutMillis(timeout);
+        } catch (HpServerError e) {
+            // Use the defaults
+        }
+        int threads = Runtime.getRuntime().availableProcessors();
+        httpClient = new AsyncHttpClient(sharedSecret, threads, maxTotal, maxPerHost, connectTimeout, (int) timeout);
+        completionExecutor = Executors.newFixedThreadPool(threads, new CompletionThreadFactory());
+        messageCodec = BixbyClient.createMessageCodec();
+        if (BixbyClient.isCardScreeningEnabled()) {
+            cardScreener = new CardScreener();
+        }
+    }
+
+    protected CompletableFuture<Authorization> sendAuthorizationRequest(AuthorizationRequest authorizationRequest, String cardAcceptor) throws InvalidMessageException {
+        screen(authorizationRequest.getCardNumber(), authorizationRequest.getExpiryDateMMYY());
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(AuthorizationRequest.class, authorizationRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getAuthorizationUrl(cardAcceptor, environment), body, terminalDateTime),
+                    terminalDateTime, Authorization.class, "Authorization declined.", 200, 403);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Payment> sendPaymentRequest(PaymentRequest paymentRequest, String cardAcceptor) throws InvalidMessageException {
+        screen(paymentRequest.getCardNumber(), paymentRequest.getExpiryDateMMYY());
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(PaymentRequest.class, paymentRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getPaymentUrl(cardAcceptor, environment), body, terminalDateTime),
+                    terminalDateTime, Payment.class, "Payment declined.", 200, 403);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Refund> sendRefundRequest(RefundRequest refundRequest, String cardAcceptor) throws InvalidMessageException {
+        // A card that has expired since the purchase can still be refunded, only the card number is checked
+        screen(refundRequest.getCardNumber(), null);
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(RefundRequest.class, refundRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getRefundUrl(cardAcceptor, environment), body, terminalDateTime),
+                    terminalDateTime, Refund.class, "Refund declined.", 200, 403);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Reversal> sendReversalRequest(ReversalRequest reversalRequest, String cardAcceptor) {
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(ReversalRequest.class, reversalRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getReversalUrl(cardAcceptor, environment), body, terminalDateTime),
+                    terminalDateTime, Reversal.class, "Reversing declined.", 200, 403);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Cancellation> sendCancellationRequest(CancellationRequest cancellationRequest, String cardAcceptor) {
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(CancellationRequest.class, cancellationRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getCancellationUrl(cardAcceptor, environment), body, terminalDateTime),
+                    terminalDateTime, Cancellation.class, "Cancellation declined.", 200);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Token> sendPutToken(TokenRequest tokenRequest, String cardAcceptor, String token) throws InvalidMessageException {
+        screen(tokenRequest.getCardNumber(), tokenRequest.getExpiryDateMMYY());
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(TokenRequest.class, tokenRequest);
+            return readResponse(httpClient.sendPutRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), body, terminalDateTime),
+                    terminalDateTime, Token.class, "Error creating token.", 201);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Token> sendPostToken(TokenRequest tokenRequest, String cardAcceptor, String token) throws InvalidMessageException {
+        screen(tokenRequest.getCardNumber(), tokenRequest.getExpiryDateMMYY());
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            byte[] body = encode(TokenRequest.class, tokenRequest);
+            return readResponse(httpClient.sendPostRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), body, terminalDateTime),
+                    terminalDateTime, Token.class, "Error editing token.", 200);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Token> sendGetToken(String token, String cardAcceptor) {
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            return readResponse(httpClient.sendGetRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), terminalDateTime),
+                    terminalDateTime, Token.class, "Error getting token.", 200);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    protected CompletableFuture<Token> sendDeleteToken(String token, String cardAcceptor) {
+        String terminalDateTime = RequestContext.create().getTerminalDateTime();
+        try {
+            return readResponse(httpClient.sendDeleteRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), terminalDateTime),
+                    terminalDateTime, Token.class, "Error deleting token.", 200);
+        } catch (Exception e) {
+            return failed(new HpECommerceException("Error when sending request", e, terminalDateTime));
+        }
+    }
+
+    /**
+     * Sets the screener used to check card data before requests are sent. Screening is off unless the
+     * com.handpoint.bixby.card.screening property is true.
+     *
+     * @param cardScreener the screener to use, or null to turn screening off
+     */
+    public void setCardScreener(CardScreener cardScreener) {
+        this.cardScreener = cardScreener;
+    }
+
+    /**
+     * @return sizes of the request bodies sent by this client
+     */
+    public WireMetrics getWireMetrics() {
+        return wireMetrics;
+    }
+
+    /**
+     * @return the underlying non-blocking http client
+     */
+    public AsyncHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Stops the event-loop and completion threads and closes all connections.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            httpClient.close();
+        } finally {
+            completionExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Checks the card data with the card screener, if card screening is enabled. Refused card data is thrown
+     * directly, like a request that fails validation, and nothing is sent.
+     */
+    private void screen(String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        if (cardScreener != null) {
+            cardScreener.screen(cardNumber, expiryDateMMYY);
+        }
+    }
+
+    /**
+     * Encodes a request body with the message codec and records its size in the wire metrics.
+     */
+    private <T> byte[] encode(Class<T> messageType, T message) throws HpECommerceException {
+        byte[] body = messageCodec.encode(messageType, message);
+        wireMetrics.record(messageType, body.length);
+        return body;
+    }
+
+    /**
+     * Converts the response once it arrives. Responses with one of the accepted statuses are converted to the
+     * response type, all other responses to an HpServerError with the error message returned by the server.
+     */
+    private <T> CompletableFuture<T> readResponse(CompletableFuture<HttpResponse> request, final String terminalDateTime,
+                                                  final Class<T> responseType, final String errorMessage, final int... acceptedStatuses) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        request.whenCompleteAsync((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(new HpECommerceException("Error when sending request", error, terminalDateTime));
+                return;
+            }
+            try {
+                int status = response.getStatusLine().getStatusCode();
+                for (int acceptedStatus : acceptedStatuses) {
+                    if (status == acceptedStatus) {
+                        result.complete(messageCodec.decode(responseType, response.getEntity().getContent()));
+                        return;
+                    }
+                }
+                result.completeExceptionally(new HpServerError(errorMessage,
+                        messageCodec.decode(ErrorMessage.class, response.getEntity().getContent()), status));
+            } catch (Exception e) {
+                result.completeExceptionally(new HpECommerceException("Error when reading response", e, terminalDateTime));
+            }
+        }, completionExecutor);
+        return result;
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(e);
+        return future;
+    }
+
+    private static class CompletionThreadFactory implements ThreadFactory {
+        private final int client = CLIENT_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ecommerce-async-" + client + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
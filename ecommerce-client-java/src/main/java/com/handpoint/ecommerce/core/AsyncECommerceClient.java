@@ -0,0 +1,634 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.messages.payment.*;
+import com.handpoint.ecommerce.messages.token.Token;
+import com.handpoint.ecommerce.messages.token.TokenRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+
+/**
+ * Asynchronous client to send requests to Handpoint E-Commerce Interface.
+ * Includes the same actions as ECommerceClient, but instead of blocking the calling thread for the round trip
+ * every action returns a CompletableFuture that is completed when the response arrives. Requests are sent by
+ * a fixed number of NIO event-loop threads, so the thread count stays flat as the number of requests in flight grows.
+ * <p/>
+ * Requests are validated before they are sent, so InvalidMessageException is still thrown directly. Errors returned
+ * by the server complete the future with HpServerError and network errors with HpECommerceException, which
+ * includes the terminalDateTime needed to cancel the transaction.
+ */
+public class AsyncECommerceClient implements Closeable {
+
+    private static String WEB_PAYMENT_SCENARIO = "WEB";
+    private AsyncBixbyClient client;
+
+    private String cardAcceptor;
+
+    /**
+     * Default constructor. Instantiates Async Bixby Client which is used to send the actual HTTP requests.
+     *
+     * @param eCommerceUser object that includes shared secret and card acceptor / terminal id for authentication
+     */
+    public AsyncECommerceClient(ECommerceUser eCommerceUser) {
+        this(eCommerceUser.getCardAcceptor(), eCommerceUser.getSharedSecret(), eCommerceUser.getEnvironment());
+    }
+
+    /**
+     * Default constructor. Instantiates Async Bixby Client which is used to send the actual HTTP requests.
+     *
+     * @param cardAcceptor the cardAcceptor to use. Assigned by Handpoint
+     * @param sharedSecret the sharedSecret used to authenticate against Handpoint ECommerce API
+     * @param environment  enum used to set environment to either TEST or LIVE
+     */
+    public AsyncECommerceClient(String cardAcceptor, String sharedSecret, Environment environment) {
+        this.cardAcceptor = cardAcceptor;
+        client = new AsyncBixbyClient(sharedSecret, environment);
+    }
+
+    /**
+     * @return sizes of the request bodies sent by this client, in total and per message type
+     */
+    public WireMetrics getWireMetrics() {
+        return client.getWireMetrics();
+    }
+
+    /**
+     * Turns on local screening of card numbers and expiry dates, see CardScreener. Card data the screener refuses
+     * is thrown as an InvalidMessageException without a request being sent.
+     *
+     * @param cardScreener the screener to use, or null to turn screening off
+     */
+    public void setCardScreener(CardScreener cardScreener) {
+        client.setCardScreener(cardScreener);
+    }
+
+    /**
+     * Regular authorization with Customer reference and without card verification code
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount used to authorize.
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorize(String currency, String amount, String cardNumber, String expiryDateMMYY, String customerReference) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, customerReference);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular authorization without Customer reference and without card verification code
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount charged for
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorize(String currency, String amount, String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, null);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular authorization with Customer reference and with card verification code
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount used to authorize.
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeWithCVC(String currency, String amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode, String customerReference) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, cardVerificationCode, customerReference);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular authorization without Customer reference and with card verification code
+     *
+     * @param currency             the currency to use. Currency enum used.
+     * @param amount               the amount charged for
+     * @param cardNumber           the card number to charge to
+     * @param expiryDateMMYY       the expiry date of the card
+     * @param cardVerificationCode the card verification code, usually found on the back of the card. Three or four digits.
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeWithCVC(String currency, String amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, cardVerificationCode, null);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Authorization using token with Customer Reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param token             has to be stored in the customers token store
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeWithToken(String currency, String amount, String token, String customerReference) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, customerReference);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Authorization using token without Customer Reference
+     *
+     * @param currency the currency to use. Currency enum used.
+     * @param amount   the amount charged for
+     * @param token    has to be stored in the customers token store
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeWithToken(String currency, String amount, String token) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, null);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Authorization that authorizes and stores the token. With customer reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param token             used to identify the stored card number
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, customerReference);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Authorization that authorizes and stores the token. Without customer reference
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount charged for
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @param token          used to identify the stored card number
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Authorization> authorizeAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token) throws InvalidMessageException {
+        AuthorizationRequest request = MessageCreator.authorizationRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, null);
+        return client.sendAuthorizationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular payment with Customer reference and without card verification code
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount used to authorize.
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> payment(String currency, String amount, String cardNumber, String expiryDateMMYY, String customerReference) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, customerReference, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular payment without Customer reference and without card verification code
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount charged for
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> payment(String currency, String amount, String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, null, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular payment with Customer reference and with card verification code
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount used to authorize.
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentWithCVC(String currency, String amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode, String customerReference) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, cardVerificationCode, customerReference, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Regular authorization without Customer reference and with card verification code
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount used to authorize.
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentWithCVC(String currency, String amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, cardVerificationCode, null, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Payment using token with Customer Reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param token             has to be stored in the customers token store
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentWithToken(String currency, String amount, String token, String customerReference) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, customerReference, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Payment using token without Customer Reference
+     *
+     * @param currency the currency to use. Currency enum used.
+     * @param amount   the amount charged for
+     * @param token    has to be stored in the customers token store
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentWithToken(String currency, String amount, String token) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, null, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Payment that authorizes and confirms and stores the token. With customer reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param token             used to identify the stored card number
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, customerReference, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Payment that authorizes and confirms and stores the token. With customer reference
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount charged for
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @param token          used to identify the stored card number
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> paymentAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, null, null);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Payment that captures previously approved authorization. Without customer reference.
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param authorizationGuid retrieved with the original authorization
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Payment> captureAuthorization(String currency, String amount, String authorizationGuid) throws InvalidMessageException {
+        PaymentRequest request = MessageCreator.paymentRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                null, null, null, null, authorizationGuid);
+        return client.sendPaymentRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund with customer reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount to refund.
+     * @param cardNumber        the card number to refund to.
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refund(String currency, String amount, String cardNumber, String expiryDateMMYY, String customerReference) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, customerReference, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund without customer reference
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount to refund.
+     * @param cardNumber     the card number to refund to.
+     * @param expiryDateMMYY the expiry date of the card
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refund(String currency, String amount, String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                cardNumber, expiryDateMMYY, null, null, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund using token. With customer reference.
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount to refund.
+     * @param token             used to identify the stored card number
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refundWithToken(String currency, String amount, String token, String customerReference) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, customerReference, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund using token. Without customer reference.
+     *
+     * @param currency the currency to use. Currency enum used.
+     * @param amount   the amount to refund.
+     * @param token    used to identify the stored card number
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refundWithToken(String currency, String amount, String token) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                null, null, null, null, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund and store the token. With customer reference
+     *
+     * @param currency          the currency to use. Currency enum used.
+     * @param amount            the amount charged for
+     * @param cardNumber        the card number to charge to
+     * @param expiryDateMMYY    the expiry date of the card
+     * @param token             used to identify the stored card number
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refundAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, customerReference, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund and store the token. Without customer reference
+     *
+     * @param currency       the currency to use. Currency enum used.
+     * @param amount         the amount charged for
+     * @param cardNumber     the card number to charge to
+     * @param expiryDateMMYY the expiry date of the card
+     * @param token          used to identify the stored card number
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refundAndStoreToken(String currency, String amount, String cardNumber, String expiryDateMMYY, String token) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, token,
+                cardNumber, expiryDateMMYY, null, null, null);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Refund for previously approved payment, called linked refund.
+     *
+     * @param currency    the currency to use. Currency enum used.
+     * @param amount      the amount charged for
+     * @param paymentGuid of the payment that shall be refunded.
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Refund> refundPayment(String currency, String amount, String paymentGuid) throws InvalidMessageException {
+        RefundRequest request = MessageCreator.refundRequest(WEB_PAYMENT_SCENARIO, currency, amount, null,
+                null, null, null, null, paymentGuid);
+        return client.sendRefundRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously granted authorization without customer reference
+     *
+     * @param authorizationGuid the GUID for the authorization to reverse
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reverseAuthorization(String authorizationGuid) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(authorizationGuid, null, null, null);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously granted authorization with customer reference
+     *
+     * @param authorizationGuid the GUID for the authorization to reverse
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reverseAuthorization(String authorizationGuid, String customerReference) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(authorizationGuid, null, null, customerReference);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously successful payment without customer reference
+     *
+     * @param paymentGuid of the payment to reverse.
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reversePayment(String paymentGuid) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(null, paymentGuid, null, null);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously successful payment with customer reference
+     *
+     * @param paymentGuid       of the payment to reverse.
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reversePayment(String paymentGuid, String customerReference) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(null, paymentGuid, null, customerReference);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously successful refund without customer reference
+     *
+     * @param refundGuid of the refund to reverse.
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reverseRefund(String refundGuid) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(null, null, refundGuid, null);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Reversal for previously successful payment with customer reference
+     *
+     * @param refundGuid        of the payment to reverse.
+     * @param customerReference
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Reversal> reverseRefund(String refundGuid, String customerReference) throws InvalidMessageException {
+        ReversalRequest request = MessageCreator.reversalRequest(null, null, refundGuid, customerReference);
+        return client.sendReversalRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Cancellation for previously granted authorization.
+     *
+     * @param currency                 the currency to use. Currency enum used.
+     * @param amount                   the amount charged for
+     * @param terminalDateTimeOriginal the terminal date time sent in the original authorization
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Cancellation> cancelAuthorization(String currency, String amount, String terminalDateTimeOriginal) throws InvalidMessageException {
+        CancellationRequest request = MessageCreator.cancellationRequest(ECommerceClient.AUTHORIZATION, currency, amount, terminalDateTimeOriginal);
+        return client.sendCancellationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Cancellation for previously granted payment.
+     *
+     * @param currency                 the currency to use. Currency enum used.
+     * @param amount                   the amount charged for
+     * @param terminalDateTimeOriginal the terminal date time sent in the original authorization
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Cancellation> cancelPayment(String currency, String amount, String terminalDateTimeOriginal) throws InvalidMessageException {
+        CancellationRequest request = MessageCreator.cancellationRequest(ECommerceClient.PAYMENT, currency, amount, terminalDateTimeOriginal);
+        return client.sendCancellationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Cancellation for previously granted refund.
+     *
+     * @param currency                 the currency to use. Currency enum used.
+     * @param amount                   the amount charged for
+     * @param terminalDateTimeOriginal the terminal date time sent in the original authorization
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Cancellation> cancelRefund(String currency, String amount, String terminalDateTimeOriginal) throws InvalidMessageException {
+        CancellationRequest request = MessageCreator.cancellationRequest(ECommerceClient.REFUND, currency, amount, terminalDateTimeOriginal);
+        return client.sendCancellationRequest(request, cardAcceptor);
+    }
+
+    /**
+     * Store token
+     *
+     * @param token          the identity of the card in the card storage
+     * @param cardNumber     the card number to store in the card storage
+     * @param expiryDateMMYY the expiry date of the card number to store
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Token> createToken(String token, String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        TokenRequest request = MessageCreator.tokenRequest(cardNumber, expiryDateMMYY);
+        return client.sendPutToken(request, cardAcceptor, token);
+    }
+
+    /**
+     * Update previously stored token
+     *
+     * @param token          the identity of the card in the card storage
+     * @param cardNumber     the card number to store in the card storage
+     * @param expiryDateMMYY the expiry date of the card number to store
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     * @throws InvalidMessageException if the request fails validation
+     */
+    public CompletableFuture<Token> updateToken(String token, String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        TokenRequest request = MessageCreator.tokenRequest(cardNumber, expiryDateMMYY);
+        return client.sendPostToken(request, cardAcceptor, token);
+    }
+
+    /**
+     * Get token request. Get the information about a previously stored token.
+     *
+     * @param token the identity of the card in the card storage
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     */
+    public CompletableFuture<Token> getToken(String token) {
+        return client.sendGetToken(token, cardAcceptor);
+    }
+
+    /**
+     * Delete a previously stored token
+     *
+     * @param token the identity of the card in the card storage
+     * @return future completed with the response, or exceptionally with HpServerError or HpECommerceException
+     */
+    public CompletableFuture<Token> deleteToken(String token) {
+        return client.sendDeleteToken(token, cardAcceptor);
+    }
+
+    /**
+     * Stops the event-loop and completion threads and closes all connections. Requests in flight are aborted.
+     */
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+}
@@ -0,0 +1,172 @@
+package com.handpoint.ecommerce.core;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+
+import javax.ws.rs.core.MediaType;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Class used for sending non-blocking requests to REST web services.
+ * Requests are multiplexed over a fixed number of NIO event-loop threads, so the number of threads does not
+ * grow with the number of requests in flight. Requests are signed with the same HmacSigner as used by the HmacFilter.
+ * <p/>
+ * A request fails with a timeout if no connection is made within the connect timeout, or the web service sends
+ * nothing for the socket timeout, so a hung connection does not leave its future incomplete.
+ */
+public class AsyncHttpClient implements Closeable {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+    public static final int DEFAULT_SOCKET_TIMEOUT_MILLIS = 30000;
+
+    private final CloseableHttpAsyncClient client;
+    private final PoolingNHttpClientConnectionManager connectionManager;
+    private final HmacSigner signer;
+
+    /**
+     * Creates a client with the default connect and socket timeouts.
+     *
+     * @param sharedSecret used to sign the requests
+     * @param ioThreads    number of event-loop threads
+     * @param maxTotal     the maximum number of open connections
+     * @param maxPerHost   the maximum number of open connections to a single host
+     */
+    public AsyncHttpClient(String sharedSecret, int ioThreads, int maxTotal, int maxPerHost) {
+        this(sharedSecret, ioThreads, maxTotal, maxPerHost, DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_SOCKET_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param sharedSecret         used to sign the requests
+     * @param ioThreads            number of event-loop threads
+     * @param maxTotal             the maximum number of open connections
+     * @param maxPerHost           the maximum number of open connections to a single host
+     * @param connectTimeoutMillis longest time to make a connection, and to wait for one from the pool
+     * @param socketTimeoutMillis  longest time the web service may send nothing while a response is awaited
+     */
+    public AsyncHttpClient(String sharedSecret, int ioThreads, int maxTotal, int maxPerHost, int connectTimeoutMillis,
+                           int socketTimeoutMillis) {
+        try {
+            IOReactorConfig reactorConfig = IOReactorConfig.custom().setIoThreadCount(ioThreads).setTcpNoDelay(true).build();
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(reactorConfig));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Unable to start I/O reactor", e);
+        }
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        signer = new HmacSigner(sharedSecret);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setConnectionRequestTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis)
+                .build();
+        client = HttpAsyncClients.custom().setConnectionManager(connectionManager).setDefaultRequestConfig(requestConfig).build();
+        client.start();
+    }
+
+    /**
+     * Sends http post request to a specified url.
+     *
+     * @param url              where to send the request
+     * @param body             the request body to send
+     * @param terminalDateTime sent in the mws-date header
+     * @return future completed with the buffered response
+     */
+    public CompletableFuture<HttpResponse> sendPostRequest(String url, byte[] body, String terminalDateTime) {
+        return execute(withBody(new HttpPost(url), body), body, terminalDateTime);
+    }
+
+    /**
+     * Sends http put request to a specified url.
+     *
+     * @param url              where to send the request
+     * @param body             the request body to send
+     * @param terminalDateTime sent in the mws-date header
+     * @return future completed with the buffered response
+     */
+    public CompletableFuture<HttpResponse> sendPutRequest(String url, byte[] body, String terminalDateTime) {
+        return execute(withBody(new HttpPut(url), body), body, terminalDateTime);
+    }
+
+    /**
+     * Sends http get request to a specified url.
+     *
+     * @param url              where to send the request
+     * @param terminalDateTime sent in the mws-date header
+     * @return future completed with the buffered response
+     */
+    public CompletableFuture<HttpResponse> sendGetRequest(String url, String terminalDateTime) {
+        return execute(new HttpGet(url), null, terminalDateTime);
+    }
+
+    /**
+     * Sends http delete request to a specified url.
+     *
+     * @param url              where to send the request
+     * @param terminalDateTime sent in the mws-date header
+     * @return future completed with the buffered response
+     */
+    public CompletableFuture<HttpResponse> sendDeleteRequest(String url, String terminalDateTime) {
+        return execute(new HttpDelete(url), null, terminalDateTime);
+    }
+
+    /**
+     * @return statistics for the connection pool; leased, available, pending and max connections
+     */
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Stops the event-loop threads and closes all connections.
+     */
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    private CompletableFuture<HttpResponse> execute(HttpRequestBase request, byte[] body, String terminalDateTime) {
+        request.setHeader(HmacFilter.MWS_DATE, terminalDateTime);
+        request.setHeader(HmacFilter.MWS_HMAC, signer.sign(request.getMethod(), request.getURI().getPath(), terminalDateTime, body));
+        request.setHeader(HmacFilter.CONTENT_TYPE, MediaType.APPLICATION_XML);
+        final CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        client.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                future.complete(response);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                future.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    private static HttpRequestBase withBody(HttpEntityEnclosingRequestBase request, byte[] body) {
+        request.setEntity(new ByteArrayEntity(body));
+        return request;
+    }
+}
@@ -0,0 +1,296 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.messages.payment.Cancellation;
+import com.handpoint.ecommerce.messages.payment.CancellationRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancels authorizations, payments and refunds whose outcome is unknown, in the background.
+ * <p/>
+ * A transaction whose request may have reached the web service, but whose response was lost, e.g. the read timed
+ * out or the response could not be read, may have been approved without the caller knowing. The client hands such
+ * a transaction to the canceller, which sends the matching cancellation with the terminalDateTime of the lost
+ * request until the web service answers it: with a Cancellation, approved or declined, or with an error response
+ * with a 4xx status. Cancellations that could not be sent, whose answer was lost as well or that the web service
+ * failed with a 5xx status, are sent again after a wait that doubles from baseDelayMillis up to maxDelayMillis, for
+ * at most maxAttempts attempts.
+ * <p/>
+ * Listeners are told about the outcome of every transaction, on a thread of the canceller. A canceller can be shared
+ * by any number of clients, each cancellation is sent and signed by the client of the transaction.
+ */
+public class AutoCanceller {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 10;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 60000;
+
+    private static final int THREADS = 2;
+    private static final AtomicInteger CANCELLER_NUMBER = new AtomicInteger();
+    private static final Map<Integer, AutoCanceller> SHARED = new HashMap<>();
+
+    /**
+     * Told about the outcome of the transactions cancelled.
+     */
+    public interface Listener {
+
+        /**
+         * Called when the web service answered the cancellation of a transaction.
+         *
+         * @param transaction  the transaction
+         * @param cancellation the answer, approved if the transaction was cancelled and declined otherwise, e.g.
+         *                     because it never reached the web service
+         */
+        void onCancelled(Transaction transaction, Cancellation cancellation);
+
+        /**
+         * Called when the web service answered the cancellation of a transaction with a 4xx error, or the attempts to
+         * cancel it ran out. The outcome of the transaction must then be resolved by hand.
+         *
+         * @param transaction the transaction
+         * @param e           the exception of the last attempt
+         */
+        void onFailed(Transaction transaction, Exception e);
+    }
+
+    /**
+     * A transaction whose outcome is unknown.
+     */
+    public static final class Transaction {
+        private final String cardAcceptor;
+        private final String transactionType;
+        private final String currency;
+        private final String amount;
+        private final String terminalDateTimeOriginal;
+        private volatile int attempts;
+
+        Transaction(String cardAcceptor, String transactionType, String currency, String amount, String terminalDateTimeOriginal) {
+            this.cardAcceptor = cardAcceptor;
+            this.transactionType = transactionType;
+            this.currency = currency;
+            this.amount = amount;
+            this.terminalDateTimeOriginal = terminalDateTimeOriginal;
+        }
+
+        public String getCardAcceptor() {
+            return cardAcceptor;
+        }
+
+        /**
+         * @return authorization, payment or refund
+         */
+        public String getTransactionType() {
+            return transactionType;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public String getAmount() {
+            return amount;
+        }
+
+        /**
+         * @return the terminalDateTime of the request whose outcome is unknown
+         */
+        public String getTerminalDateTimeOriginal() {
+            return terminalDateTimeOriginal;
+        }
+
+        /**
+         * @return attempts made to cancel the transaction
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public String toString() {
+            return "Transaction{" + transactionType + ", cardAcceptor=" + cardAcceptor + ", terminalDateTimeOriginal="
+                    + terminalDateTimeOriginal + ", attempts=" + attempts + '}';
+        }
+    }
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    /**
+     * Creates a canceller with the default attempts and delays.
+     */
+    public AutoCanceller() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param maxAttempts     attempts to cancel a transaction
+     * @param baseDelayMillis wait before the first attempt, doubled after each attempt
+     * @param maxDelayMillis  longest wait between attempts
+     */
+    public AutoCanceller(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid auto canceller settings");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(THREADS, new CancellerThreadFactory());
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = executor;
+    }
+
+    /**
+     * Creates the canceller once per JVM and number of attempts, so the clients configured alike share its threads.
+     * The canceller is never shut down, its threads are daemon threads.
+     */
+    static AutoCanceller shared(int maxAttempts) {
+        synchronized (SHARED) {
+            AutoCanceller canceller = SHARED.get(maxAttempts);
+            if (canceller == null) {
+                canceller = new AutoCanceller(maxAttempts, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS);
+                SHARED.put(maxAttempts, canceller);
+            }
+            return canceller;
+        }
+    }
+
+    /**
+     * @param listener told about the outcome of every transaction cancelled
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Cancels a transaction in the background.
+     *
+     * @param client                   sends and signs the cancellation
+     * @param cardAcceptor             the card acceptor of the transaction
+     * @param transactionType          authorization, payment or refund
+     * @param currency                 the currency of the transaction
+     * @param amount                   the amount of the transaction
+     * @param terminalDateTimeOriginal the terminalDateTime of the request whose outcome is unknown
+     */
+    void enqueue(BixbyClient client, String cardAcceptor, String transactionType, String currency, String amount,
+                 String terminalDateTimeOriginal) {
+        Transaction transaction = new Transaction(cardAcceptor, transactionType, currency, amount, terminalDateTimeOriginal);
+        pending.incrementAndGet();
+        schedule(client, transaction, baseDelayMillis);
+    }
+
+    private void schedule(BixbyClient client, Transaction transaction, long delayMillis) {
+        try {
+            scheduler.schedule(() -> attempt(client, transaction, delayMillis), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down, the transaction is dropped
+            pending.decrementAndGet();
+        }
+    }
+
+    private void attempt(BixbyClient client, Transaction transaction, long delayMillis) {
+        transaction.attempts++;
+        Cancellation cancellation;
+        try {
+            CancellationRequest request = MessageCreator.cancellationRequest(transaction.transactionType,
+                    transaction.currency, transaction.amount, transaction.terminalDateTimeOriginal);
+            cancellation = client.sendCancellationRequest(request, transaction.cardAcceptor);
+        } catch (HpServerError e) {
+            if (e.getStatus() >= 500) {
+                retry(client, transaction, delayMillis, e);
+            } else {
+                failed(transaction, e);
+            }
+            return;
+        } catch (InvalidMessageException e) {
+            failed(transaction, e);
+            return;
+        } catch (HpECommerceException | RuntimeException e) {
+            retry(client, transaction, delayMillis, e);
+            return;
+        }
+        pending.decrementAndGet();
+        for (Listener listener : listeners) {
+            try {
+                listener.onCancelled(transaction, cancellation);
+            } catch (RuntimeException listenerException) {
+                reportListenerException(listenerException);
+            }
+        }
+    }
+
+    private void retry(BixbyClient client, Transaction transaction, long delayMillis, Exception e) {
+        if (transaction.attempts >= maxAttempts || scheduler.isShutdown()) {
+            failed(transaction, e);
+        } else {
+            schedule(client, transaction, Math.min(maxDelayMillis, Math.max(1, delayMillis * 2)));
+        }
+    }
+
+    private void failed(Transaction transaction, Exception e) {
+        pending.decrementAndGet();
+        for (Listener listener : listeners) {
+            try {
+                listener.onFailed(transaction, e);
+            } catch (RuntimeException listenerException) {
+                reportListenerException(listenerException);
+            }
+        }
+    }
+
+    /**
+     * Hands the exception of a listener to the uncaught exception handler of the canceller thread, so the other
+     * listeners are still told.
+     */
+    private static void reportListenerException(RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    /**
+     * @return transactions waiting to be cancelled
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stops the canceller. Cancellations being sent complete, transactions waiting for their next attempt are
+     * dropped without telling the listeners.
+     */
+    public void shutdown() {
+        scheduler.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "AutoCanceller{pending=" + getPendingCount() + '}';
+    }
+
+    private static class CancellerThreadFactory implements ThreadFactory {
+        private final int canceller = CANCELLER_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ecommerce-auto-canceller-" + canceller + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.handpoint.ecommerce.core;
+
+/**
+ * Receives the results of a batch in the order the operations complete.
+ */
+public interface BatchCallback {
+
+    /**
+     * Called on the thread that submitted the batch, once for every operation.
+     *
+     * @param result the outcome of an operation
+     */
+    void onResult(BatchResult<?> result);
+}
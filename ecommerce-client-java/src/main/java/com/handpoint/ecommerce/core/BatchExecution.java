@@ -0,0 +1,96 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the operations of a batch on a pool of at most parallelism threads and hands out the results as the
+ * operations complete. Each operation builds, validates, encodes and signs its request on a pool thread, so the
+ * work before the round trip is spread over the cores as well.
+ * <p/>
+ * The pool is shut down once all operations are submitted, its threads end when the last operation completes.
+ */
+class BatchExecution implements Iterator<BatchResult<?>> {
+
+    private static final AtomicInteger BATCH_NUMBER = new AtomicInteger();
+
+    private final ExecutorService executor;
+    private final CompletionService<BatchResult<?>> completionService;
+    private int remaining;
+
+    BatchExecution(final ECommerceClient client, List<? extends BatchOperation<?>> operations, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, operations.size())),
+                new BatchThreadFactory());
+        completionService = new ExecutorCompletionService<>(executor);
+        for (int i = 0; i < operations.size(); i++) {
+            final int index = i;
+            final BatchOperation<?> operation = operations.get(i);
+            completionService.submit(() -> execute(client, index, operation));
+        }
+        remaining = operations.size();
+        executor.shutdown();
+    }
+
+    private static <T> BatchResult<T> execute(ECommerceClient client, int index, BatchOperation<T> operation) {
+        try {
+            return new BatchResult<>(index, operation.execute(client), null);
+        } catch (Exception e) {
+            return new BatchResult<>(index, null, e);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return remaining > 0;
+    }
+
+    /**
+     * Waits for the next operation to complete.
+     *
+     * @throws IllegalStateException if the thread is interrupted while waiting, the operations not yet started
+     *                               are then cancelled
+     */
+    @Override
+    public BatchResult<?> next() {
+        if (remaining == 0) {
+            throw new NoSuchElementException();
+        }
+        try {
+            BatchResult<?> result = completionService.take().get();
+            remaining--;
+            return result;
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            remaining = 0;
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for batch results", e);
+        } catch (ExecutionException e) {
+            // Operations catch all exceptions, only errors get here
+            remaining--;
+            throw new IllegalStateException("Batch operation failed", e.getCause());
+        }
+    }
+
+    private static class BatchThreadFactory implements ThreadFactory {
+        private final int batch = BATCH_NUMBER.incrementAndGet();
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "ecommerce-batch-" + batch + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
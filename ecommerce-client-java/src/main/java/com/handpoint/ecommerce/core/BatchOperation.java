@@ -0,0 +1,20 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+
+/**
+ * One operation of a batch submitted with ECommerceClient.submitBatch, usually a call to one of the client's
+ * operations, e.g. {@code client -> client.paymentWithToken(currency, amount, token)}.
+ *
+ * @param <T> the response of the operation
+ */
+public interface BatchOperation<T> {
+
+    /**
+     * @param client the client the batch was submitted to
+     * @return the response of the operation
+     */
+    T execute(ECommerceClient client) throws HpECommerceException, HpServerError, InvalidMessageException;
+}
@@ -0,0 +1,52 @@
+package com.handpoint.ecommerce.core;
+
+/**
+ * Outcome of one operation of a batch. Holds either the response of the operation or the exception it threw,
+ * together with the index of the operation in the submitted list.
+ */
+public final class BatchResult<T> {
+
+    private final int index;
+    private final T response;
+    private final Exception exception;
+
+    BatchResult(int index, T response, Exception exception) {
+        this.index = index;
+        this.response = response;
+        this.exception = exception;
+    }
+
+    /**
+     * @return index of the operation in the list submitted
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return true if the operation returned a response, false if it threw an exception
+     */
+    public boolean isSuccess() {
+        return exception == null;
+    }
+
+    /**
+     * @return the response of the operation, null if it failed
+     */
+    public T getResponse() {
+        return response;
+    }
+
+    /**
+     * @return the exception thrown by the operation, HpECommerceException, HpServerError or
+     * InvalidMessageException, or null if it succeeded
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{index=" + index + (exception == null ? ", response=" + response : ", exception=" + exception) + '}';
+    }
+}
@@ -0,0 +1,1222 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.Config;
+import com.handpoint.ecommerce.core.exceptions.CircuitBreakerOpenException;
+import com.handpoint.ecommerce.core.exceptions.ConcurrencyLimitExceededException;
+import com.handpoint.ecommerce.core.exceptions.DeadlineExceededException;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.core.exceptions.RateLimitExceededException;
+import com.handpoint.ecommerce.core.exceptions.RequestRejectedException;
+import com.handpoint.ecommerce.messages.ErrorMessage;
+import com.handpoint.ecommerce.messages.payment.*;
+import com.handpoint.ecommerce.messages.token.Token;
+import com.handpoint.ecommerce.messages.token.TokenRequest;
+import com.sun.jersey.api.client.ClientResponse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Bixby client knows how to handle requests and responses for all messages sent to the Handpoint
+ * E-Commerce web service.
+ * <p/>
+ * The client keeps no per-request state; the terminal date time and headers of each request are carried in their
+ * own RequestContext. One instance, together with its Jersey client and message codec, can therefore be
+ * shared by any number of threads.
+ * <p/>
+ * Messages are written and read by the StaxMessageCodec unless the com.handpoint.bixby.message.codec property
+ * is set to jaxb.
+ *
+ * @author palmithor
+ * @since 2013-03
+ */
+public class BixbyClient {
+
+    public static final String CODEC_STAX = "stax";
+    public static final String CODEC_JAXB = "jaxb";
+
+    private HttpClient httpClient;
+    private boolean enableMessageLogging;
+    private MessageCodec messageCodec;
+    private WireMetrics wireMetrics = new WireMetrics();
+    private CardScreener cardScreener;
+    private RetryPolicy retryPolicy;
+    private CircuitBreakers circuitBreakers;
+    private ConcurrencyLimiter concurrencyLimiter;
+    private RateLimiter rateLimiter;
+    private Timeouts timeouts;
+    private AutoCanceller autoCanceller;
+    private TransactionJournal transactionJournal;
+    private IdempotencyStore idempotencyStore;
+    private TokenCache tokenCache;
+    private ConcurrentMap<String, TokenLookup> tokenLookups = new ConcurrentHashMap<>();
+    private Deadline deadline;
+    private String sharedSecret;
+    private volatile HmacSigner signer;
+    private Environment environment;
+
+
+    /**
+     * Constructor for the client. Sets the environment and shared secret.
+     *
+     * @param sharedSecret to authenticate with Handpoint E-Commerce web service
+     * @param environment  the environment which is used. Live or Test
+     */
+    public BixbyClient(String sharedSecret, Environment environment) {
+        this.sharedSecret = sharedSecret;
+        enableMessageLogging = false;
+        this.environment = environment;
+        init();
+    }
+
+    /**
+     * @param sharedSecret         to authenticate with Handpoint E-Commerce web service
+     * @param environment          the environment which is used. Live or Test
+     * @param enableMessageLogging if set to true, all messages will be logged using com.sun.jersey.api.client.filter.LoggingFilter
+     */
+    public BixbyClient(String sharedSecret, Environment environment, boolean enableMessageLogging) {
+        this.sharedSecret = sharedSecret;
+        this.enableMessageLogging = enableMessageLogging;
+        this.environment = environment;
+        init();
+    }
+
+    /**
+     * @param sharedSecret         to authenticate with Handpoint E-Commerce web service
+     * @param environment          the environment which is used. Live or Test
+     * @param enableMessageLogging if set to true, all messages will be logged using com.sun.jersey.api.client.filter.LoggingFilter
+     * @param messageCodec         used to write requests and read responses
+     */
+    public BixbyClient(String sharedSecret, Environment environment, boolean enableMessageLogging, MessageCodec messageCodec) {
+        this.sharedSecret = sharedSecret;
+        this.enableMessageLogging = enableMessageLogging;
+        this.environment = environment;
+        this.messageCodec = messageCodec;
+        init();
+    }
+
+    /**
+     * Creates a client for one merchant that sends its requests over the http client, message codec and wire
+     * metrics of another client, signing them with the merchant's signer instead of an HmacFilter.
+     *
+     * @param transport   client whose http client, codec and metrics are shared
+     * @param signer      signer keyed with the shared secret of the merchant
+     * @param environment the environment of the merchant
+     */
+    BixbyClient(BixbyClient transport, HmacSigner signer, Environment environment) {
+        this.httpClient = transport.httpClient;
+        this.enableMessageLogging = transport.enableMessageLogging;
+        this.messageCodec = transport.messageCodec;
+        this.wireMetrics = transport.wireMetrics;
+        this.cardScreener = transport.cardScreener;
+        this.retryPolicy = transport.retryPolicy;
+        this.circuitBreakers = transport.circuitBreakers;
+        this.concurrencyLimiter = transport.concurrencyLimiter;
+        this.rateLimiter = transport.rateLimiter;
+        this.timeouts = transport.timeouts;
+        this.autoCanceller = transport.autoCanceller;
+        this.transactionJournal = transport.transactionJournal;
+        this.idempotencyStore = transport.idempotencyStore;
+        this.tokenCache = transport.tokenCache;
+        this.tokenLookups = transport.tokenLookups;
+        this.environment = environment;
+        this.signer = signer;
+    }
+
+    /**
+     * Creates a client sending requests like the given one that must complete by the deadline.
+     *
+     * @param client   the client to send like
+     * @param deadline the deadline of every request sent with this client
+     */
+    BixbyClient(BixbyClient client, Deadline deadline) {
+        this(client, client.signer, client.environment);
+        this.deadline = deadline;
+    }
+
+    /**
+     * Initialize the HttpClient and, unless one was given, the message codec. Requests are sent over pooled keep-alive connections,
+     * sized by the com.handpoint.bixby.http.pool.* properties. Without a shared secret no HmacFilter is added, requests
+     * are then signed with the signer of their RequestContext.
+     */
+    private void init() {
+        HttpClient.Builder builder = HttpClient.Builder.create().usePooledConnections(createConnectionPool());
+        if (enableMessageLogging) {
+            builder.addLoggingFilter();
+        }
+        if (sharedSecret != null) {
+            builder.addHmacFilter(sharedSecret);
+        }
+        httpClient = builder.build();
+        if (messageCodec == null) {
+            messageCodec = createMessageCodec();
+        }
+        if (isCardScreeningEnabled()) {
+            cardScreener = new CardScreener();
+        }
+        retryPolicy = createRetryPolicy();
+        if (isCircuitBreakerEnabled()) {
+            circuitBreakers = new CircuitBreakers();
+        }
+        concurrencyLimiter = createConcurrencyLimiter();
+        rateLimiter = createRateLimiter();
+        timeouts = createTimeouts();
+        autoCanceller = createAutoCanceller();
+        transactionJournal = createTransactionJournal();
+        idempotencyStore = createIdempotencyStore();
+        tokenCache = createTokenCache();
+    }
+
+    /**
+     * Without the com.handpoint.bixby.journal.file property transactions are not journaled. The clients configured
+     * with the same file share its journal.
+     *
+     * @throws IllegalStateException if the journal file is set but can not be opened
+     */
+    static TransactionJournal createTransactionJournal() {
+        try {
+            Config config = Config.getInstance();
+            String file = config.getJournalFile(null);
+            if (file == null || file.trim().isEmpty()) {
+                return null;
+            }
+            return TransactionJournal.open(new File(file.trim()), config.isJournalForce(false));
+        } catch (HpServerError e) {
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open transaction journal", e);
+        }
+    }
+
+    /**
+     * Without the com.handpoint.bixby.idempotency.dir property repeated customer references are sent again. The
+     * clients configured with the same directory share its store.
+     *
+     * @throws IllegalStateException if the directory is set but its store can not be opened
+     */
+    static IdempotencyStore createIdempotencyStore() {
+        try {
+            Config config = Config.getInstance();
+            String directory = config.getIdempotencyDirectory(null);
+            if (directory == null || directory.trim().isEmpty()) {
+                return null;
+            }
+            return IdempotencyStore.open(new File(directory.trim()),
+                    config.getIdempotencyExpectedKeys(IdempotencyStore.DEFAULT_EXPECTED_KEYS));
+        } catch (HpServerError e) {
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open idempotency store", e);
+        }
+    }
+
+    /**
+     * Without the com.handpoint.bixby.tokencache.capacity property tokens are not cached. With the
+     * com.handpoint.bixby.tokencache.file property the cache is mapped from the file, the clients configured with the
+     * same file share its cache. Otherwise the clients configured with the same capacity and ttl share one cache in
+     * memory.
+     *
+     * @throws IllegalStateException if the cache file is set but can not be mapped
+     */
+    static TokenCache createTokenCache() {
+        try {
+            Config config = Config.getInstance();
+            long capacity = config.getTokenCacheCapacity(0);
+            if (capacity <= 0) {
+                return null;
+            }
+            long ttl = config.getTokenCacheTtl(TokenCache.DEFAULT_TTL_MILLIS);
+            String file = config.getTokenCacheFile(null);
+            if (file == null || file.trim().isEmpty()) {
+                return TokenCache.shared(capacity, ttl);
+            }
+            return TokenCache.open(new File(file.trim()), capacity, ttl);
+        } catch (HpServerError e) {
+            return null;
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open token cache", e);
+        }
+    }
+
+    /**
+     * Without the com.handpoint.bixby.autocancel.enabled property transactions whose outcome is unknown are left to
+     * the caller to cancel. Otherwise the clients configured with the same number of attempts share one canceller.
+     */
+    static AutoCanceller createAutoCanceller() {
+        try {
+            Config config = Config.getInstance();
+            if (!config.isAutoCancelEnabled(false)) {
+                return null;
+            }
+            return AutoCanceller.shared(config.getAutoCancelMaxAttempts(AutoCanceller.DEFAULT_MAX_ATTEMPTS));
+        } catch (HpServerError e) {
+            return null;
+        }
+    }
+
+    static Timeouts createTimeouts() {
+        try {
+            Config config = Config.getInstance();
+            Timeouts created = new Timeouts(config.getTimeoutMillis(Timeouts.DEFAULT_TIMEOUT_MILLIS));
+            for (Operation operation : Operation.values()) {
+                created.setTimeout(operation, config.getOperationTimeoutMillis(operation.name().toLowerCase(), created.getTimeoutMillis(operation)));
+            }
+            return created;
+        } catch (HpServerError e) {
+            return new Timeouts();
+        }
+    }
+
+    /**
+     * Without the com.handpoint.bixby.ratelimit.permitspersecond property the limiter has no limits until they are
+     * set on it.
+     */
+    static RateLimiter createRateLimiter() {
+        try {
+            Config config = Config.getInstance();
+            RateLimiter limiter = new RateLimiter(config.getRateLimitMaxWaitMillis((int) RateLimiter.DEFAULT_MAX_WAIT_MILLIS));
+            int permitsPerSecond = config.getRateLimitPermitsPerSecond(0);
+            if (permitsPerSecond > 0) {
+                int burst = config.getRateLimitBurst(permitsPerSecond);
+                for (Operation operation : Operation.values()) {
+                    limiter.setDefaultLimit(operation, permitsPerSecond, burst);
+                }
+            }
+            return limiter;
+        } catch (HpServerError e) {
+            return new RateLimiter();
+        }
+    }
+
+    static ConcurrencyLimiter createConcurrencyLimiter() {
+        try {
+            Config config = Config.getInstance();
+            if (!config.isConcurrencyLimitEnabled(true)) {
+                return null;
+            }
+            return new ConcurrencyLimiter(ConcurrencyLimiter.DEFAULT_INITIAL_LIMIT, ConcurrencyLimiter.DEFAULT_MIN_LIMIT,
+                    ConcurrencyLimiter.DEFAULT_MAX_LIMIT, ConcurrencyLimiter.DEFAULT_MAX_QUEUE,
+                    config.getConcurrencyLimitMaxWaitMillis((int) ConcurrencyLimiter.DEFAULT_MAX_WAIT_MILLIS));
+        } catch (HpServerError e) {
+            return new ConcurrencyLimiter();
+        }
+    }
+
+    static boolean isCircuitBreakerEnabled() {
+        try {
+            return Config.getInstance().isCircuitBreakerEnabled(true);
+        } catch (HpServerError e) {
+            return true;
+        }
+    }
+
+    static RetryPolicy createRetryPolicy() {
+        try {
+            Config config = Config.getInstance();
+            return new RetryPolicy(config.getRetryMaxAttempts(RetryPolicy.DEFAULT_MAX_ATTEMPTS),
+                    RetryPolicy.DEFAULT_BASE_DELAY_MILLIS, RetryPolicy.DEFAULT_MAX_DELAY_MILLIS,
+                    config.getRetryBudgetPercent(RetryPolicy.DEFAULT_BUDGET_PERCENT));
+        } catch (HpServerError e) {
+            return new RetryPolicy();
+        }
+    }
+
+    static boolean isCardScreeningEnabled() {
+        try {
+            return Config.getInstance().isCardScreening(false);
+        } catch (HpServerError e) {
+            return false;
+        }
+    }
+
+    static MessageCodec createMessageCodec() {
+        String codec = CODEC_STAX;
+        try {
+            codec = Config.getInstance().getMessageCodec(CODEC_STAX);
+        } catch (HpServerError e) {
+            // Use the default
+        }
+        return CODEC_JAXB.equalsIgnoreCase(codec.trim()) ? new JaxbMessageCodec() : new StaxMessageCodec();
+    }
+
+    private static ConnectionPool createConnectionPool() {
+        try {
+            Config config = Config.getInstance();
+            ConnectionPool pool = new ConnectionPool(config.getHttpPoolMaxTotal(ConnectionPool.DEFAULT_MAX_TOTAL),
+                    config.getHttpPoolMaxPerHost(ConnectionPool.DEFAULT_MAX_PER_HOST),
+                    config.getHttpPoolIdleTimeout(ConnectionPool.DEFAULT_IDLE_TIMEOUT_MILLIS));
+            pool.setConnectTimeout(config.getConnectTimeoutMillis(ConnectionPool.DEFAULT_CONNECT_TIMEOUT_MILLIS));
+            return pool;
+        } catch (HpServerError e) {
+            return new ConnectionPool();
+        }
+    }
+
+    /**
+     * @return the pool of keep-alive connections used to reach the Handpoint E-Commerce web service
+     */
+    public ConnectionPool getConnectionPool() {
+        return httpClient.getConnectionPool();
+    }
+
+    /**
+     * Closes the pooled connections. Clients sharing the transport of this client can not be used afterwards.
+     */
+    public void close() {
+        httpClient.getConnectionPool().shutdown();
+    }
+
+    /**
+     * Sets the screener used to check card data before requests are sent. Screening is off unless the
+     * com.handpoint.bixby.card.screening property is true.
+     *
+     * @param cardScreener the screener to use, or null to turn screening off
+     */
+    public void setCardScreener(CardScreener cardScreener) {
+        this.cardScreener = cardScreener;
+    }
+
+    /**
+     * Sets the policy deciding which requests that could not be sent are sent again. Defaults to a RetryPolicy
+     * configured by the com.handpoint.bixby.retry.* properties.
+     *
+     * @param retryPolicy the policy to use, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    /**
+     * Sets the circuit breakers requests are sent through. By default each client has its own, unless the
+     * com.handpoint.bixby.circuitbreaker.enabled property is false.
+     *
+     * @param circuitBreakers the breakers to use, or null to send every request
+     */
+    public void setCircuitBreakers(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    /**
+     * @return the circuit breakers requests are sent through, null if they are turned off
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Sets the limiter of the requests in flight. By default each client has its own, shared by the clients of a
+     * MerchantGateway, unless the com.handpoint.bixby.concurrency.limit.enabled property is false.
+     *
+     * @param concurrencyLimiter the limiter to use, or null to send every request at once
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    /**
+     * @return the limiter of the requests in flight, null if requests are not limited
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * Sets the limiter of the rate of requests of each card acceptor and operation. By default each client has its
+     * own, shared by the clients of a MerchantGateway.
+     *
+     * @param rateLimiter the limiter to use, or null to not limit the rate
+     */
+    public void setRateLimiter(RateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @return the limiter of the rate of requests, to set limits on. Null if the rate is not limited
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Sets the time each operation is given to complete. By default each client has its own, configured by the
+     * com.handpoint.bixby.timeout.* properties and shared by the clients of a MerchantGateway.
+     *
+     * @param timeouts the timeouts to use, or null to only stop requests at the deadline of the client
+     */
+    public void setTimeouts(Timeouts timeouts) {
+        this.timeouts = timeouts;
+    }
+
+    /**
+     * @return the time each operation is given to complete, null if requests have no timeout
+     */
+    public Timeouts getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * Sets the canceller of authorizations, payments and refunds whose outcome is unknown. By default there is none,
+     * unless the com.handpoint.bixby.autocancel.enabled property is true, then each client has its own, shared by
+     * the clients of a MerchantGateway.
+     *
+     * @param autoCanceller the canceller to use, or null to leave such transactions to the caller
+     */
+    public void setAutoCanceller(AutoCanceller autoCanceller) {
+        this.autoCanceller = autoCanceller;
+    }
+
+    /**
+     * @return the canceller of transactions whose outcome is unknown, null if they are left to the caller
+     */
+    public AutoCanceller getAutoCanceller() {
+        return autoCanceller;
+    }
+
+    /**
+     * Sets the journal authorizations, payments and refunds are recorded in before they are sent. By default there is
+     * none, unless the com.handpoint.bixby.journal.file property is set.
+     *
+     * @param transactionJournal the journal to use, or null to not journal transactions
+     */
+    public void setTransactionJournal(TransactionJournal transactionJournal) {
+        this.transactionJournal = transactionJournal;
+    }
+
+    /**
+     * @return the journal of transactions in flight, null if transactions are not journaled
+     */
+    public TransactionJournal getTransactionJournal() {
+        return transactionJournal;
+    }
+
+    /**
+     * Sets the store approved authorizations and payments are remembered in by customer reference, so a repeated
+     * request gets the original answer instead of being sent again. By default there is none, unless the
+     * com.handpoint.bixby.idempotency.dir property is set.
+     *
+     * @param idempotencyStore the store to use, or null to send every request
+     */
+    public void setIdempotencyStore(IdempotencyStore idempotencyStore) {
+        this.idempotencyStore = idempotencyStore;
+    }
+
+    /**
+     * @return the store of answers by customer reference, null if every request is sent
+     */
+    public IdempotencyStore getIdempotencyStore() {
+        return idempotencyStore;
+    }
+
+    /**
+     * Sets the cache token lookups are answered from. Created, updated and deleted tokens are written to or removed
+     * from it. By default there is none, unless the com.handpoint.bixby.tokencache.capacity property is set.
+     *
+     * @param tokenCache the cache to use, or null to send every lookup
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        this.tokenCache = tokenCache;
+    }
+
+    /**
+     * @return the cache of token lookups, null if tokens are not cached
+     */
+    public TokenCache getTokenCache() {
+        return tokenCache;
+    }
+
+    /**
+     * @return sizes of the request bodies sent by this client
+     */
+    public WireMetrics getWireMetrics() {
+        return wireMetrics;
+    }
+
+
+    /**
+     * Sends authorization requests. If request is either declined or approved a Authorization object is return.
+     * If an error occurs, either on the server side or internal an exception is thrown.
+     *
+     * @param authorizationRequest to be sent to Handpoint E-Commerce web service.
+     * @param cardAcceptor         the terminal identifier, used to find the correct merchant.
+     * @return Authorization, either approved or declined. If object has approval code has been approved, otherwise declined.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     * @throws InvalidMessageException if card screening is enabled and the card data is refused
+     */
+    protected Authorization sendAuthorizationRequest(AuthorizationRequest authorizationRequest, String cardAcceptor) throws HpServerError, HpECommerceException, InvalidMessageException {
+        IdempotencyStore store = idempotencyStore;
+        String customerReference = authorizationRequest.getCustomerReference();
+        if (store == null || customerReference == null) {
+            return sendAuthorization(authorizationRequest, cardAcceptor);
+        }
+        return store.execute(environment, cardAcceptor, ECommerceClient.AUTHORIZATION, customerReference, Authorization.class,
+                authorization -> authorization.getApprovalCode() != null, () -> sendAuthorization(authorizationRequest, cardAcceptor));
+    }
+
+    private Authorization sendAuthorization(AuthorizationRequest authorizationRequest, String cardAcceptor) throws HpServerError, HpECommerceException, InvalidMessageException {
+        screen(authorizationRequest.getCardNumber(), authorizationRequest.getExpiryDateMMYY());
+        RequestContext context = newContext(Operation.AUTHORIZATION);
+        String terminalDateTime = context.getTerminalDateTime();
+        InFlight transaction = new InFlight(cardAcceptor, ECommerceClient.AUTHORIZATION, authorizationRequest.getCurrency(),
+                authorizationRequest.getAmount(), authorizationRequest.getCustomerReference(), terminalDateTime);
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(AuthorizationRequest.class, authorizationRequest);
+            transaction.begin();
+            response = send(cardAcceptor, Operation.AUTHORIZATION, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getAuthorizationUrl(cardAcceptor, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            transaction.resolve(TransactionJournal.NOT_SENT);
+            throw e;
+        } catch (Exception e) {
+            transaction.failed(e);
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200 || response.getStatus() == 403) {
+            Authorization authorization;
+            try {
+                authorization = readEntity(response, Authorization.class, terminalDateTime);
+            } catch (HpECommerceException e) {
+                transaction.unknown();
+                throw e;
+            }
+            transaction.resolve(TransactionJournal.ANSWERED);
+            return authorization;
+        } else {
+            transaction.resolve(TransactionJournal.ERROR);
+            throw new HpServerError("Authorization declined.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+    /**
+     * Sends authorization requests. If request is either declined or approved a Authorization object is return.
+     * If an error occurs, either on the server side or internal an exception is thrown.
+     *
+     * @param paymentRequest to be sent to Handpoint E-Commerce web service.
+     * @param cardAcceptor   the terminal identifier, used to find the correct merchant.
+     * @return Payment, either approved or declined. If object has approval code has been approved, otherwise declined.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     * @throws InvalidMessageException if card screening is enabled and the card data is refused
+     */
+    protected Payment sendPaymentRequest(PaymentRequest paymentRequest, String cardAcceptor) throws HpServerError, HpECommerceException, InvalidMessageException {
+        IdempotencyStore store = idempotencyStore;
+        String customerReference = paymentRequest.getCustomerReference();
+        if (store == null || customerReference == null) {
+            return sendPayment(paymentRequest, cardAcceptor);
+        }
+        return store.execute(environment, cardAcceptor, ECommerceClient.PAYMENT, customerReference, Payment.class,
+                payment -> payment.getApprovalCode() != null, () -> sendPayment(paymentRequest, cardAcceptor));
+    }
+
+    private Payment sendPayment(PaymentRequest paymentRequest, String cardAcceptor) throws HpServerError, HpECommerceException, InvalidMessageException {
+        screen(paymentRequest.getCardNumber(), paymentRequest.getExpiryDateMMYY());
+        RequestContext context = newContext(Operation.PAYMENT);
+        String terminalDateTime = context.getTerminalDateTime();
+        InFlight transaction = new InFlight(cardAcceptor, ECommerceClient.PAYMENT, paymentRequest.getCurrency(),
+                paymentRequest.getAmount(), paymentRequest.getCustomerReference(), terminalDateTime);
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(PaymentRequest.class, paymentRequest);
+            transaction.begin();
+            response = send(cardAcceptor, Operation.PAYMENT, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getPaymentUrl(cardAcceptor, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            transaction.resolve(TransactionJournal.NOT_SENT);
+            throw e;
+        } catch (Exception e) {
+            transaction.failed(e);
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200 || response.getStatus() == 403) {
+            Payment payment;
+            try {
+                payment = readEntity(response, Payment.class, terminalDateTime);
+            } catch (HpECommerceException e) {
+                transaction.unknown();
+                throw e;
+            }
+            transaction.resolve(TransactionJournal.ANSWERED);
+            return payment;
+        } else {
+            transaction.resolve(TransactionJournal.ERROR);
+            throw new HpServerError("Payment declined.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+    /**
+     * Sends authorization requests. If request is either declined or approved a Authorization object is return.
+     * If an error occurs, either on the server side or internal an exception is thrown.
+     *
+     * @param refundRequest to be sent to Handpoint E-Commerce web service.
+     * @param cardAcceptor  the terminal identifier, used to find the correct merchant.
+     * @return Refund, either approved or declined. If object has approval code has been approved, otherwise declined.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     * @throws InvalidMessageException if card screening is enabled and the card data is refused
+     */
+
+    protected Refund sendRefundRequest(RefundRequest refundRequest, String cardAcceptor) throws HpServerError, HpECommerceException, InvalidMessageException {
+        // A card that has expired since the purchase can still be refunded, only the card number is checked
+        screen(refundRequest.getCardNumber(), null);
+        RequestContext context = newContext(Operation.REFUND);
+        String terminalDateTime = context.getTerminalDateTime();
+        InFlight transaction = new InFlight(cardAcceptor, ECommerceClient.REFUND, refundRequest.getCurrency(),
+                refundRequest.getAmount(), refundRequest.getCustomerReference(), terminalDateTime);
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(RefundRequest.class, refundRequest);
+            transaction.begin();
+            response = send(cardAcceptor, Operation.REFUND, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getRefundUrl(cardAcceptor, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            transaction.resolve(TransactionJournal.NOT_SENT);
+            throw e;
+        } catch (Exception e) {
+            transaction.failed(e);
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200 || response.getStatus() == 403) {
+            Refund refund;
+            try {
+                refund = readEntity(response, Refund.class, terminalDateTime);
+            } catch (HpECommerceException e) {
+                transaction.unknown();
+                throw e;
+            }
+            transaction.resolve(TransactionJournal.ANSWERED);
+            return refund;
+        } else {
+            transaction.resolve(TransactionJournal.ERROR);
+            throw new HpServerError("Refund declined.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+    /**
+     * Sends authorization requests. If request is either declined or approved a Authorization object is return.
+     * If an error occurs, either on the server side or internal an exception is thrown.
+     *
+     * @param reversalRequest to be sent to Handpoint E-Commerce web service.
+     * @param cardAcceptor    the terminal identifier, used to find the correct merchant.
+     * @return Reversal, either approved or declined.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     */
+    protected Reversal sendReversalRequest(ReversalRequest reversalRequest, String cardAcceptor) throws HpServerError, HpECommerceException {
+        RequestContext context = newContext(Operation.REVERSAL);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(ReversalRequest.class, reversalRequest);
+            response = send(cardAcceptor, Operation.REVERSAL, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getReversalUrl(cardAcceptor, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200 || response.getStatus() == 403) {
+            return readEntity(response, Reversal.class, terminalDateTime);
+        } else {
+            throw new HpServerError("Reversing declined.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+    /**
+     * Sends authorization requests. If request is either declined or approved a Authorization object is return.
+     * If an error occurs, either on the server side or internal an exception is thrown.
+     *
+     * @param cancellationRequest to be sent to Handpoint E-Commerce web service.
+     * @param cardAcceptor        the terminal identifier, used to find the correct merchant.
+     * @return Cancellation, either approved or declined.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     */
+    protected Cancellation sendCancellationRequest(CancellationRequest cancellationRequest, String cardAcceptor) throws HpServerError, HpECommerceException {
+        RequestContext context = newContext(Operation.CANCELLATION);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(CancellationRequest.class, cancellationRequest);
+            response = send(cardAcceptor, Operation.CANCELLATION, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getCancellationUrl(cardAcceptor, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200) {
+            Cancellation cancellation = readEntity(response, Cancellation.class, terminalDateTime);
+            TransactionJournal journal = transactionJournal;
+            if (journal != null) {
+                try {
+                    journal.resolve(cardAcceptor, cancellationRequest.getTransactionType(),
+                            cancellationRequest.getTerminalDateTime(), TransactionJournal.CANCELLED);
+                } catch (IOException e) {
+                    // The transaction is listed again on recovery, cancelling it twice is harmless
+                }
+            }
+            return cancellation;
+        } else {
+            throw new HpServerError("Cancellation declined.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+
+    /**
+     * Sends a request to create token. If it succeeds the token object is returned, otherwise an error is thrown.
+     *
+     * @param tokenRequest to be sent to Handpoint E-Commerce web service
+     * @param cardAcceptor the terminal identifier, used to find the correct merchant.
+     * @param token        the card information to store
+     * @return a token object with the card information.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     * @throws InvalidMessageException if card screening is enabled and the card data is refused
+     */
+    protected Token sendPutToken(TokenRequest tokenRequest, String cardAcceptor, String token) throws HpServerError, HpECommerceException, InvalidMessageException {
+        screen(tokenRequest.getCardNumber(), tokenRequest.getExpiryDateMMYY());
+        TokenCache cache = tokenCache;
+        if (cache != null) {
+            // Not found in the cache while the card information changes, even if the request fails
+            cache.invalidate(environment, cardAcceptor, token);
+        }
+        // Lookups sent before are not shared with later ones
+        tokenLookups.remove(TokenCache.key(environment, cardAcceptor, token));
+        RequestContext context = newContext(Operation.TOKENSTORE);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(TokenRequest.class, tokenRequest);
+            response = send(cardAcceptor, Operation.TOKENSTORE, false, context, () -> httpClient.sendPutRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 201) {
+            Token created = readEntity(response, Token.class, terminalDateTime);
+            if (cache != null) {
+                cache.put(environment, cardAcceptor, token, created);
+            }
+            return created;
+        } else {
+            throw new HpServerError("Error creating token.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+
+    /**
+     * Sends a request to update token. If it succeeds the token object is returned, otherwise an error is thrown.
+     *
+     * @param tokenRequest to be sent to Handpoint E-Commerce web service
+     * @param cardAcceptor the terminal identifier, used to find the correct merchant.
+     * @param token        the card information to store
+     * @return a token object with the card information.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     * @throws InvalidMessageException if card screening is enabled and the card data is refused
+     */
+    protected Token sendPostToken(TokenRequest tokenRequest, String cardAcceptor, String token) throws HpServerError, HpECommerceException, InvalidMessageException {
+        screen(tokenRequest.getCardNumber(), tokenRequest.getExpiryDateMMYY());
+        TokenCache cache = tokenCache;
+        if (cache != null) {
+            cache.invalidate(environment, cardAcceptor, token);
+        }
+        tokenLookups.remove(TokenCache.key(environment, cardAcceptor, token));
+        RequestContext context = newContext(Operation.TOKENSTORE);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            byte[] body = encode(TokenRequest.class, tokenRequest);
+            response = send(cardAcceptor, Operation.TOKENSTORE, false, context, () -> httpClient.sendPostRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), body, context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200) {
+            Token updated = readEntity(response, Token.class, terminalDateTime);
+            if (cache != null) {
+                cache.put(environment, cardAcceptor, token, updated);
+            }
+            return updated;
+        } else {
+            throw new HpServerError("Error editing token.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+
+    /**
+     * Sends a request to get token. If it succeeds the token object is returned, otherwise an error is thrown.
+     *
+     * @param cardAcceptor the terminal identifier, used to find the correct merchant.
+     * @param token        the card information to get
+     * @return a token object with the card information.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     */
+    protected Token sendGetToken(String token, String cardAcceptor) throws HpServerError, HpECommerceException {
+        TokenCache cache = tokenCache;
+        if (cache != null) {
+            Token cached = cache.get(environment, cardAcceptor, token);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        // Lookups of the same token in flight share one request
+        String key = TokenCache.key(environment, cardAcceptor, token);
+        RequestContext context = newContext(Operation.TOKENSTORE);
+        TokenLookup lookup = new TokenLookup(context.getTerminalDateTime());
+        TokenLookup inFlight = tokenLookups.putIfAbsent(key, lookup);
+        if (inFlight != null) {
+            return awaitLookup(inFlight);
+        }
+        try {
+            // The threads waiting for the lookup copy the token found, the owner gets a copy too
+            Token found = lookupToken(token, cardAcceptor, cache, context);
+            lookup.complete(found);
+            return copy(found);
+        } catch (HpServerError | HpECommerceException | RuntimeException e) {
+            lookup.completeExceptionally(e);
+            throw e;
+        } finally {
+            tokenLookups.remove(key, lookup);
+        }
+    }
+
+    /**
+     * Waits for a lookup sent by another thread, until the deadline of this client if it has one.
+     *
+     * @return a copy of the token found, the caller may change it
+     * @throws DeadlineExceededException with the terminal date time of the lookup, if the deadline passes first
+     */
+    private Token awaitLookup(TokenLookup lookup) throws HpServerError, HpECommerceException {
+        Token found;
+        try {
+            found = deadline == null ? lookup.get() : lookup.get(deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new DeadlineExceededException("Deadline exceeded", e, lookup.terminalDateTime);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HpECommerceException("Interrupted waiting for token lookup", e, lookup.terminalDateTime);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HpServerError) {
+                throw (HpServerError) cause;
+            } else if (cause instanceof HpECommerceException) {
+                throw (HpECommerceException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+        return copy(found);
+    }
+
+    private static Token copy(Token found) {
+        Token copy = new Token();
+        copy.setToken(found.getToken());
+        copy.setMaskedCardNumber(found.getMaskedCardNumber());
+        copy.setExpiryDateMMYY(found.getExpiryDateMMYY());
+        copy.setCardTypeName(found.getCardTypeName());
+        return copy;
+    }
+
+    private Token lookupToken(String token, String cardAcceptor, TokenCache cache, RequestContext context) throws HpServerError, HpECommerceException {
+        long generation = cache == null ? 0 : cache.generation(environment, cardAcceptor, token);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            response = send(cardAcceptor, Operation.TOKENSTORE, true, context, () -> httpClient.sendGetRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200) {
+            Token found = readEntity(response, Token.class, terminalDateTime);
+            if (cache != null) {
+                // Not cached if the token was updated or deleted while the lookup was in flight
+                cache.put(environment, cardAcceptor, token, found, generation);
+            }
+            return found;
+        } else {
+            throw new HpServerError("Error getting token.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+
+    /**
+     * Sends a request to delete token. If it succeeds the token object is returned, otherwise an error is thrown.
+     *
+     * @param cardAcceptor the terminal identifier, used to find the correct merchant.
+     * @param token        the card information token to be deleted
+     * @return a token object with the card information.
+     * @throws HpServerError        if the Handpoint E-Commerce web service returns an error response.
+     * @throws HpECommerceException if internal error occurs
+     */
+    protected Token sendDeleteToken(String token, String cardAcceptor) throws HpServerError, HpECommerceException {
+        TokenCache cache = tokenCache;
+        if (cache != null) {
+            cache.invalidate(environment, cardAcceptor, token);
+        }
+        tokenLookups.remove(TokenCache.key(environment, cardAcceptor, token));
+        RequestContext context = newContext(Operation.TOKENSTORE);
+        String terminalDateTime = context.getTerminalDateTime();
+        ClientResponse response = null;
+        try {
+            response = send(cardAcceptor, Operation.TOKENSTORE, false, context, () -> httpClient.sendDeleteRequest(UrlGenerator.getTokenizationUrl(cardAcceptor, token, environment), context));
+        } catch (RequestRejectedException | DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            throw sendFailed(e, context);
+        }
+        if (response.getStatus() == 200) {
+            return readEntity(response, Token.class, terminalDateTime);
+        } else {
+            throw new HpServerError("Error deleting token.", readEntity(response, ErrorMessage.class, terminalDateTime), response.getStatus());
+        }
+    }
+
+    /**
+     * Replaces the signer of a client sharing the transport of a MerchantGateway, e.g. when the shared secret of the
+     * merchant is rotated. Requests already sent keep the signer they were started with.
+     *
+     * @param signer signer keyed with the new shared secret
+     */
+    void setSigner(HmacSigner signer) {
+        this.signer = signer;
+    }
+
+    HmacSigner getSigner() {
+        return signer;
+    }
+
+    /**
+     * @return context of a new request, with the signer of the client and the deadline of the operation or of the
+     * client, whichever is earlier
+     */
+    private RequestContext newContext(Operation operation) {
+        RequestContext context = RequestContext.create();
+        if (signer != null) {
+            context = context.withSigner(signer);
+        }
+        Timeouts operationTimeouts = timeouts;
+        Deadline requestDeadline = operationTimeouts == null ? deadline : operationTimeouts.newDeadline(operation).min(deadline);
+        return requestDeadline == null ? context : context.withDeadline(requestDeadline);
+    }
+
+    /**
+     * @return the exception to throw for a request that could not be sent or whose response could not be read,
+     * a DeadlineExceededException if the deadline of the request has passed
+     */
+    private static HpECommerceException sendFailed(Exception e, RequestContext context) {
+        Deadline requestDeadline = context.getDeadline();
+        if (requestDeadline != null && requestDeadline.isExpired()) {
+            return new DeadlineExceededException("Deadline exceeded", e, context.getTerminalDateTime());
+        }
+        return new HpECommerceException("Error when sending request", e, context.getTerminalDateTime());
+    }
+
+    /**
+     * @param e the exception a request failed with before its response was read
+     * @return false if the request was refused by the client, or failed before it could reach the web service
+     */
+    private static boolean mayHaveBeenSent(Exception e) {
+        return !(e instanceof HpECommerceException || e instanceof HpServerError || e instanceof InterruptedException)
+                && !RetryPolicy.isNotSent(e);
+    }
+
+    /**
+     * A token lookup in flight, completed with the token found, which no caller gets, or the exception of the lookup.
+     */
+    private static final class TokenLookup extends CompletableFuture<Token> {
+        private final String terminalDateTime;
+
+        private TokenLookup(String terminalDateTime) {
+            this.terminalDateTime = terminalDateTime;
+        }
+    }
+
+    /**
+     * An authorization, payment or refund being sent. It is recorded in the transaction journal before it is sent and
+     * resolved once its outcome is known, if its outcome is unknown it is handed to the auto canceller and left
+     * unresolved until its cancellation is answered.
+     */
+    private final class InFlight {
+        private final String cardAcceptor;
+        private final String transactionType;
+        private final String currency;
+        private final String amount;
+        private final String customerReference;
+        private final String terminalDateTime;
+        private final TransactionJournal journal = transactionJournal;
+        private long entry = -1;
+
+        InFlight(String cardAcceptor, String transactionType, String currency, String amount, String customerReference,
+                 String terminalDateTime) {
+            this.cardAcceptor = cardAcceptor;
+            this.transactionType = transactionType;
+            this.currency = currency;
+            this.amount = amount;
+            this.customerReference = customerReference;
+            this.terminalDateTime = terminalDateTime;
+        }
+
+        void begin() throws HpECommerceException {
+            if (journal != null) {
+                try {
+                    entry = journal.begin(transactionType, cardAcceptor, currency, amount, terminalDateTime, customerReference);
+                } catch (IOException e) {
+                    throw new HpECommerceException("Error when writing transaction journal", e, terminalDateTime);
+                }
+            }
+        }
+
+        void failed(Exception e) {
+            if (mayHaveBeenSent(e)) {
+                unknown();
+            } else {
+                resolve(TransactionJournal.NOT_SENT);
+            }
+        }
+
+        /**
+         * The cancellation is sent without the deadline of this client, which has passed or will soon.
+         */
+        void unknown() {
+            AutoCanceller canceller = autoCanceller;
+            if (canceller != null) {
+                canceller.enqueue(deadline == null ? BixbyClient.this : new BixbyClient(BixbyClient.this, (Deadline) null),
+                        cardAcceptor, transactionType, currency, amount, terminalDateTime);
+            }
+        }
+
+        void resolve(String outcome) {
+            if (entry != -1) {
+                try {
+                    journal.complete(entry, outcome);
+                } catch (IOException e) {
+                    // The transaction is listed again on recovery, cancelling it is harmless
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the card data with the card screener, if card screening is enabled.
+     */
+    private void screen(String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        if (cardScreener != null) {
+            cardScreener.screen(cardNumber, expiryDateMMYY);
+        }
+    }
+
+    /**
+     * Sends a request through the rate limiter, the concurrency limiter and the circuit breaker of its operation,
+     * retrying it if the retry policy allows. The rate limit is taken once per request, each attempt waits for the
+     * concurrency limiter on its own. No wait lasts beyond the deadline of the request.
+     *
+     * @param idempotent true if the request only reads, false if the web service could apply it twice
+     */
+    private ClientResponse send(String cardAcceptor, Operation operation, boolean idempotent, RequestContext context, Callable<ClientResponse> request) throws Exception {
+        String terminalDateTime = context.getTerminalDateTime();
+        Deadline requestDeadline = context.getDeadline();
+        if (requestDeadline != null && requestDeadline.isExpired()) {
+            throw new DeadlineExceededException("Deadline exceeded before sending", null, terminalDateTime);
+        }
+        RateLimiter rates = rateLimiter;
+        if (rates != null && !rates.tryAcquire(cardAcceptor, operation, requestDeadline)) {
+            throw new RateLimitExceededException("Rate limit exceeded: " + cardAcceptor + " " + operation, terminalDateTime);
+        }
+        CircuitBreakers breakers = circuitBreakers;
+        Callable<ClientResponse> call = breakers == null ? request
+                : guard(breakers.get(environment, UrlGenerator.getBaseUrl(environment), operation), terminalDateTime, request);
+        ConcurrencyLimiter limiter = concurrencyLimiter;
+        if (limiter != null) {
+            call = limit(limiter, operation, requestDeadline, terminalDateTime, call);
+        }
+        RetryPolicy policy = retryPolicy;
+        return policy == null ? call.call() : policy.execute(idempotent, requestDeadline, call);
+    }
+
+    /**
+     * Refuses the request while the breaker is open and records its outcome otherwise. Responses with a 5xx status
+     * count as failures, declines and other error responses show the web service is up.
+     */
+    private static Callable<ClientResponse> guard(CircuitBreaker breaker, String terminalDateTime, Callable<ClientResponse> request) {
+        return () -> {
+            if (!breaker.tryAcquire()) {
+                throw new CircuitBreakerOpenException("Circuit breaker open: " + breaker.getName(), terminalDateTime);
+            }
+            long start = System.nanoTime();
+            ClientResponse response;
+            try {
+                response = request.call();
+            } catch (Exception e) {
+                breaker.onFailure(System.nanoTime() - start);
+                throw e;
+            }
+            if (response.getStatus() >= 500) {
+                breaker.onFailure(System.nanoTime() - start);
+            } else {
+                breaker.onSuccess(System.nanoTime() - start);
+            }
+            return response;
+        };
+    }
+
+    /**
+     * Waits for the limiter before sending the request and adapts the limit to its round trip. Responses with a 5xx
+     * status and failed requests cut the limit, requests refused by a circuit breaker were not sent and are ignored.
+     * Round trips are compared with those of the same operation.
+     */
+    private static Callable<ClientResponse> limit(ConcurrencyLimiter limiter, Operation operation, Deadline deadline,
+                                                  String terminalDateTime, Callable<ClientResponse> request) {
+        return () -> {
+            long start = limiter.acquire(deadline);
+            if (start == -1) {
+                throw new ConcurrencyLimitExceededException("Concurrency limit exceeded: " + limiter, terminalDateTime);
+            }
+            ClientResponse response;
+            try {
+                response = request.call();
+            } catch (CircuitBreakerOpenException e) {
+                limiter.release();
+                throw e;
+            } catch (Exception e) {
+                limiter.release(operation, start, true);
+                throw e;
+            }
+            limiter.release(operation, start, response.getStatus() >= 500);
+            return response;
+        };
+    }
+
+    /**
+     * Encodes a request body with the message codec and records its size in the wire metrics.
+     */
+    private <T> byte[] encode(Class<T> messageType, T message) throws HpECommerceException {
+        byte[] body = messageCodec.encode(messageType, message);
+        wireMetrics.record(messageType, body.length);
+        return body;
+    }
+
+    /**
+     * Reads the response body with the message codec and closes the entity stream.
+     */
+    private <T> T readEntity(ClientResponse response, Class<T> messageType, String terminalDateTime) throws HpECommerceException {
+        try (InputStream stream = response.getEntityInputStream()) {
+            return messageCodec.decode(messageType, stream);
+        } catch (HpECommerceException e) {
+            throw new HpECommerceException("Error when reading response", e.getCause(), terminalDateTime);
+        } catch (IOException e) {
+            throw new HpECommerceException("Error when reading response", e, terminalDateTime);
+        }
+    }
+}
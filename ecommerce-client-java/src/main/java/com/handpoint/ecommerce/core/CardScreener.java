@@ -0,0 +1,161 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+
+import java.time.Clock;
+import java.time.YearMonth;
+
+/**
+ * Checks card data locally before a request is sent, so card numbers and expiry dates the Handpoint E-Commerce web
+ * service would refuse do not cost a signed round trip. A card number must pass the Luhn check and the card must
+ * not have expired; the card is valid through the month of its expiry date. Refunds are only screened by card
+ * number, a card that has expired since the purchase can still be refunded.
+ * <p/>
+ * The card brand is looked up from the first six digits of the card number in a sorted table of BIN ranges, giving
+ * the cardTypeName the web service returns for the card. Card numbers outside the known ranges are not refused.
+ */
+public class CardScreener {
+
+    public static final String INVALID_CARD_NUMBER = "Invalid card number";
+    public static final String INVALID_EXPIRY_DATE = "Invalid expiry date. Must be MMYY";
+    public static final String CARD_EXPIRED = "Card expired";
+
+    private static final int BIN_LENGTH = 6;
+    private static final int MIN_CARD_LENGTH = 12;
+    private static final int MAX_CARD_LENGTH = 19;
+
+    private static final String[] CARD_TYPE_NAMES = {
+            "VISA", "MasterCard", "American Express", "Maestro", "Diners Club", "Discover", "JCB"
+    };
+    private static final byte VISA = 0, MASTERCARD = 1, AMEX = 2, MAESTRO = 3, DINERS = 4, DISCOVER = 5, JCB = 6;
+
+    // BIN ranges, first and last six digit prefix, sorted and not overlapping
+    private static final int[] BIN_FIRST = {
+            222100, 300000, 309500, 340000, 352800, 360000, 370000, 380000,
+            400000, 500000, 510000, 560000, 601100, 644000, 670000
+    };
+    private static final int[] BIN_LAST = {
+            272099, 305999, 309599, 349999, 358999, 369999, 379999, 399999,
+            499999, 509999, 559999, 589999, 601199, 659999, 679999
+    };
+    private static final byte[] BIN_TYPE = {
+            MASTERCARD, DINERS, DINERS, AMEX, JCB, DINERS, AMEX, DINERS,
+            VISA, MAESTRO, MASTERCARD, MAESTRO, DISCOVER, DISCOVER, MAESTRO
+    };
+
+    private final Clock clock;
+
+    public CardScreener() {
+        this(Clock.systemDefaultZone());
+    }
+
+    /**
+     * @param clock used to find the current month when checking the expiry date
+     */
+    public CardScreener(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Checks card data. A null card number is not checked, the request then uses a token or refers to an
+     * earlier transaction.
+     *
+     * @param cardNumber     the card number, may be null
+     * @param expiryDateMMYY the expiry date, checked if the card number is set
+     * @throws InvalidMessageException if the card number fails the Luhn check or the card has expired
+     */
+    public void screen(String cardNumber, String expiryDateMMYY) throws InvalidMessageException {
+        if (cardNumber == null) {
+            return;
+        }
+        if (!isValidCardNumber(cardNumber)) {
+            throw new InvalidMessageException(INVALID_CARD_NUMBER);
+        }
+        if (expiryDateMMYY != null) {
+            YearMonth expiry = parseExpiryDate(expiryDateMMYY);
+            if (expiry == null) {
+                throw new InvalidMessageException(INVALID_EXPIRY_DATE);
+            }
+            if (expiry.isBefore(YearMonth.now(clock))) {
+                throw new InvalidMessageException(CARD_EXPIRED);
+            }
+        }
+    }
+
+    /**
+     * @param cardNumber the card number
+     * @return true if the card number has 12 to 19 digits and passes the Luhn check
+     */
+    public static boolean isValidCardNumber(String cardNumber) {
+        int length = cardNumber.length();
+        if (length < MIN_CARD_LENGTH || length > MAX_CARD_LENGTH) {
+            return false;
+        }
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = length - 1; i >= 0; i--) {
+            int digit = cardNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            if (doubled) {
+                digit *= 2;
+                if (digit > 9) {
+                    digit -= 9;
+                }
+            }
+            sum += digit;
+            doubled = !doubled;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Looks up the card brand from the BIN, the first six digits of the card number.
+     *
+     * @param cardNumber the card number
+     * @return the cardTypeName returned by the web service for the card, or null if the brand is not known
+     */
+    public static String getCardTypeName(String cardNumber) {
+        if (cardNumber == null || cardNumber.length() < BIN_LENGTH) {
+            return null;
+        }
+        int bin = 0;
+        for (int i = 0; i < BIN_LENGTH; i++) {
+            int digit = cardNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return null;
+            }
+            bin = bin * 10 + digit;
+        }
+        // Find the last range starting at or before the bin
+        int low = 0;
+        int high = BIN_FIRST.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (BIN_FIRST[middle] <= bin) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high >= 0 && bin <= BIN_LAST[high] ? CARD_TYPE_NAMES[BIN_TYPE[high]] : null;
+    }
+
+    /**
+     * @return the month the card expires, or null if the expiry date is not a valid MMYY date
+     */
+    private static YearMonth parseExpiryDate(String expiryDateMMYY) {
+        if (expiryDateMMYY.length() != 4) {
+            return null;
+        }
+        for (int i = 0; i < 4; i++) {
+            if (expiryDateMMYY.charAt(i) < '0' || expiryDateMMYY.charAt(i) > '9') {
+                return null;
+            }
+        }
+        int month = Integer.parseInt(expiryDateMMYY.substring(0, 2));
+        int year = 2000 + Integer.parseInt(expiryDateMMYY.substring(2, 4));
+        return month >= 1 && month <= 12 ? YearMonth.of(year, month) : null;
+    }
+}
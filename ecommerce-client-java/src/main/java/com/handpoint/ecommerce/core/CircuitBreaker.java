@@ -0,0 +1,257 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to an operation of the web service while most recent requests to it fail or are slow,
+ * so callers fail fast instead of each waiting out a connect or read timeout.
+ * <p/>
+ * The outcome of the last windowSize calls is kept in a sliding window. Once it holds at least minimumCalls, the
+ * breaker opens when the share of failed calls or of slow calls reaches its threshold. A call fails if it throws or
+ * the web service answers with a 5xx status, it is slow if it takes longer than slowCallMillis. While open, calls
+ * are refused. After openMillis the breaker is half open and lets halfOpenCalls probe calls through: if all of them
+ * succeed in time it closes, otherwise it opens again.
+ * <p/>
+ * Listeners are told about every change of state.
+ */
+public class CircuitBreaker {
+
+    /**
+     * States of a circuit breaker.
+     */
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * Told about state changes of circuit breakers.
+     */
+    public interface Listener {
+
+        /**
+         * Called after the state changed, outside the lock of the breaker. Exceptions thrown are handed to the
+         * uncaught exception handler of the thread.
+         *
+         * @param breaker the circuit breaker
+         * @param from    the state before
+         * @param to      the state now
+         */
+        void onStateTransition(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final int slowCallRatePercent;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final List<Listener> sharedListeners;
+
+    // Sliding window of the last calls, guarded by this
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int calls;
+    private int next;
+    private int failures;
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesLeft;
+    private int probesSucceeded;
+
+    /**
+     * @param name                identifies the breaker, e.g. in listeners
+     * @param windowSize          number of calls in the sliding window
+     * @param minimumCalls        calls needed in the window before the breaker can open
+     * @param failureRatePercent  percentage of failed calls that opens the breaker
+     * @param slowCallRatePercent percentage of slow calls that opens the breaker
+     * @param slowCallMillis      calls taking longer are slow
+     * @param openMillis          time the breaker stays open before probing
+     * @param halfOpenCalls       probe calls let through while half open
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, int slowCallRatePercent,
+                          long slowCallMillis, long openMillis, int halfOpenCalls) {
+        this(name, windowSize, minimumCalls, failureRatePercent, slowCallRatePercent, slowCallMillis, openMillis,
+                halfOpenCalls, Collections.<Listener>emptyList());
+    }
+
+    CircuitBreaker(String name, int windowSize, int minimumCalls, int failureRatePercent, int slowCallRatePercent,
+                   long slowCallMillis, long openMillis, int halfOpenCalls, List<Listener> sharedListeners) {
+        if (windowSize < 1 || minimumCalls < 1 || minimumCalls > windowSize || halfOpenCalls < 1) {
+            throw new IllegalArgumentException("Invalid circuit breaker settings");
+        }
+        this.name = name;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.halfOpenCalls = halfOpenCalls;
+        this.sharedListeners = sharedListeners;
+        failed = new boolean[windowSize];
+        slow = new boolean[windowSize];
+    }
+
+    /**
+     * Asks to make a call. Every permitted call must be followed by onSuccess or onFailure.
+     *
+     * @return true if the call may be made, false if the breaker refuses it
+     */
+    public boolean tryAcquire() {
+        State from;
+        synchronized (this) {
+            from = state;
+            if (state == State.CLOSED) {
+                return true;
+            }
+            if (state == State.OPEN) {
+                if (System.nanoTime() - openedAt < openNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probesLeft = halfOpenCalls;
+                probesSucceeded = 0;
+            }
+            if (probesLeft == 0) {
+                return false;
+            }
+            probesLeft--;
+        }
+        if (from != State.HALF_OPEN) {
+            notifyListeners(from, State.HALF_OPEN);
+        }
+        return true;
+    }
+
+    /**
+     * Records a call that completed.
+     *
+     * @param durationNanos how long the call took
+     */
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    /**
+     * Records a call that failed.
+     *
+     * @param durationNanos how long the call took
+     */
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    private void record(boolean failure, long durationNanos) {
+        boolean slowCall = durationNanos > slowCallNanos;
+        State from;
+        State to;
+        synchronized (this) {
+            from = state;
+            if (state == State.HALF_OPEN) {
+                if (failure || slowCall) {
+                    open();
+                } else if (++probesSucceeded == halfOpenCalls) {
+                    close();
+                }
+            } else if (state == State.CLOSED) {
+                if (calls == failed.length) {
+                    failures -= failed[next] ? 1 : 0;
+                    slowCalls -= slow[next] ? 1 : 0;
+                } else {
+                    calls++;
+                }
+                failed[next] = failure;
+                slow[next] = slowCall;
+                failures += failure ? 1 : 0;
+                slowCalls += slowCall ? 1 : 0;
+                next = (next + 1) % failed.length;
+                if (calls >= minimumCalls && (failures * 100 >= failureRatePercent * calls
+                        || slowCalls * 100 >= slowCallRatePercent * calls)) {
+                    open();
+                }
+            }
+            // Calls permitted before the breaker opened are not counted while it is open
+            to = state;
+        }
+        if (from != to) {
+            notifyListeners(from, to);
+        }
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        calls = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void notifyListeners(State from, State to) {
+        for (Listener listener : listeners) {
+            notifyListener(listener, from, to);
+        }
+        for (Listener listener : sharedListeners) {
+            notifyListener(listener, from, to);
+        }
+    }
+
+    /**
+     * Hands an exception thrown by the listener to the uncaught exception handler of the thread, so it does not fail
+     * the call that changed the state or keep the other listeners from being told.
+     */
+    private void notifyListener(Listener listener, State from, State to) {
+        try {
+            listener.onStateTransition(this, from, to);
+        } catch (RuntimeException e) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+        }
+    }
+
+    /**
+     * @param listener told about every change of state of this breaker
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return percentage of failed calls in the sliding window
+     */
+    public synchronized int getFailureRate() {
+        return calls == 0 ? 0 : failures * 100 / calls;
+    }
+
+    /**
+     * @return percentage of slow calls in the sliding window
+     */
+    public synchronized int getSlowCallRate() {
+        return calls == 0 ? 0 : slowCalls * 100 / calls;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker{" + name + ", " + getState() + '}';
+    }
+}
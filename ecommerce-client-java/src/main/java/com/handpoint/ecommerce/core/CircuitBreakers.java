@@ -0,0 +1,110 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The circuit breakers of a client, one for each environment, base url and operation, created on first use with
+ * the same settings. Listeners added here are told about state changes of all breakers.
+ */
+public class CircuitBreakers {
+
+    public static final int DEFAULT_WINDOW_SIZE = 50;
+    public static final int DEFAULT_MINIMUM_CALLS = 20;
+    public static final int DEFAULT_FAILURE_RATE_PERCENT = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_PERCENT = 80;
+    public static final long DEFAULT_SLOW_CALL_MILLIS = 5000;
+    public static final long DEFAULT_OPEN_MILLIS = 10000;
+    public static final int DEFAULT_HALF_OPEN_CALLS = 3;
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final int failureRatePercent;
+    private final int slowCallRatePercent;
+    private final long slowCallMillis;
+    private final long openMillis;
+    private final int halfOpenCalls;
+    private final List<CircuitBreaker.Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<Environment, ConcurrentMap<String, CircuitBreaker[]>> breakers = new EnumMap<>(Environment.class);
+
+    /**
+     * Creates breakers with the default settings.
+     */
+    public CircuitBreakers() {
+        this(DEFAULT_WINDOW_SIZE, DEFAULT_MINIMUM_CALLS, DEFAULT_FAILURE_RATE_PERCENT, DEFAULT_SLOW_CALL_RATE_PERCENT,
+                DEFAULT_SLOW_CALL_MILLIS, DEFAULT_OPEN_MILLIS, DEFAULT_HALF_OPEN_CALLS);
+    }
+
+    /**
+     * See CircuitBreaker for the settings.
+     */
+    public CircuitBreakers(int windowSize, int minimumCalls, int failureRatePercent, int slowCallRatePercent,
+                           long slowCallMillis, long openMillis, int halfOpenCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.slowCallMillis = slowCallMillis;
+        this.openMillis = openMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        for (Environment environment : Environment.values()) {
+            breakers.put(environment, new ConcurrentHashMap<String, CircuitBreaker[]>());
+        }
+    }
+
+    /**
+     * @param environment the environment
+     * @param baseUrl     the base url of the web service in the environment
+     * @param operation   the operation
+     * @return the breaker of the operation, created on first use
+     */
+    public CircuitBreaker get(Environment environment, String baseUrl, Operation operation) {
+        if (baseUrl == null) {
+            baseUrl = "";
+        }
+        ConcurrentMap<String, CircuitBreaker[]> byUrl = breakers.get(environment);
+        CircuitBreaker[] byOperation = byUrl.get(baseUrl);
+        if (byOperation == null) {
+            byOperation = byUrl.computeIfAbsent(baseUrl, url -> create(environment, url));
+        }
+        return byOperation[operation.ordinal()];
+    }
+
+    /**
+     * @return all breakers created so far
+     */
+    public List<CircuitBreaker> getAll() {
+        List<CircuitBreaker> all = new ArrayList<>();
+        for (ConcurrentMap<String, CircuitBreaker[]> byUrl : breakers.values()) {
+            for (CircuitBreaker[] byOperation : byUrl.values()) {
+                for (CircuitBreaker breaker : byOperation) {
+                    all.add(breaker);
+                }
+            }
+        }
+        return all;
+    }
+
+    /**
+     * @param listener told about state changes of all breakers, including those created later
+     */
+    public void addListener(CircuitBreaker.Listener listener) {
+        listeners.add(listener);
+    }
+
+    private CircuitBreaker[] create(Environment environment, String baseUrl) {
+        Operation[] operations = Operation.values();
+        CircuitBreaker[] created = new CircuitBreaker[operations.length];
+        for (Operation operation : operations) {
+            created[operation.ordinal()] = new CircuitBreaker(environment + " " + baseUrl + " " + operation, windowSize,
+                    minimumCalls, failureRatePercent, slowCallRatePercent, slowCallMillis, openMillis, halfOpenCalls,
+                    listeners);
+        }
+        return created;
+    }
+}
@@ -0,0 +1,248 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of requests in flight to the web service, adapting the limit to the round trip times observed.
+ * <p/>
+ * The limit grows additively while the average round trip of the last requests stays close to the shortest seen
+ * recently and at least half the limit is in use, by one request for every limit requests completed. When the average
+ * takes more than twice the shortest, or a request fails, the limit is cut by 10%, at most once for the requests
+ * started under the same limit, so a single slow period does not collapse it. The average is exponentially weighted
+ * over about the last 10 requests, so the jitter of single round trips does not move the limit. The shortest round
+ * trip is measured again every 500 requests, so the limit follows a web service whose normal latency changes.
+ * <p/>
+ * Round trips are compared per operation, so payments waiting for the card issuer do not look like congestion next to
+ * token lookups answered at once. The limit is shared by all operations.
+ * <p/>
+ * Requests over the limit wait for a request in flight to complete, for at most maxWaitMillis and with at most
+ * maxQueue requests waiting, and are rejected otherwise.
+ */
+public class ConcurrencyLimiter {
+
+    public static final int DEFAULT_INITIAL_LIMIT = 20;
+    public static final int DEFAULT_MIN_LIMIT = 10;
+    public static final int DEFAULT_MAX_LIMIT = 200;
+    public static final int DEFAULT_MAX_QUEUE = 100;
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 1000;
+
+    private static final double RTT_TOLERANCE = 2.0;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int BASELINE_SAMPLES = 500;
+    private static final double SMOOTHING = 0.1;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private final Map<Operation, RoundTrips> roundTrips = new EnumMap<>(Operation.class);
+    private final RoundTrips otherRoundTrips = new RoundTrips();
+    private long lastDecrease = System.nanoTime();
+
+    /**
+     * Creates a limiter with the default limits and queue.
+     */
+    public ConcurrencyLimiter() {
+        this(DEFAULT_INITIAL_LIMIT, DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, DEFAULT_MAX_QUEUE, DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param initialLimit  requests allowed in flight before any round trip is measured
+     * @param minLimit      the limit is never cut below this
+     * @param maxLimit      the limit never grows above this
+     * @param maxQueue      requests allowed to wait for the limit, more are rejected at once
+     * @param maxWaitMillis longest a request waits for the limit
+     */
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, int maxQueue, long maxWaitMillis) {
+        if (minLimit < 1 || initialLimit < minLimit || maxLimit < initialLimit || maxQueue < 0 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid concurrency limits");
+        }
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        for (Operation operation : Operation.values()) {
+            roundTrips.put(operation, new RoundTrips());
+        }
+    }
+
+    /**
+     * Waits until a request may be sent. Every permitted request must be followed by one of the release methods.
+     *
+     * @return the time the request was permitted, System.nanoTime(), or -1 if the request is rejected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquire() throws InterruptedException {
+        return acquire(null);
+    }
+
+    /**
+     * Waits until a request may be sent, but not beyond the deadline. Every permitted request must be followed by one
+     * of the release methods.
+     *
+     * @param deadline deadline of the request, or null
+     * @return the time the request was permitted, System.nanoTime(), or -1 if the request is rejected
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public long acquire(Deadline deadline) throws InterruptedException {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit) {
+                if (queued >= maxQueue) {
+                    return -1;
+                }
+                queued++;
+                try {
+                    long wait = deadline == null ? maxWaitNanos : Math.min(maxWaitNanos, deadline.remainingNanos());
+                    while (inFlight >= (int) limit) {
+                        if (wait <= 0) {
+                            return -1;
+                        }
+                        wait = available.awaitNanos(wait);
+                    }
+                } finally {
+                    queued--;
+                }
+            }
+            inFlight++;
+            return System.nanoTime();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a request that completed and adapts the limit to its round trip, compared with the round trips of the
+     * requests released without an operation.
+     *
+     * @param start   the time returned by acquire
+     * @param dropped true if the request failed, e.g. timed out or the web service answered with a 5xx status
+     */
+    public void release(long start, boolean dropped) {
+        release(null, start, dropped);
+    }
+
+    /**
+     * Releases a request that completed and adapts the limit to its round trip, compared with the round trips of the
+     * same operation.
+     *
+     * @param operation the operation of the request, or null
+     * @param start     the time returned by acquire
+     * @param dropped   true if the request failed, e.g. timed out or the web service answered with a 5xx status
+     */
+    public void release(Operation operation, long start, boolean dropped) {
+        long now = System.nanoTime();
+        long rtt = now - start;
+        lock.lock();
+        try {
+            boolean slow = (operation == null ? otherRoundTrips : roundTrips.get(operation)).add(rtt);
+            if (dropped || slow) {
+                // Only requests started after the last cut reflect the current limit
+                if (start - lastDecrease > 0) {
+                    limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+                    lastDecrease = now;
+                }
+            } else if (inFlight * 2 >= limit) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a request that was not sent, without adapting the limit.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return requests currently allowed in flight
+     */
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return requests currently in flight
+     */
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return requests currently waiting for the limit
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConcurrencyLimiter{limit=" + getLimit() + ", inFlight=" + getInFlight() + ", queued=" + getQueueDepth() + '}';
+    }
+
+    /**
+     * The shortest and average round trips of one operation, guarded by the lock of the limiter.
+     */
+    private static final class RoundTrips {
+        private long minRtt = Long.MAX_VALUE;
+        private long windowMinRtt = Long.MAX_VALUE;
+        private double averageRtt;
+        private int samples;
+
+        /**
+         * @return true if the average round trip takes more than twice the shortest
+         */
+        boolean add(long rtt) {
+            if (rtt < windowMinRtt) {
+                windowMinRtt = rtt;
+            }
+            if (rtt < minRtt) {
+                minRtt = rtt;
+            }
+            if (++samples == BASELINE_SAMPLES) {
+                minRtt = windowMinRtt;
+                windowMinRtt = Long.MAX_VALUE;
+                samples = 0;
+            }
+            averageRtt = averageRtt == 0 ? rtt : averageRtt + SMOOTHING * (rtt - averageRtt);
+            return averageRtt > minRtt * RTT_TOLERANCE;
+        }
+    }
+}
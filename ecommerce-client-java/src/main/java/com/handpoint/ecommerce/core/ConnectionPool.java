@@ -0,0 +1,174 @@
+package com.handpoint.ecommerce.core;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.SocketConfig;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+import java.lang.ref.WeakReference;
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of keep-alive HTTP connections used by the HttpClient transport.
+ * Connections are kept open between requests so TCP and TLS setup is only paid once per connection,
+ * idle connections are evicted in the background and stale connections are validated before they are reused.
+ */
+public class ConnectionPool {
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_HOST = 50;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5000;
+
+    private static final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "hp-ecommerce-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final long idleTimeoutMillis;
+    private final ScheduledFuture<?> evictionTask;
+    private volatile int connectTimeoutMillis = DEFAULT_CONNECT_TIMEOUT_MILLIS;
+
+    /**
+     * Creates a pool with the default limits.
+     */
+    public ConnectionPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_HOST, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param maxTotal          the maximum number of open connections in the pool
+     * @param maxPerHost        the maximum number of open connections to a single host
+     * @param idleTimeoutMillis connections idle for longer than this are closed by the evictor
+     */
+    public ConnectionPool(int maxTotal, int maxPerHost, long idleTimeoutMillis) {
+        if (maxTotal < 1 || maxPerHost < 1 || idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("Pool limits and idle timeout must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerHost);
+        connectionManager.setDefaultSocketConfig(SocketConfig.custom().setTcpNoDelay(true).build());
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(RequestConfig.custom().setStaleConnectionCheckEnabled(true).build())
+                .addInterceptorFirst(new DeadlineInterceptor(this::getConnectTimeout))
+                .disableContentCompression()
+                .build();
+        long evictionInterval = Math.max(idleTimeoutMillis / 2, 1);
+        Eviction eviction = new Eviction(this);
+        evictionTask = evictor.scheduleWithFixedDelay(eviction, evictionInterval, evictionInterval, TimeUnit.MILLISECONDS);
+        eviction.task = evictionTask;
+    }
+
+    /**
+     * Closes connections that are expired or have been idle for longer than the idle timeout.
+     */
+    public void evictIdleConnections() {
+        connectionManager.closeExpiredConnections();
+        connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Overrides the maximum number of connections for a single host.
+     *
+     * @param url        any url on the host, for example the environment base url
+     * @param maxPerHost the maximum number of open connections to that host
+     */
+    public void setMaxConnectionsPerHost(String url, int maxPerHost) {
+        connectionManager.setMaxPerRoute(getRoute(url), maxPerHost);
+    }
+
+    /**
+     * Sets the longest time to wait for a connection to be made. Requests with a deadline wait at most until it.
+     *
+     * @param connectTimeoutMillis the connect timeout, 0 to wait as long as the operating system allows
+     */
+    public void setConnectTimeout(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @return the longest time to wait for a connection to be made, 0 if there is no limit
+     */
+    public int getConnectTimeout() {
+        return connectTimeoutMillis;
+    }
+
+    /**
+     * @return statistics for the whole pool; leased, available, pending and max connections
+     */
+    public PoolStats getStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * @param url any url on the host, for example the environment base url
+     * @return statistics for the connections to a single host
+     */
+    public PoolStats getStats(String url) {
+        return connectionManager.getStats(getRoute(url));
+    }
+
+    /**
+     * Stops the idle connection evictor and closes all connections in the pool.
+     */
+    public void shutdown() {
+        evictionTask.cancel(false);
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Evicts the idle connections of a pool until it is no longer used. The pool is only weakly reachable from the
+     * evictor, so a pool that was never shut down is still garbage collected with its client.
+     */
+    private static class Eviction implements Runnable {
+
+        private final WeakReference<ConnectionPool> pool;
+        private volatile ScheduledFuture<?> task;
+
+        Eviction(ConnectionPool pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        @Override
+        public void run() {
+            ConnectionPool connectionPool = pool.get();
+            if (connectionPool != null) {
+                connectionPool.evictIdleConnections();
+            } else if (task != null) {
+                task.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the Apache http client sending requests over the connections of this pool
+     */
+    CloseableHttpClient getHttpClient() {
+        return httpClient;
+    }
+
+    private static HttpRoute getRoute(String url) {
+        URI uri = URI.create(url);
+        boolean secure = "https".equalsIgnoreCase(uri.getScheme());
+        int port = uri.getPort() != -1 ? uri.getPort() : (secure ? 443 : 80);
+        return new HttpRoute(new HttpHost(uri.getHost(), port, uri.getScheme()), null, secure);
+    }
+}
@@ -0,0 +1,113 @@
+package com.handpoint.ecommerce.core;
+
+import javax.xml.bind.annotation.XmlEnum;
+import javax.xml.bind.annotation.XmlEnumValue;
+import javax.xml.bind.annotation.XmlType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The country code enum based on the ISO-4217 standard.
+ * <p/>
+ * The values used  here were obtained from wikipedia (http://en.wikipedia.org/wiki/ISO_4217). A few currencies
+ * from that list are omitted (commodities like gold, silver, platinum) including the two non-decimal currencies
+ * (ariary of Mgdagaskar and Mauritanian ouguiya).
+ * <p/>
+ * Note: Possible future enhancements (if they are of any value) would be a link to the CountryEnum indicating
+ * in what countries the currency is in circulation. This info is available from the above wikipedia page.
+ */
+@XmlType(name = "currency")
+@XmlEnum
+public enum Currency {
+
+
+    @XmlEnumValue("CAD")
+    CAD(124, "CAD", 2, "Canadian dollar"),
+
+    @XmlEnumValue("CHF")
+    CHF(756, "CHF", 2, "Swiss franc"),
+
+    @XmlEnumValue("CNY")
+    CNY(156, "CNY", 2, "Chinese Yuan"),
+
+    @XmlEnumValue("CZK")
+    CZK(203, "CZK", 2, "Czech Koruna"),
+
+    @XmlEnumValue("DKK")
+    DKK(208, "DKK", 2, "Danish krone"),
+
+    @XmlEnumValue("EUR")
+    EUR(978, "EUR", 2, "Euro"),
+
+    @XmlEnumValue("GBP")
+    GBP(826, "GBP", 2, "Pound sterling"),
+
+    @XmlEnumValue("ISK")
+    ISK(352, "ISK", 0, "Iceland krona"),
+
+    @XmlEnumValue("NOK")
+    NOK(578, "NOK", 2, "Norwegian krone"),
+
+    @XmlEnumValue("RUB")
+    RUB(643, "RUB", 2, "Russian rouble"),
+
+    @XmlEnumValue("SEK")
+    SEK(752, "SEK", 2, "Swedish krona/kronor"),
+
+    @XmlEnumValue("SGD")
+    SGD(702, "SGD", 2, "Singapore dollar"),
+
+    @XmlEnumValue("USD")
+    USD(840, "USD", 2, "US dollar");
+
+    public final int id;
+    public final String alpha;
+    /**
+     * Number of digits after the decimal point of the currency, the minor unit exponent of ISO-4217.
+     */
+    public final int exponent;
+    public final String label;
+
+    private static final Map<String, Currency> BY_ALPHA = new HashMap<>();
+    private static final Currency[] BY_ID = new Currency[1000];
+
+    static {
+        for (Currency c : values()) {
+            BY_ALPHA.put(c.alpha, c);
+            BY_ID[c.id] = c;
+        }
+    }
+
+    private Currency(int id, String alpha, int exponent, String label) {
+        this.id = id;
+        this.alpha = alpha;
+        this.exponent = exponent;
+        this.label = label;
+    }
+
+    /**
+     * @param v the alphabetic ISO-4217 code
+     * @return the currency with the code
+     * @throws IllegalArgumentException if the currency is not known
+     */
+    public static Currency fromValue(String v) {
+        Currency c = v == null ? null : BY_ALPHA.get(v);
+        if (c == null) {
+            throw new IllegalArgumentException(v);
+        }
+        return c;
+    }
+
+    /**
+     * @param id the numeric ISO-4217 code
+     * @return the currency with the code
+     * @throws IllegalArgumentException if the currency is not known
+     */
+    public static Currency fromId(int id) {
+        Currency c = id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+        if (c == null) {
+            throw new IllegalArgumentException(String.valueOf(id));
+        }
+        return c;
+    }
+}
@@ -0,0 +1,79 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time by which a request must complete. The remaining budget is carried through every step of sending the
+ * request: waiting for the rate and concurrency limits, waiting between retries, leasing a connection from the pool,
+ * connecting and reading the response. When it runs out the request is aborted with a DeadlineExceededException.
+ * <p/>
+ * Deadlines are measured with System.nanoTime and are immutable, one deadline can be shared by several requests, e.g.
+ * all the steps of a checkout.
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+    private final long deadlineNanos;
+
+    private Deadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * @param duration time from now
+     * @param unit     unit of the duration
+     * @return a deadline the duration from now
+     */
+    public static Deadline after(long duration, TimeUnit unit) {
+        return new Deadline(System.nanoTime() + unit.toNanos(duration));
+    }
+
+    /**
+     * @param unit unit of the result
+     * @return time left until the deadline, 0 if it has passed
+     */
+    public long remaining(TimeUnit unit) {
+        return unit.convert(remainingNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return nanoseconds left until the deadline, 0 if it has passed
+     */
+    public long remainingNanos() {
+        long remaining = deadlineNanos - System.nanoTime();
+        return remaining > 0 ? remaining : 0;
+    }
+
+    /**
+     * @return true if the deadline has passed
+     */
+    public boolean isExpired() {
+        return deadlineNanos - System.nanoTime() <= 0;
+    }
+
+    /**
+     * @param other another deadline, may be null
+     * @return the earlier of the two deadlines
+     */
+    public Deadline min(Deadline other) {
+        return other == null || compareTo(other) <= 0 ? this : other;
+    }
+
+    /**
+     * Milliseconds left as a socket or connection timeout, where 0 means no timeout: at least 1.
+     */
+    int remainingTimeoutMillis() {
+        long millis = TimeUnit.NANOSECONDS.toMillis(remainingNanos() + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, millis));
+    }
+
+    @Override
+    public int compareTo(Deadline other) {
+        long difference = deadlineNanos - other.deadlineNanos;
+        return difference < 0 ? -1 : difference > 0 ? 1 : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline{remaining=" + remaining(TimeUnit.MILLISECONDS) + "ms}";
+    }
+}
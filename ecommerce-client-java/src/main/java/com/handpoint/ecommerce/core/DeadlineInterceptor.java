@@ -0,0 +1,75 @@
+package com.handpoint.ecommerce.core;
+
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.protocol.HttpContext;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Request interceptor of the Apache http client that shortens its timeouts to the deadline of the request being sent.
+ * <p/>
+ * Jersey has no way to set timeouts for a single request on the Apache http client, but the client runs its
+ * interceptors on the thread sending the request before it leases and connects a connection. The HttpClient puts the
+ * deadline of the request in a thread local while it sends it, and this interceptor sets the connection pool, connect
+ * and socket timeouts of the request to the time left until then, or the configured timeout if it is shorter. The
+ * socket timeout applies to each read, so a response that keeps trickling in can end a little after the deadline.
+ */
+class DeadlineInterceptor implements HttpRequestInterceptor {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final IntSupplier connectTimeoutMillis;
+
+    /**
+     * @param connectTimeoutMillis supplies the connect timeout of the pool, read for every request
+     */
+    DeadlineInterceptor(IntSupplier connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    /**
+     * @param deadline deadline of the request the current thread sends next
+     * @return the deadline it replaces, to restore with exit
+     */
+    static Deadline enter(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        return previous;
+    }
+
+    static void exit(Deadline previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    @Override
+    public void process(HttpRequest request, HttpContext context) {
+        HttpClientContext clientContext = HttpClientContext.adapt(context);
+        RequestConfig config = clientContext.getRequestConfig();
+        RequestConfig.Builder builder = RequestConfig.copy(config);
+        int connectTimeout = connectTimeoutMillis.getAsInt();
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            builder.setConnectTimeout(connectTimeout);
+        } else {
+            int remaining = deadline.remainingTimeoutMillis();
+            builder.setConnectTimeout(shorten(connectTimeout, remaining))
+                    .setSocketTimeout(shorten(config.getSocketTimeout(), remaining))
+                    .setConnectionRequestTimeout(shorten(config.getConnectionRequestTimeout(), remaining));
+        }
+        clientContext.setRequestConfig(builder.build());
+    }
+
+    /**
+     * @return the configured timeout if it is set and shorter than the time remaining, otherwise the time remaining
+     */
+    private static int shorten(int configured, int remaining) {
+        return configured > 0 && configured < remaining ? configured : remaining;
+    }
+}
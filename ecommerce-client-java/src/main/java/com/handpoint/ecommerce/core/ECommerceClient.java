@@ -1,5 +1,6 @@
 package com.handpoint.ecommerce.core;
 
+import com.handpoint.ecommerce.core.config.Config;
 import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
 import com.handpoint.ecommerce.core.exceptions.HpServerError;
 import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
@@ -7,20 +8,27 @@ import com.handpoint.ecommerce.messages.payment.*;
 import com.handpoint.ecommerce.messages.token.Token;
 import com.handpoint.ecommerce.messages.token.TokenRequest;
 
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  * Client to send requests to Handpoint E-Commerce Interface
  * Includes all most common actions.
+ * <p/>
+ * A client keeps a pool of connections open, close it when it is no longer needed.
  */
-public class ECommerceClient {
+public class ECommerceClient implements Closeable {
 
     public static final String AUTHORIZATION = "authorization";
     public static final String PAYMENT = "payment";
     public static final String REFUND = "refund";
     private static String WEB_PAYMENT_SCENARIO = "WEB";
     private BixbyClient client;
+    private boolean ownsTransport;
 
     private String cardAcceptor;
+    private int batchParallelism = getDefaultBatchParallelism();
 
     /**
      * Default constructor. Instantiates Bixby Client which is used to send the actual HTTP request.
@@ -31,6 +39,7 @@ public class ECommerceClient {
     public ECommerceClient(ECommerceUser eCommerceUser) {
         this.cardAcceptor = eCommerceUser.getCardAcceptor();
         client = new BixbyClient(eCommerceUser.getSharedSecret(), eCommerceUser.getEnvironment(), false);
+        ownsTransport = true;
     }
 
 
@@ -44,6 +53,7 @@ public class ECommerceClient {
     public ECommerceClient(ECommerceUser eCommerceUser, boolean enableMessageLogging) {
         this.cardAcceptor = eCommerceUser.getCardAcceptor();
         client = new BixbyClient(eCommerceUser.getSharedSecret(), eCommerceUser.getEnvironment(), enableMessageLogging);
+        ownsTransport = true;
     }
 
     /**
@@ -57,6 +67,7 @@ public class ECommerceClient {
     public ECommerceClient(String cardAcceptor, String sharedSecret, Environment environment) {
         this.cardAcceptor = cardAcceptor;
         client = new BixbyClient(sharedSecret, environment);
+        ownsTransport = true;
     }
 
     /**
@@ -71,8 +82,239 @@ public class ECommerceClient {
     public ECommerceClient(String cardAcceptor, String sharedSecret, Environment environment, boolean enableMessageLogging) {
         this.cardAcceptor = cardAcceptor;
         client = new BixbyClient(sharedSecret, environment, enableMessageLogging);
+        ownsTransport = true;
     }
 
+    /**
+     * @return the pool of keep-alive connections used to reach the Handpoint E-Commerce web service
+     */
+    public ConnectionPool getConnectionPool() {
+        return client.getConnectionPool();
+    }
+
+    /**
+     * Closes the pooled connections of this client. Clients returned by withDeadline share them and can not be used
+     * afterwards either. Clients handed out by a MerchantGateway are closed by shutting the gateway down, closing
+     * them does nothing.
+     */
+    @Override
+    public void close() {
+        if (ownsTransport) {
+            client.close();
+        }
+    }
+
+    /**
+     * Creates a client for a merchant of a MerchantGateway.
+     *
+     * @param cardAcceptor the cardAcceptor of the merchant
+     * @param client       the merchant's client, sharing the transport of the gateway
+     */
+    ECommerceClient(String cardAcceptor, BixbyClient client) {
+        this.cardAcceptor = cardAcceptor;
+        this.client = client;
+    }
+
+    /**
+     * @return the cardAcceptor requests of this client are sent for
+     */
+    public String getCardAcceptor() {
+        return cardAcceptor;
+    }
+
+    /**
+     * @return sizes of the request bodies sent by this client, in total and per message type
+     */
+    public WireMetrics getWireMetrics() {
+        return client.getWireMetrics();
+    }
+
+    /**
+     * Sets the policy deciding which requests that could not be sent are sent again. By default reads are retried
+     * on any failure and other requests only if the connection could not be made, see RetryPolicy.
+     *
+     * @param retryPolicy the policy to use, or null to never retry
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        client.setRetryPolicy(retryPolicy);
+    }
+
+    /**
+     * @return the circuit breakers requests of this client are sent through, to add listeners to. Null if circuit
+     * breakers are turned off
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return client.getCircuitBreakers();
+    }
+
+    /**
+     * Sets the limiter of the requests in flight, e.g. to share one limiter between clients sending to the same web
+     * service. By default each client has its own, see ConcurrencyLimiter.
+     *
+     * @param concurrencyLimiter the limiter to use, or null to send every request at once
+     */
+    public void setConcurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        client.setConcurrencyLimiter(concurrencyLimiter);
+    }
+
+    /**
+     * @return the time each operation is given to complete, to change per operation. Null if requests have no timeout
+     */
+    public Timeouts getTimeouts() {
+        return client.getTimeouts();
+    }
+
+    /**
+     * Sets the canceller of authorizations, payments and refunds whose outcome is unknown, e.g. because the response
+     * timed out. The canceller cancels them in the background and tells its listeners about the outcome. By default
+     * there is none, unless the com.handpoint.bixby.autocancel.enabled property is true.
+     *
+     * @param autoCanceller the canceller to use, or null to leave such transactions to the caller
+     */
+    public void setAutoCanceller(AutoCanceller autoCanceller) {
+        client.setAutoCanceller(autoCanceller);
+    }
+
+    /**
+     * @return the canceller of transactions whose outcome is unknown, to add listeners to. Null if there is none
+     */
+    public AutoCanceller getAutoCanceller() {
+        return client.getAutoCanceller();
+    }
+
+    /**
+     * Sets the journal authorizations, payments and refunds are recorded in before they are sent, so those whose
+     * outcome was lost with the JVM can be listed and cancelled after a restart. By default there is none, unless the
+     * com.handpoint.bixby.journal.file property is set.
+     *
+     * @param transactionJournal the journal to use, or null to not journal transactions
+     */
+    public void setTransactionJournal(TransactionJournal transactionJournal) {
+        client.setTransactionJournal(transactionJournal);
+    }
+
+    /**
+     * @return the journal of transactions in flight, to list unresolved transactions. Null if there is none
+     */
+    public TransactionJournal getTransactionJournal() {
+        return client.getTransactionJournal();
+    }
+
+    /**
+     * Sets the store approved authorizations and payments are remembered in by customer reference. A request repeated
+     * with the same customer reference gets the original answer and is not sent again, one sent while the first is in
+     * flight waits for its answer. By default there is none, unless the com.handpoint.bixby.idempotency.dir property
+     * is set.
+     *
+     * @param idempotencyStore the store to use, or null to send every request
+     */
+    public void setIdempotencyStore(IdempotencyStore idempotencyStore) {
+        client.setIdempotencyStore(idempotencyStore);
+    }
+
+    /**
+     * @return the store of answers by customer reference, null if every request is sent
+     */
+    public IdempotencyStore getIdempotencyStore() {
+        return client.getIdempotencyStore();
+    }
+
+    /**
+     * Sets the cache token lookups are answered from, so pages showing the stored card do not send a request on every
+     * view. Created and updated tokens are written to it, deleted ones removed. By default there is none, unless the
+     * com.handpoint.bixby.tokencache.capacity property is set.
+     *
+     * @param tokenCache the cache to use, or null to send every lookup
+     */
+    public void setTokenCache(TokenCache tokenCache) {
+        client.setTokenCache(tokenCache);
+    }
+
+    /**
+     * @return the cache of token lookups, null if tokens are not cached
+     */
+    public TokenCache getTokenCache() {
+        return client.getTokenCache();
+    }
+
+    /**
+     * Returns a client sending requests for the same merchant, over the same connections and limits, that must
+     * complete by the deadline, e.g. {@code client.withDeadline(Deadline.after(2, TimeUnit.SECONDS)).payment(...)}.
+     * The deadline covers validating the request, waiting for the limits, retries, connecting and reading the response.
+     * If it passes a DeadlineExceededException is thrown, with the terminalDateTime to cancel the request with.
+     *
+     * @param deadline time by which requests sent with the returned client must complete
+     * @return client with the deadline
+     */
+    public ECommerceClient withDeadline(Deadline deadline) {
+        return new ECommerceClient(cardAcceptor, new BixbyClient(client, deadline));
+    }
+
+    /**
+     * @return the limiter of the rate of requests of this client, to set limits per card acceptor and operation on.
+     * Null if the rate is not limited
+     */
+    public RateLimiter getRateLimiter() {
+        return client.getRateLimiter();
+    }
+
+    /**
+     * @return the limiter of the requests in flight of this client, with its current limit, requests in flight and
+     * requests waiting. Null if requests are not limited
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return client.getConcurrencyLimiter();
+    }
+
+    /**
+     * Sets how many operations of a batch are sent at the same time. Defaults to the
+     * com.handpoint.bixby.batch.parallelism property, or the number of pooled connections per host.
+     *
+     * @param batchParallelism maximum number of operations of a batch in flight
+     */
+    public void setBatchParallelism(int batchParallelism) {
+        if (batchParallelism < 1) {
+            throw new IllegalArgumentException("batchParallelism must be at least 1");
+        }
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * Runs a batch of operations, at most batchParallelism at a time, and returns their results in the order the
+     * operations complete. Operations may be any mix of authorizations, payments, refunds, reversals and token
+     * operations, e.g. {@code client -> client.captureAuthorization(currency, amount, authorizationGuid)}.
+     * Exceptions thrown by an operation are returned in its result and do not stop the batch.
+     *
+     * @param operations the operations to run
+     * @return the results, next() waits until another operation completes
+     */
+    public Iterator<BatchResult<?>> submitBatch(List<? extends BatchOperation<?>> operations) {
+        return new BatchExecution(this, operations, batchParallelism);
+    }
+
+    /**
+     * Runs a batch of operations, at most batchParallelism at a time, and waits for all of them to complete.
+     * The callback is called on this thread with the result of each operation as it completes.
+     *
+     * @param operations the operations to run
+     * @param callback   receives the result of each operation
+     */
+    public void submitBatch(List<? extends BatchOperation<?>> operations, BatchCallback callback) {
+        Iterator<BatchResult<?>> results = submitBatch(operations);
+        while (results.hasNext()) {
+            callback.onResult(results.next());
+        }
+    }
+
+    /**
+     * Turns on local screening of card numbers and expiry dates, see CardScreener. Card data the screener refuses
+     * is thrown as an InvalidMessageException without a request being sent.
+     *
+     * @param cardScreener the screener to use, or null to turn screening off
+     */
+    public void setCardScreener(CardScreener cardScreener) {
+        client.setCardScreener(cardScreener);
+    }
 
     /**
      * Regular authorization with Customer reference and without card verification code
@@ -95,6 +337,14 @@ public class ECommerceClient {
         return client.sendAuthorizationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #authorize(String, String, String, String, String)}, with the amount given as Money. The amount is
+     * sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorize(Money amount, String cardNumber, String expiryDateMMYY, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorize(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, customerReference);
+    }
+
     /**
      * Regular authorization without Customer reference and without card verification code
      *
@@ -115,6 +365,14 @@ public class ECommerceClient {
         return client.sendAuthorizationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #authorize(String, String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorize(Money amount, String cardNumber, String expiryDateMMYY) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorize(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY);
+    }
+
     /**
      * Regular authorization with Customer reference and with card verification code
      *
@@ -137,6 +395,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #authorizeWithCVC(String, String, String, String, String, String)}, with the amount given as
+     * Money. The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeWithCVC(Money amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeWithCVC(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, cardVerificationCode, customerReference);
+    }
+
     /**
      * Regular authorization without Customer reference and with card verification code
      *
@@ -158,6 +424,14 @@ public class ECommerceClient {
         return client.sendAuthorizationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #authorizeWithCVC(String, String, String, String, String)}, with the amount given as Money. The
+     * amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeWithCVC(Money amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeWithCVC(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, cardVerificationCode);
+    }
+
 
     /**
      * Authorization using token with Customer Reference
@@ -179,6 +453,14 @@ public class ECommerceClient {
         return client.sendAuthorizationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #authorizeWithToken(String, String, String, String)}, with the amount given as Money. The amount
+     * is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeWithToken(Money amount, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeWithToken(amount.getCurrency().alpha, amount.toAmountString(), token, customerReference);
+    }
+
     /**
      * Authorization using token without Customer Reference
      *
@@ -199,6 +481,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #authorizeWithToken(String, String, String)}, with the amount given as Money. The amount is sent
+     * as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeWithToken(Money amount, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeWithToken(amount.getCurrency().alpha, amount.toAmountString(), token);
+    }
+
     /**
      * Authorization that authorizes and stores the token. With customer reference
      *
@@ -222,6 +512,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #authorizeAndStoreToken(String, String, String, String, String, String)}, with the amount given as
+     * Money. The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token, customerReference);
+    }
+
     /**
      * Authorization that authorizes and stores the token. Without customer reference
      *
@@ -244,6 +542,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #authorizeAndStoreToken(String, String, String, String, String)}, with the amount given as Money.
+     * The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Authorization authorizeAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return authorizeAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token);
+    }
+
     /**
      * Regular payment with Customer reference and without card verification code
      *
@@ -266,6 +572,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #payment(String, String, String, String, String)}, with the amount given as Money. The amount is
+     * sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment payment(Money amount, String cardNumber, String expiryDateMMYY, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return payment(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, customerReference);
+    }
+
     /**
      * Regular payment without Customer reference and without card verification code
      *
@@ -287,6 +601,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #payment(String, String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment payment(Money amount, String cardNumber, String expiryDateMMYY) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return payment(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY);
+    }
+
     /**
      * Regular payment with Customer reference and with card verification code
      *
@@ -309,6 +631,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #paymentWithCVC(String, String, String, String, String, String)}, with the amount given as Money.
+     * The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentWithCVC(Money amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentWithCVC(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, cardVerificationCode, customerReference);
+    }
+
     /**
      * Regular authorization without Customer reference and with card verification code
      *
@@ -329,6 +659,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #paymentWithCVC(String, String, String, String, String)}, with the amount given as Money. The
+     * amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentWithCVC(Money amount, String cardNumber, String expiryDateMMYY, String cardVerificationCode) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentWithCVC(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, cardVerificationCode);
+    }
+
     /**
      * Payment using token with Customer Reference
      *
@@ -349,6 +687,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #paymentWithToken(String, String, String, String)}, with the amount given as Money. The amount is
+     * sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentWithToken(Money amount, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentWithToken(amount.getCurrency().alpha, amount.toAmountString(), token, customerReference);
+    }
+
     /**
      * Payment using token without Customer Reference
      *
@@ -369,6 +715,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #paymentWithToken(String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentWithToken(Money amount, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentWithToken(amount.getCurrency().alpha, amount.toAmountString(), token);
+    }
+
 
     /**
      * Payment that authorizes and confirms and stores the token. With customer reference
@@ -392,6 +746,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #paymentAndStoreToken(String, String, String, String, String, String)}, with the amount given as
+     * Money. The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token, customerReference);
+    }
+
     /**
      * Payment that authorizes and confirms and stores the token. With customer reference
      *
@@ -414,6 +776,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #paymentAndStoreToken(String, String, String, String, String)}, with the amount given as Money.
+     * The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment paymentAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return paymentAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token);
+    }
+
     /**
      * Payment that captures previously approved authorization. Without customer reference.
      *
@@ -434,6 +804,14 @@ public class ECommerceClient {
         return client.sendPaymentRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #captureAuthorization(String, String, String)}, with the amount given as Money. The amount is sent
+     * as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Payment captureAuthorization(Money amount, String authorizationGuid) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return captureAuthorization(amount.getCurrency().alpha, amount.toAmountString(), authorizationGuid);
+    }
+
     /**
      * Refund with customer reference
      *
@@ -456,6 +834,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refund(String, String, String, String, String)}, with the amount given as Money. The amount is
+     * sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refund(Money amount, String cardNumber, String expiryDateMMYY, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refund(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, customerReference);
+    }
+
     /**
      * Refund without customer reference
      *
@@ -477,6 +863,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refund(String, String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refund(Money amount, String cardNumber, String expiryDateMMYY) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refund(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY);
+    }
+
     /**
      * Refund using token. With customer reference.
      *
@@ -498,6 +892,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refundWithToken(String, String, String, String)}, with the amount given as Money. The amount is
+     * sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refundWithToken(Money amount, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refundWithToken(amount.getCurrency().alpha, amount.toAmountString(), token, customerReference);
+    }
+
     /**
      * Refund using token. Without customer reference.
      *
@@ -518,6 +920,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refundWithToken(String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refundWithToken(Money amount, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refundWithToken(amount.getCurrency().alpha, amount.toAmountString(), token);
+    }
+
 
     /**
      * Refund and store the token. With customer reference
@@ -542,6 +952,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refundAndStoreToken(String, String, String, String, String, String)}, with the amount given as
+     * Money. The amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refundAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token, String customerReference) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refundAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token, customerReference);
+    }
+
     /**
      * Refund and store the token. Without customer reference
      *
@@ -564,6 +982,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refundAndStoreToken(String, String, String, String, String)}, with the amount given as Money. The
+     * amount is sent as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refundAndStoreToken(Money amount, String cardNumber, String expiryDateMMYY, String token) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refundAndStoreToken(amount.getCurrency().alpha, amount.toAmountString(), cardNumber, expiryDateMMYY, token);
+    }
+
     /**
      * Refund for previously approved payment, called linked refund.
      *
@@ -584,6 +1010,14 @@ public class ECommerceClient {
         return client.sendRefundRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #refundPayment(String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Refund refundPayment(Money amount, String paymentGuid) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return refundPayment(amount.getCurrency().alpha, amount.toAmountString(), paymentGuid);
+    }
+
     /**
      * Reversal for previously granted authorization without customer reference
      *
@@ -705,6 +1139,14 @@ public class ECommerceClient {
         return client.sendCancellationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #cancelAuthorization(String, String, String)}, with the amount given as Money. The amount is sent
+     * as formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Cancellation cancelAuthorization(Money amount, String terminalDateTimeOriginal) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return cancelAuthorization(amount.getCurrency().alpha, amount.toAmountString(), terminalDateTimeOriginal);
+    }
+
     /**
      * Cancellation for previously granted payment.
      *
@@ -723,6 +1165,14 @@ public class ECommerceClient {
         return client.sendCancellationRequest(request, cardAcceptor);
     }
 
+    /**
+     * Same as {@link #cancelPayment(String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Cancellation cancelPayment(Money amount, String terminalDateTimeOriginal) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return cancelPayment(amount.getCurrency().alpha, amount.toAmountString(), terminalDateTimeOriginal);
+    }
+
     /**
      * Cancellation for previously granted refund.
      *
@@ -743,6 +1193,14 @@ public class ECommerceClient {
 
     }
 
+    /**
+     * Same as {@link #cancelRefund(String, String, String)}, with the amount given as Money. The amount is sent as
+     * formatted by {@link Money#toAmountString()}, e.g. "70.00" for 70 ISK.
+     */
+    public Cancellation cancelRefund(Money amount, String terminalDateTimeOriginal) throws HpECommerceException, HpServerError, InvalidMessageException {
+        return cancelRefund(amount.getCurrency().alpha, amount.toAmountString(), terminalDateTimeOriginal);
+    }
+
     /**
      * Store token
      *
@@ -808,4 +1266,12 @@ public class ECommerceClient {
     public Token deleteToken(String token) throws HpECommerceException, HpServerError, InvalidMessageException {
         return client.sendDeleteToken(token, cardAcceptor);
     }
-}
\ No newline at end of file
+
+    private static int getDefaultBatchParallelism() {
+        try {
+            return Config.getInstance().getBatchParallelism(ConnectionPool.DEFAULT_MAX_PER_HOST);
+        } catch (HpServerError e) {
+            return ConnectionPool.DEFAULT_MAX_PER_HOST;
+        }
+    }
+}
@@ -0,0 +1,726 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.core.exceptions.RequestRejectedException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Queues captures of authorizations, refunds of payments, reversals, cancellations and token deletions on the disk
+ * and forwards them to the web service in the background, so they are not lost while it can not be reached.
+ * <p/>
+ * Submitting an operation appends it to the current segment file of the queue directory and returns at once, the
+ * network is never waited for. A forwarder thread sends the queued operations in the order they were submitted, at
+ * most permitsPerSecond a second. While the web service can not be reached, or a circuit breaker or limit refuses the
+ * requests, forwarding stops and is tried again after a wait that doubles from baseDelayMillis up to maxDelayMillis.
+ * An operation whose outcome is unknown, e.g. it timed out, is sent again, and the operations after it on the same
+ * payment, authorization, refund or token wait for it, so their order is kept. Operations on other transactions
+ * are forwarded meanwhile. A capture or refund whose outcome is unknown is not sent again, it could be applied twice,
+ * it is reported to the listeners to be resolved by hand.
+ * <p/>
+ * Each segment file holds up to 4096 operations, next to a memory-mapped index with a byte per operation marking it
+ * as forwarded. A segment is deleted once all its operations are forwarded. When the queue is opened again the
+ * operations not yet forwarded are forwarded, a capture or refund that was being sent is listed by getUnknown instead.
+ * <p/>
+ * Token updates are not queued, as card numbers are not written to the disk.
+ */
+public class ForwardQueue implements Closeable {
+
+    public static final double DEFAULT_PERMITS_PER_SECOND = 10;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 60000;
+
+    static final int RECORDS_PER_SEGMENT = 4096;
+
+    private static final int HEADER = 8;
+    private static final byte PENDING = 0;
+    private static final byte DONE = 1;
+    private static final byte SENDING = 2;
+    private static final String DATA_SUFFIX = ".queue";
+    private static final String INDEX_SUFFIX = ".index";
+    private static final AtomicInteger QUEUE_NUMBER = new AtomicInteger();
+
+    /**
+     * Operations that can be queued.
+     */
+    public enum Type {
+        CAPTURE_AUTHORIZATION(false, 2),
+        REFUND_PAYMENT(false, 2),
+        REVERSE_AUTHORIZATION(true, 0),
+        REVERSE_PAYMENT(true, 0),
+        REVERSE_REFUND(true, 0),
+        CANCEL_AUTHORIZATION(true, 2),
+        CANCEL_PAYMENT(true, 2),
+        CANCEL_REFUND(true, 2),
+        DELETE_TOKEN(true, 0);
+
+        private final boolean repeatable;
+        private final int transactionArgument;
+
+        Type(boolean repeatable, int transactionArgument) {
+            this.repeatable = repeatable;
+            this.transactionArgument = transactionArgument;
+        }
+
+        /**
+         * @return true if the web service answers an operation sent twice with a decline or an error, so an
+         * operation whose outcome is unknown can be sent again
+         */
+        public boolean isRepeatable() {
+            return repeatable;
+        }
+
+        private Object execute(ECommerceClient client, String[] arguments) throws HpECommerceException, HpServerError, InvalidMessageException {
+            switch (this) {
+                case CAPTURE_AUTHORIZATION:
+                    return client.captureAuthorization(arguments[0], arguments[1], arguments[2]);
+                case REFUND_PAYMENT:
+                    return client.refundPayment(arguments[0], arguments[1], arguments[2]);
+                case REVERSE_AUTHORIZATION:
+                    return client.reverseAuthorization(arguments[0], arguments[1]);
+                case REVERSE_PAYMENT:
+                    return client.reversePayment(arguments[0], arguments[1]);
+                case REVERSE_REFUND:
+                    return client.reverseRefund(arguments[0], arguments[1]);
+                case CANCEL_AUTHORIZATION:
+                    return client.cancelAuthorization(arguments[0], arguments[1], arguments[2]);
+                case CANCEL_PAYMENT:
+                    return client.cancelPayment(arguments[0], arguments[1], arguments[2]);
+                case CANCEL_REFUND:
+                    return client.cancelRefund(arguments[0], arguments[1], arguments[2]);
+                default:
+                    return client.deleteToken(arguments[0]);
+            }
+        }
+    }
+
+    /**
+     * Told about the outcome of the operations forwarded.
+     */
+    public interface Listener {
+
+        /**
+         * Called on the forwarder thread when the web service answered an operation. Exceptions thrown are handed to
+         * the uncaught exception handler of the thread and do not stop the forwarding.
+         *
+         * @param entry    the operation
+         * @param response the answer, a Payment, Refund, Reversal, Cancellation or Token
+         */
+        void onForwarded(Entry entry, Object response);
+
+        /**
+         * Called on the forwarder thread when the web service answered an operation with an error, or the outcome of
+         * a capture or refund is unknown. The operation is not forwarded again.
+         *
+         * @param entry the operation
+         * @param e     the exception the operation failed with
+         */
+        void onFailed(Entry entry, Exception e);
+    }
+
+    /**
+     * An operation in the queue.
+     */
+    public static final class Entry {
+        private final Segment segment;
+        private final int slot;
+        private final Type type;
+        private final String cardAcceptor;
+        private final String[] arguments;
+        private volatile int attempts;
+
+        private Entry(Segment segment, int slot, Type type, String cardAcceptor, String[] arguments) {
+            this.segment = segment;
+            this.slot = slot;
+            this.type = type;
+            this.cardAcceptor = cardAcceptor;
+            this.arguments = arguments;
+        }
+
+        /**
+         * @return position of the operation in the queue, operations are forwarded in this order
+         */
+        public long getSequence() {
+            return segment.number * RECORDS_PER_SEGMENT + slot;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getCardAcceptor() {
+            return cardAcceptor;
+        }
+
+        /**
+         * @return the arguments of the ECommerceClient method of the operation, in order
+         */
+        public List<String> getArguments() {
+            return Collections.unmodifiableList(Arrays.asList(arguments));
+        }
+
+        /**
+         * @return the guid, terminalDateTime or token of the transaction the operation is on, operations on the same
+         * transaction are forwarded in order
+         */
+        public String getTransaction() {
+            return arguments[type.transactionArgument];
+        }
+
+        /**
+         * @return attempts made to forward the operation since the queue was opened
+         */
+        public int getAttempts() {
+            return attempts;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + getSequence() + ", " + type + ", cardAcceptor=" + cardAcceptor + ", transaction="
+                    + getTransaction() + ", attempts=" + attempts + '}';
+        }
+    }
+
+    private final File directory;
+    private final Function<String, ECommerceClient> clients;
+    private final boolean force;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final TokenBucket rate;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentSkipListMap<Long, Entry> pending = new ConcurrentSkipListMap<>();
+    private final List<Entry> unknown = new ArrayList<>();
+    private final Thread forwarder;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition submitted = lock.newCondition();
+    // Guarded by lock
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment current;
+    private volatile boolean closed;
+
+    /**
+     * Opens a queue forwarding the default rate that does not force operations to the disk.
+     *
+     * @param directory the directory of the segment files, created if it does not exist
+     * @param clients   the client to forward the operations of a card acceptor with
+     * @throws IOException if the queue can not be read
+     */
+    public ForwardQueue(File directory, Function<String, ECommerceClient> clients) throws IOException {
+        this(directory, clients, DEFAULT_PERMITS_PER_SECOND, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, false);
+    }
+
+    /**
+     * @param directory        the directory of the segment files, created if it does not exist
+     * @param clients          the client to forward the operations of a card acceptor with
+     * @param permitsPerSecond operations forwarded per second
+     * @param baseDelayMillis  wait before forwarding again after the web service could not be reached
+     * @param maxDelayMillis   longest wait before forwarding again
+     * @param force            true to force each operation to the disk before it is accepted
+     * @throws IOException if the queue can not be read
+     */
+    public ForwardQueue(File directory, Function<String, ECommerceClient> clients, double permitsPerSecond,
+                        long baseDelayMillis, long maxDelayMillis, boolean force) throws IOException {
+        if (baseDelayMillis < 1 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid forward queue settings");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create queue directory: " + directory);
+        }
+        this.directory = directory;
+        this.clients = clients;
+        this.force = force;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.rate = new TokenBucket(permitsPerSecond, 1);
+        recover();
+        forwarder = new Thread(this::forward, "ecommerce-forward-queue-" + QUEUE_NUMBER.incrementAndGet());
+        forwarder.setDaemon(true);
+        forwarder.start();
+    }
+
+    /**
+     * @param listener told about the outcome of every operation forwarded
+     */
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Queues a capture of an authorization, see ECommerceClient.captureAuthorization.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry captureAuthorization(String cardAcceptor, String currency, String amount, String authorizationGuid) throws IOException {
+        return submit(Type.CAPTURE_AUTHORIZATION, cardAcceptor, currency, amount, authorizationGuid);
+    }
+
+    /**
+     * Queues a refund of a payment, see ECommerceClient.refundPayment.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry refundPayment(String cardAcceptor, String currency, String amount, String paymentGuid) throws IOException {
+        return submit(Type.REFUND_PAYMENT, cardAcceptor, currency, amount, paymentGuid);
+    }
+
+    /**
+     * Queues a reversal of an authorization, see ECommerceClient.reverseAuthorization.
+     *
+     * @param customerReference the customer reference, or null
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry reverseAuthorization(String cardAcceptor, String authorizationGuid, String customerReference) throws IOException {
+        return submit(Type.REVERSE_AUTHORIZATION, cardAcceptor, authorizationGuid, customerReference);
+    }
+
+    /**
+     * Queues a reversal of a payment, see ECommerceClient.reversePayment.
+     *
+     * @param customerReference the customer reference, or null
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry reversePayment(String cardAcceptor, String paymentGuid, String customerReference) throws IOException {
+        return submit(Type.REVERSE_PAYMENT, cardAcceptor, paymentGuid, customerReference);
+    }
+
+    /**
+     * Queues a reversal of a refund, see ECommerceClient.reverseRefund.
+     *
+     * @param customerReference the customer reference, or null
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry reverseRefund(String cardAcceptor, String refundGuid, String customerReference) throws IOException {
+        return submit(Type.REVERSE_REFUND, cardAcceptor, refundGuid, customerReference);
+    }
+
+    /**
+     * Queues a cancellation of an authorization, see ECommerceClient.cancelAuthorization.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry cancelAuthorization(String cardAcceptor, String currency, String amount, String terminalDateTimeOriginal) throws IOException {
+        return submit(Type.CANCEL_AUTHORIZATION, cardAcceptor, currency, amount, terminalDateTimeOriginal);
+    }
+
+    /**
+     * Queues a cancellation of a payment, see ECommerceClient.cancelPayment.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry cancelPayment(String cardAcceptor, String currency, String amount, String terminalDateTimeOriginal) throws IOException {
+        return submit(Type.CANCEL_PAYMENT, cardAcceptor, currency, amount, terminalDateTimeOriginal);
+    }
+
+    /**
+     * Queues a cancellation of a refund, see ECommerceClient.cancelRefund.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry cancelRefund(String cardAcceptor, String currency, String amount, String terminalDateTimeOriginal) throws IOException {
+        return submit(Type.CANCEL_REFUND, cardAcceptor, currency, amount, terminalDateTimeOriginal);
+    }
+
+    /**
+     * Queues a deletion of a token, see ECommerceClient.deleteToken.
+     *
+     * @return the queued operation
+     * @throws IOException if the operation could not be written to the queue
+     */
+    public Entry deleteToken(String cardAcceptor, String token) throws IOException {
+        return submit(Type.DELETE_TOKEN, cardAcceptor, token);
+    }
+
+    /**
+     * @return operations not yet forwarded
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * @return captures and refunds that were being sent when the queue was last closed or the JVM died, their outcome
+     * is unknown
+     */
+    public List<Entry> getUnknown() {
+        return Collections.unmodifiableList(unknown);
+    }
+
+    /**
+     * Stops forwarding and closes the segment files. An operation being sent completes, it is forwarded again when
+     * the queue is opened again unless it is a capture or refund.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            submitted.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        forwarder.interrupt();
+        try {
+            forwarder.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Entry submit(Type type, String cardAcceptor, String... arguments) throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IOException("Queue closed: " + directory);
+            }
+            if (current == null || current.count == RECORDS_PER_SEGMENT) {
+                Segment full = current;
+                current = new Segment(directory, full == null ? 0 : full.number + 1);
+                segments.put(current.number, current);
+                if (full != null && full.completed == full.count) {
+                    delete(full);
+                }
+            }
+            Entry entry = new Entry(current, current.count, type, cardAcceptor, arguments);
+            current.append(record(entry), force);
+            pending.put(entry.getSequence(), entry);
+            submitted.signal();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forwards the queued operations until the queue is closed.
+     */
+    private void forward() {
+        long delay = 0;
+        try {
+            while (awaitWork(delay)) {
+                delay = forwardPending() ? Math.min(maxDelayMillis, Math.max(baseDelayMillis, delay * 2)) : 0;
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Waits out the delay after a failed pass, then for operations to forward.
+     *
+     * @return false once the queue is closed
+     */
+    private boolean awaitWork(long delayMillis) throws InterruptedException {
+        lock.lock();
+        try {
+            long wait = TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            while (!closed && wait > 0) {
+                wait = submitted.awaitNanos(wait);
+            }
+            while (!closed && pending.isEmpty()) {
+                submitted.await();
+            }
+            return !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Forwards the pending operations in order, skipping those on a transaction whose earlier operation failed.
+     *
+     * @return true if an operation must be forwarded again
+     */
+    private boolean forwardPending() throws InterruptedException {
+        Set<String> blocked = new HashSet<>();
+        for (Entry entry : pending.values()) {
+            if (closed) {
+                return false;
+            }
+            String transaction = entry.cardAcceptor + ' ' + entry.getTransaction();
+            if (blocked.contains(transaction)) {
+                continue;
+            }
+            rate.acquire();
+            entry.attempts++;
+            if (!entry.type.repeatable) {
+                mark(entry, SENDING);
+            }
+            Object response;
+            try {
+                response = entry.type.execute(clients.apply(entry.cardAcceptor), entry.arguments);
+            } catch (HpServerError | InvalidMessageException | RuntimeException e) {
+                failed(entry, e);
+                continue;
+            } catch (HpECommerceException e) {
+                if (e instanceof RequestRejectedException || RetryPolicy.isNotSent(e)) {
+                    // Nothing can be forwarded until the web service can be reached
+                    if (!entry.type.repeatable) {
+                        mark(entry, PENDING);
+                    }
+                    return true;
+                }
+                if (!entry.type.repeatable) {
+                    failed(entry, e);
+                    continue;
+                }
+                blocked.add(transaction);
+                continue;
+            }
+            complete(entry);
+            for (Listener listener : listeners) {
+                try {
+                    listener.onForwarded(entry, response);
+                } catch (RuntimeException listenerException) {
+                    reportListenerException(listenerException);
+                }
+            }
+        }
+        return !blocked.isEmpty();
+    }
+
+    private void failed(Entry entry, Exception e) {
+        complete(entry);
+        for (Listener listener : listeners) {
+            try {
+                listener.onFailed(entry, e);
+            } catch (RuntimeException listenerException) {
+                reportListenerException(listenerException);
+            }
+        }
+    }
+
+    /**
+     * Hands the exception of a listener to the uncaught exception handler of the forwarder thread, which keeps
+     * forwarding and telling the other listeners.
+     */
+    private static void reportListenerException(RuntimeException e) {
+        Thread thread = Thread.currentThread();
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+    }
+
+    private void complete(Entry entry) {
+        lock.lock();
+        try {
+            pending.remove(entry.getSequence());
+            if (closed) {
+                return;
+            }
+            Segment segment = entry.segment;
+            segment.index.put(entry.slot, DONE);
+            if (++segment.completed == segment.count && segment != current) {
+                delete(segment);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void mark(Entry entry, byte state) {
+        lock.lock();
+        try {
+            if (!closed) {
+                entry.segment.index.put(entry.slot, state);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void delete(Segment segment) {
+        segments.remove(segment.number);
+        segment.close();
+        segment.data.delete();
+        segment.indexFile.delete();
+    }
+
+    /**
+     * Reads the segment files of the directory, queueing the operations not yet forwarded.
+     */
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(DATA_SUFFIX));
+        TreeMap<Long, File> found = new TreeMap<>();
+        for (File file : files == null ? new File[0] : files) {
+            String name = file.getName();
+            try {
+                found.put(Long.parseLong(name.substring(0, name.length() - DATA_SUFFIX.length())), file);
+            } catch (NumberFormatException e) {
+                // Not a segment
+            }
+        }
+        for (Long number : found.keySet()) {
+            Segment segment = new Segment(directory, number);
+            segments.put(number, segment);
+            current = segment;
+            for (int slot = 0; slot < segment.records.size(); slot++) {
+                ByteBuffer body = ByteBuffer.wrap(segment.records.get(slot));
+                Type type = Type.values()[body.get()];
+                String cardAcceptor = TransactionJournal.getString(body);
+                String[] arguments = new String[body.get()];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = TransactionJournal.getString(body);
+                }
+                Entry entry = new Entry(segment, slot, type, cardAcceptor, arguments);
+                byte state = segment.index.get(slot);
+                if (state == PENDING) {
+                    pending.put(entry.getSequence(), entry);
+                } else if (state == SENDING) {
+                    unknown.add(entry);
+                    segment.index.put(slot, DONE);
+                    segment.completed++;
+                } else {
+                    segment.completed++;
+                }
+            }
+            segment.records = null;
+        }
+        for (Segment segment : new ArrayList<>(segments.values())) {
+            if (segment != current && segment.completed == segment.count) {
+                delete(segment);
+            }
+        }
+    }
+
+    private static byte[] record(Entry entry) {
+        byte[] cardAcceptor = TransactionJournal.bytes(entry.cardAcceptor);
+        byte[][] arguments = new byte[entry.arguments.length][];
+        int length = 1 + 2 + (cardAcceptor == null ? 0 : cardAcceptor.length) + 1;
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = TransactionJournal.bytes(entry.arguments[i]);
+            length += 2 + (arguments[i] == null ? 0 : arguments[i].length);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length).put((byte) entry.type.ordinal());
+        TransactionJournal.putString(body, cardAcceptor);
+        body.put((byte) arguments.length);
+        for (byte[] argument : arguments) {
+            TransactionJournal.putString(body, argument);
+        }
+        return body.array();
+    }
+
+    @Override
+    public String toString() {
+        return "ForwardQueue{" + directory + ", pending=" + getPendingCount() + '}';
+    }
+
+    /**
+     * A segment file of up to RECORDS_PER_SEGMENT operations and its index.
+     */
+    private static final class Segment {
+        private final long number;
+        private final File data;
+        private final File indexFile;
+        private final FileChannel channel;
+        private final MappedByteBuffer index;
+        private long size;
+        private int count;
+        private int completed;
+        // Bodies of the records read when the segment was opened, until they are queued
+        private List<byte[]> records = new ArrayList<>();
+
+        Segment(File directory, long number) throws IOException {
+            this.number = number;
+            this.data = new File(directory, String.format("%020d", number) + DATA_SUFFIX);
+            this.indexFile = new File(directory, String.format("%020d", number) + INDEX_SUFFIX);
+            this.channel = FileChannel.open(data.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, RECORDS_PER_SEGMENT);
+            }
+            read();
+        }
+
+        /**
+         * Reads the records up to the first torn one, which is cut off with everything after it.
+         */
+        private void read() throws IOException {
+            ByteBuffer contents = ByteBuffer.allocate((int) channel.size());
+            while (contents.hasRemaining() && channel.read(contents, contents.position()) >= 0) {
+                // Read the whole segment
+            }
+            contents.flip();
+            while (contents.remaining() >= HEADER && count < RECORDS_PER_SEGMENT) {
+                int length = contents.getInt(contents.position());
+                if (length <= 0 || length > contents.remaining() - HEADER) {
+                    break;
+                }
+                byte[] body = new byte[length];
+                int crc = contents.getInt(contents.position() + 4);
+                contents.position(contents.position() + HEADER);
+                contents.get(body);
+                if (TransactionJournal.crc(body) != crc) {
+                    break;
+                }
+                records.add(body);
+                count++;
+                size += HEADER + length;
+            }
+            if (size < channel.size()) {
+                channel.truncate(size);
+            }
+        }
+
+        void append(byte[] body, boolean force) throws IOException {
+            ByteBuffer record = ByteBuffer.allocate(HEADER + body.length);
+            record.putInt(body.length).putInt(TransactionJournal.crc(body)).put(body).flip();
+            long position = size;
+            while (record.hasRemaining()) {
+                position += channel.write(record, position);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            size = position;
+            count++;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to write
+            }
+        }
+    }
+}
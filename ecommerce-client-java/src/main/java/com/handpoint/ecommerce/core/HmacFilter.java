@@ -0,0 +1,75 @@
+package com.handpoint.ecommerce.core;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import com.sun.jersey.api.client.ClientRequest;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.filter.ClientFilter;
+
+import javax.ws.rs.core.MediaType;
+
+/**
+ * All requests sent to the Handpoint E-Commerce interface need to be authenticated using
+ * HMAC. This Jersey client filter calculates the HMAC and adds it to the request.
+ *
+ * @author palmithor
+ * @since 2013-03
+ */
+public class HmacFilter extends ClientFilter {
+
+    public static final String HMAC_SHA_1 = "HmacSHA1";
+    public static final String UTF_8 = "UTF-8";
+    public static final String MWS_DATE = "mws-date";
+    public static final String MWS_HMAC = "mws-hmac";
+    public static final String CONTENT_TYPE = "content-type";
+    private final HmacSigner signer;
+
+    static final byte[] HEX_CHAR_TABLE = {
+            (byte) '0', (byte) '1', (byte) '2', (byte) '3',
+            (byte) '4', (byte) '5', (byte) '6', (byte) '7',
+            (byte) '8', (byte) '9', (byte) 'a', (byte) 'b',
+            (byte) 'c', (byte) 'd', (byte) 'e', (byte) 'f'
+    };
+
+
+    public HmacFilter(String sharedSecret) {
+        this.signer = new HmacSigner(sharedSecret);
+    }
+
+
+    @Override
+    public ClientResponse handle(ClientRequest request) throws ClientHandlerException {
+
+        addHeaders(request);
+        ClientResponse response = getNext().handle(request);
+
+        return response;
+    }
+
+    /**
+     * Adds headers needed for authentication
+     *
+     * @param request to be sent
+     */
+    private void addHeaders(ClientRequest request) {
+        if (request.getHeaders().containsKey(MWS_HMAC)) {
+            // Already signed with the signer of its request context
+            return;
+        }
+        String terminalDateTime = (String) request.getHeaders().getFirst(MWS_DATE);
+        request.getHeaders().add(MWS_HMAC, sign(request.getMethod(), request.getURI().getPath(), terminalDateTime, (byte[]) request.getEntity()));
+        request.getHeaders().add(CONTENT_TYPE, MediaType.APPLICATION_XML);
+    }
+
+    /**
+     * Calculates the HMAC for a request with the HmacSigner for the shared secret.
+     *
+     * @param method the http method
+     * @param path   the path of the request url
+     * @param date   date string sent in the mws-date header
+     * @param entity the request body, may be null
+     * @return hashed string to send in the mws-hmac header
+     */
+    String sign(String method, String path, String date, byte[] entity) {
+        return signer.sign(method, path, date, entity);
+    }
+}
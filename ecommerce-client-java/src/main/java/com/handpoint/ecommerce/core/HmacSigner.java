@@ -0,0 +1,180 @@
+package com.handpoint.ecommerce.core;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+
+/**
+ * Calculates the HMAC sent in the mws-hmac header, the HMAC-SHA1 of the http method, path, date and request body.
+ * <p/>
+ * The Mac is keyed once with the shared secret and cloned for a thread when it signs, so signing does not look up
+ * the algorithm or build the key again. Method, path, date and body are fed to the Mac as bytes and the digest is
+ * written as hex into a buffer owned by the thread, so a signature costs little more than the String returned.
+ * A signer can be shared by any number of threads.
+ * <p/>
+ * Each thread keeps its buffers and the Macs of the last few signers it signed for, least recently used first out,
+ * so a thread signing for a handful of merchants in turn does not clone a Mac per request. A signer itself holds
+ * only its key and keyed Mac, a few hundred bytes, however many threads sign with it, which is what lets a
+ * MerchantGateway keep a signer for every merchant.
+ */
+public final class HmacSigner {
+
+    /**
+     * Length of the hex encoded HMAC-SHA1.
+     */
+    public static final int HEX_LENGTH = 40;
+
+    private static final int DIGEST_LENGTH = HEX_LENGTH / 2;
+
+    /**
+     * Signers whose Mac a thread keeps.
+     */
+    private static final int MACS_PER_THREAD = 8;
+
+    private final SecretKeySpec key;
+    private final Mac prototype;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    /**
+     * @param sharedSecret used as the HMAC key
+     */
+    public HmacSigner(String sharedSecret) {
+        try {
+            key = new SecretKeySpec(sharedSecret.getBytes(), HmacFilter.HMAC_SHA_1);
+            prototype = Mac.getInstance(HmacFilter.HMAC_SHA_1);
+            prototype.init(key);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to create " + HmacFilter.HMAC_SHA_1, e);
+        }
+    }
+
+    /**
+     * Calculates the HMAC for a request.
+     *
+     * @param method the http method
+     * @param path   the path of the request url
+     * @param date   date string sent in the mws-date header
+     * @param entity the request body, may be null
+     * @return hex encoded HMAC to send in the mws-hmac header
+     */
+    public String sign(String method, String path, String date, byte[] entity) {
+        State current = state();
+        current.sign(method, path, date, entity, current.hex, 0);
+        return new String(current.hex, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Calculates the HMAC for a request and writes it as hex into the given buffer.
+     *
+     * @param method the http method
+     * @param path   the path of the request url
+     * @param date   date string sent in the mws-date header
+     * @param entity the request body, may be null
+     * @param hex    buffer to write the HEX_LENGTH hex characters to, as ASCII bytes
+     * @param offset where in the buffer to start writing
+     */
+    public void sign(String method, String path, String date, byte[] entity, byte[] hex, int offset) {
+        state().sign(method, path, date, entity, hex, offset);
+    }
+
+    /**
+     * @return the state of the current thread, with a Mac keyed for this signer
+     */
+    private State state() {
+        State current = STATE.get();
+        current.select(this);
+        return current;
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (CloneNotSupportedException e) {
+            // The provider can not clone, key a new Mac instead
+            try {
+                Mac mac = Mac.getInstance(HmacFilter.HMAC_SHA_1, prototype.getProvider());
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("Unable to create " + HmacFilter.HMAC_SHA_1, ex);
+            }
+        }
+    }
+
+    /**
+     * The Macs and buffers used by one thread. The Macs are ordered by the last use of their signer, most recent first.
+     */
+    private static final class State {
+        private final HmacSigner[] signers = new HmacSigner[MACS_PER_THREAD];
+        private final Mac[] macs = new Mac[MACS_PER_THREAD];
+        private Mac mac;
+        private final byte[] digest = new byte[DIGEST_LENGTH];
+        private final byte[] hex = new byte[HEX_LENGTH];
+        private byte[] ascii = new byte[64];
+
+        /**
+         * Makes the Mac of a signer the current one, cloning it if the thread does not keep it, in which case the
+         * Mac used least recently is dropped.
+         */
+        void select(HmacSigner signer) {
+            if (signers[0] == signer) {
+                return;
+            }
+            int found = 1;
+            while (found < MACS_PER_THREAD - 1 && signers[found] != signer) {
+                found++;
+            }
+            Mac selected = signers[found] == signer ? macs[found] : signer.newMac();
+            System.arraycopy(signers, 0, signers, 1, found);
+            System.arraycopy(macs, 0, macs, 1, found);
+            signers[0] = signer;
+            macs[0] = selected;
+            mac = selected;
+        }
+
+        void sign(String method, String path, String date, byte[] entity, byte[] out, int offset) {
+            update(method);
+            update(path);
+            update(date);
+            if (entity != null) {
+                mac.update(entity);
+            }
+            try {
+                mac.doFinal(digest, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                int v = digest[i] & 0xFF;
+                out[offset++] = HmacFilter.HEX_CHAR_TABLE[v >>> 4];
+                out[offset++] = HmacFilter.HEX_CHAR_TABLE[v & 0xF];
+            }
+        }
+
+        /**
+         * Feeds a String to the Mac. ASCII is copied straight to the buffer, anything else is encoded the same way
+         * as String.getBytes(). Null is fed as "null", like the StringBuilder the HMAC string used to be built with.
+         */
+        private void update(String value) {
+            if (value == null) {
+                value = "null";
+            }
+            int length = value.length();
+            if (ascii.length < length) {
+                ascii = new byte[Math.max(length, ascii.length * 2)];
+            }
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c >= 0x80) {
+                    mac.update(value.getBytes());
+                    return;
+                }
+                ascii[i] = (byte) c;
+            }
+            mac.update(ascii, 0, length);
+        }
+    }
+}
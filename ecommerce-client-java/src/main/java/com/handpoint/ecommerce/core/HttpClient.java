@@ -0,0 +1,333 @@
+package com.handpoint.ecommerce.core;
+
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.UniformInterfaceException;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.client.config.ClientConfig;
+import com.sun.jersey.api.client.filter.ClientFilter;
+import com.sun.jersey.api.client.filter.LoggingFilter;
+import com.sun.jersey.client.apache4.ApacheHttpClient4;
+import com.sun.jersey.client.apache4.ApacheHttpClient4Handler;
+import com.sun.jersey.client.apache4.config.DefaultApacheHttpClient4Config;
+
+import javax.ws.rs.core.MediaType;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Class used for sending requests to REST web services.
+ * The http headers map holds headers sent with every request. Headers that belong to a single request are
+ * passed in a RequestContext, which makes the client safe to share between threads. The map is never changed in
+ * place, changing the headers replaces it with a changed copy, so requests being sent keep the headers they started
+ * with.
+ *
+ * @author palmithor
+ * @since 12/12/12 10:54 AM
+ */
+public class HttpClient {
+
+    volatile Map<String, String> httpHeaders;
+    Client client;
+    ConnectionPool connectionPool;
+
+    public HttpClient() {
+        client = Client.create();
+        httpHeaders = Collections.emptyMap();
+    }
+
+    /**
+     * Creates a client that sends all requests over keep-alive connections from the given pool.
+     *
+     * @param connectionPool the pool to lease connections from
+     */
+    public HttpClient(ConnectionPool connectionPool) {
+        ApacheHttpClient4Handler handler = new ApacheHttpClient4Handler(connectionPool.getHttpClient(), null, false);
+        client = new ApacheHttpClient4(handler, new DefaultApacheHttpClient4Config());
+        httpHeaders = Collections.emptyMap();
+        this.connectionPool = connectionPool;
+    }
+
+    /**
+     * @return the headers sent with every request, the map can not be changed
+     */
+    public Map<String, String> getHttpHeaders() {
+        return httpHeaders;
+    }
+
+    /**
+     * Replaces the headers sent with every request with a copy of the given map.
+     *
+     * @param httpHeaders the headers, or null for none
+     * @deprecated pass the headers of a single request in its RequestContext, and add the headers sent with every
+     * request with Builder.addHttpHeader
+     */
+    @Deprecated
+    public synchronized void setHttpHeaders(Map<String, String> httpHeaders) {
+        this.httpHeaders = httpHeaders == null
+                ? Collections.<String, String>emptyMap()
+                : Collections.unmodifiableMap(new HashMap<>(httpHeaders));
+    }
+
+    public Client getClient() {
+        return client;
+    }
+
+    public void setClient(Client client) {
+        this.client = client;
+    }
+
+    /**
+     * @return the connection pool used by this client, or null if requests are not pooled
+     */
+    public ConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * Adds a header sent with every request. The httpHeaders map is replaced with a copy holding the new header.
+     *
+     * @param key   the header key
+     * @param value the header value
+     * @deprecated pass the headers of a single request in its RequestContext, and add the headers sent with every
+     * request with Builder.addHttpHeader
+     */
+    @Deprecated
+    public synchronized void addHttpHeader(String key, String value) {
+        Map<String, String> headers = new HashMap<>(httpHeaders);
+        headers.put(key, value);
+        httpHeaders = Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Removes all headers sent with every request.
+     *
+     * @deprecated pass the headers of a single request in its RequestContext instead of resetting shared ones
+     */
+    @Deprecated
+    public synchronized void resetHeaders() {
+        httpHeaders = Collections.emptyMap();
+    }
+
+    /**
+     * Sends http post request to a specified url and returns the response as a byte array
+     *
+     * @param url  where to send the request
+     * @param body the request body to send
+     * @return response as byte[] if response is not null, else return null
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendPostRequest(String url, byte[] body, String terminalDateTime) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, httpHeaders);
+        ClientResponse response = builder.post(ClientResponse.class, body);
+        return response;
+    }
+
+    /**
+     * Sends http post request to a specified url with the headers of the request context.
+     *
+     * @param url     where to send the request
+     * @param body    the request body to send
+     * @param context the terminal date time and headers of this request
+     * @return the response
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendPostRequest(String url, byte[] body, RequestContext context) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, context, "POST", body);
+        return execute(context, () -> builder.post(ClientResponse.class, body));
+    }
+
+    /**
+     * Sends http get request to a specified url and returns the response as a byte array
+     *
+     * @param url where to send the request
+     * @return response as byte[] if response is not null, else return null
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendGetRequest(String url, String terminalDateTime) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, httpHeaders);
+        ClientResponse response = builder.get(ClientResponse.class);
+        return response;
+    }
+
+    /**
+     * Sends http get request to a specified url with the headers of the request context.
+     *
+     * @param url     where to send the request
+     * @param context the terminal date time and headers of this request
+     * @return the response
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendGetRequest(String url, RequestContext context) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, context, "GET", null);
+        return execute(context, () -> builder.get(ClientResponse.class));
+    }
+
+    /**
+     * Sends http delete request to a specified url and returns the response as a byte array
+     *
+     * @param url where to send the request
+     * @return response as byte[] if response is not null, else return null
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendDeleteRequest(String url, String terminalDateTime) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, httpHeaders);
+        ClientResponse response = builder.delete(ClientResponse.class);
+        return response;
+    }
+
+    /**
+     * Sends http delete request to a specified url with the headers of the request context.
+     *
+     * @param url     where to send the request
+     * @param context the terminal date time and headers of this request
+     * @return the response
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendDeleteRequest(String url, RequestContext context) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, context, "DELETE", null);
+        return execute(context, () -> builder.delete(ClientResponse.class));
+    }
+
+    /**
+     * Sends http put request to a specified url and returns the response as a byte array
+     *
+     * @param url  where to send the request
+     * @param body the request body to send
+     * @return response as byte[] if response is not null, else return null
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendPutRequest(String url, byte[] body) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, httpHeaders);
+        ClientResponse response = builder.put(ClientResponse.class, body);
+        return response;
+    }
+
+    /**
+     * Sends http put request to a specified url with the headers of the request context.
+     *
+     * @param url     where to send the request
+     * @param body    the request body to send
+     * @param context the terminal date time and headers of this request
+     * @return the response
+     * @throws UniformInterfaceException
+     */
+    public ClientResponse sendPutRequest(String url, byte[] body, RequestContext context) throws UniformInterfaceException {
+        WebResource.Builder builder = getBuilder(url, context, "PUT", body);
+        return execute(context, () -> builder.put(ClientResponse.class, body));
+    }
+
+
+    /**
+     * Sends a request within the deadline of its context. Pooled connections get their timeouts from the
+     * DeadlineInterceptor while the request is sent.
+     */
+    private ClientResponse execute(RequestContext context, Supplier<ClientResponse> request) {
+        Deadline deadline = context.getDeadline();
+        if (deadline == null) {
+            return request.get();
+        }
+        Deadline previous = DeadlineInterceptor.enter(deadline);
+        try {
+            return request.get();
+        } finally {
+            DeadlineInterceptor.exit(previous);
+        }
+    }
+
+    /**
+     * Requests whose context carries a signer are signed here, with the HMAC of the merchant sending them.
+     */
+    private WebResource.Builder getBuilder(String url, RequestContext context, String method, byte[] body) {
+        Map<String, String> headers = new HashMap<>(httpHeaders);
+        headers.putAll(context.getHttpHeaders());
+        WebResource webResource = client.resource(url);
+        Deadline deadline = context.getDeadline();
+        if (deadline != null) {
+            // Used by clients without a connection pool, the Apache client gets its timeouts from the DeadlineInterceptor
+            webResource.setProperty(ClientConfig.PROPERTY_CONNECT_TIMEOUT, deadline.remainingTimeoutMillis());
+            webResource.setProperty(ClientConfig.PROPERTY_READ_TIMEOUT, deadline.remainingTimeoutMillis());
+        }
+        HmacSigner signer = context.getSigner();
+        if (signer != null) {
+            headers.put(HmacFilter.MWS_HMAC, signer.sign(method, webResource.getURI().getPath(), context.getTerminalDateTime(), body));
+            headers.put(HmacFilter.CONTENT_TYPE, MediaType.APPLICATION_XML);
+        }
+        return getBuilder(webResource, headers);
+    }
+
+    private WebResource.Builder getBuilder(String url, Map<String, String> headers) {
+        return getBuilder(client.resource(url), headers);
+    }
+
+    private WebResource.Builder getBuilder(WebResource webResource, Map<String, String> headers) {
+        WebResource.Builder builder = webResource.getRequestBuilder();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            builder = builder.header(entry.getKey(), entry.getValue());
+        }
+        return builder;
+    }
+
+    /**
+     * Builder to create HttpClient instance.
+     */
+    public static final class Builder {
+        private ConnectionPool connectionPool;
+        private List<ClientFilter> filters;
+        private Map<String, String> httpHeaders;
+
+        private Builder() {
+            filters = new ArrayList<>();
+            httpHeaders = new HashMap<>();
+        }
+
+        public Builder addFilter(ClientFilter filter) {
+            filters.add(filter);
+            return this;
+        }
+
+        public Builder addHttpHeader(String key, String value) {
+            httpHeaders.put(key, value);
+            return this;
+        }
+
+        public static Builder create() {
+            return new Builder();
+        }
+
+        public Builder addLoggingFilter() {
+            filters.add(new LoggingFilter());
+            return this;
+        }
+
+        public Builder addHmacFilter(String sharedSecret) {
+            filters.add(new HmacFilter(sharedSecret));
+            return this;
+        }
+
+        /**
+         * Send requests over pooled keep-alive connections instead of a new connection per request.
+         *
+         * @param connectionPool the pool to lease connections from
+         * @return the builder
+         */
+        public Builder usePooledConnections(ConnectionPool connectionPool) {
+            this.connectionPool = connectionPool;
+            return this;
+        }
+
+        public HttpClient build() {
+            HttpClient httpClient = connectionPool != null ? new HttpClient(connectionPool) : new HttpClient();
+            for (ClientFilter filter : filters) {
+                httpClient.getClient().addFilter(filter);
+            }
+            httpClient.httpHeaders = Collections.unmodifiableMap(new HashMap<>(httpHeaders));
+            return httpClient;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+/**
+ * Remembers the approved authorizations and payments of each customer reference, so a request repeated with the same
+ * customer reference, e.g. after a double click or by a retried job, gets the original answer instead of charging the
+ * card again.
+ * <p/>
+ * A lookup first checks a Bloom filter, which tells at once, with a few memory reads, that most new references were
+ * never seen. Only otherwise is the hash index searched, an open addressing table of 64 bit fingerprints, and the
+ * answer read from the results file. The filter and the index are memory-mapped from one file sized for the expected
+ * number of keys, at about 1% false positives and at most 3/4 of the index in use, so lookups stay within a few
+ * cache misses however many keys are stored. The file takes 23 to 44 bytes per expected key, only the pages written
+ * take disk space and the operating system keeps the pages in use in memory.
+ * <p/>
+ * Requests with the same customer reference sent while the first is in flight wait for it and get its answer or
+ * exception. Declined and failed requests are not remembered, they can be sent again. Answers are kept per environment
+ * and card acceptor, so test and live clients can share a store.
+ * <p/>
+ * Lookups take no lock. A directory can only be open in one store at a time.
+ */
+public class IdempotencyStore implements Closeable {
+
+    public static final long DEFAULT_EXPECTED_KEYS = 1 << 20;
+
+    private static final long MAGIC = 0x4850494453544f52L;
+    private static final int HEADER = 64;
+    private static final int COUNT_OFFSET = 24;
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASHES = 7;
+    private static final int SLOT = 16;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK = 1L << CHUNK_SHIFT;
+    private static final String INDEX = "idempotency.index";
+    private static final String RESULTS = "idempotency.results";
+    private static final Map<File, IdempotencyStore> OPEN = new HashMap<>();
+
+    /**
+     * Sends a request whose answer may be remembered.
+     */
+    interface Request<T> {
+        T send() throws HpServerError, HpECommerceException, InvalidMessageException;
+    }
+
+    private final File directory;
+    private final long bloomBits;
+    private final long slots;
+    private final long slotsOffset;
+    private final FileChannel indexChannel;
+    private final FileLock lock;
+    private final MappedByteBuffer[] chunks;
+    private final FileChannel results;
+    private final MessageCodec codec = new JaxbMessageCodec();
+    private final ConcurrentMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // Guarded by this
+    private long count;
+    private long resultsSize;
+    private boolean closed;
+
+    /**
+     * Opens a store sized for the default number of keys.
+     *
+     * @param directory the directory of the store, created if it does not exist
+     * @throws IOException if the store can not be opened or is open in another store
+     */
+    public IdempotencyStore(File directory) throws IOException {
+        this(directory, DEFAULT_EXPECTED_KEYS);
+    }
+
+    /**
+     * @param directory    the directory of the store, created if it does not exist
+     * @param expectedKeys keys the store is sized for, ignored if the store exists. It holds at least this many
+     * @throws IOException if the store can not be opened or is open in another store
+     */
+    public IdempotencyStore(File directory, long expectedKeys) throws IOException {
+        if (expectedKeys < 1) {
+            throw new IllegalArgumentException("Invalid expected keys");
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create store directory: " + directory);
+        }
+        this.directory = directory;
+        indexChannel = FileChannel.open(new File(directory, INDEX).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = indexChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            indexChannel.close();
+            throw new IOException("Store in use: " + directory);
+        }
+        lock = acquired;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        if (indexChannel.size() >= HEADER) {
+            while (header.hasRemaining() && indexChannel.read(header, header.position()) >= 0) {
+                // Read the whole header
+            }
+            if (header.getLong(0) != MAGIC) {
+                close();
+                throw new IOException("Not an idempotency store: " + directory);
+            }
+            bloomBits = header.getLong(8);
+            slots = header.getLong(16);
+            count = header.getLong(COUNT_OFFSET);
+        } else {
+            bloomBits = (expectedKeys * BITS_PER_KEY + 63) / 64 * 64;
+            slots = Long.highestOneBit(expectedKeys * 4 / 3 + 1) << 1;
+            header.putLong(0, MAGIC).putLong(8, bloomBits).putLong(16, slots).putLong(COUNT_OFFSET, 0);
+            while (header.hasRemaining()) {
+                indexChannel.write(header, header.position());
+            }
+        }
+        slotsOffset = HEADER + bloomBits / 8;
+        long size = slotsOffset + slots * SLOT;
+        chunks = new MappedByteBuffer[(int) ((size + CHUNK - 1) >>> CHUNK_SHIFT)];
+        for (int i = 0; i < chunks.length; i++) {
+            long position = (long) i << CHUNK_SHIFT;
+            chunks[i] = indexChannel.map(FileChannel.MapMode.READ_WRITE, position, Math.min(CHUNK, size - position));
+        }
+        results = FileChannel.open(new File(directory, RESULTS).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        resultsSize = results.size();
+    }
+
+    /**
+     * Opens the store of a directory once per JVM, so the clients configured with the same directory share it.
+     */
+    static IdempotencyStore open(File directory, long expectedKeys) throws IOException {
+        File key = directory.getCanonicalFile();
+        synchronized (OPEN) {
+            IdempotencyStore store = OPEN.get(key);
+            if (store == null) {
+                store = new IdempotencyStore(key, expectedKeys);
+                OPEN.put(key, store);
+            }
+            return store;
+        }
+    }
+
+    /**
+     * @return the remembered answer of the customer reference, or null if there is none
+     * @throws IOException if the answer can not be read
+     */
+    public <T> T get(Environment environment, String cardAcceptor, String transactionType, String customerReference,
+                     Class<T> messageType) throws IOException {
+        String key = key(environment, cardAcceptor, transactionType, customerReference);
+        long hash = hash(key);
+        if (!mightContain(hash)) {
+            return null;
+        }
+        long fingerprint = fingerprint(hash);
+        for (long slot = hash & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            long position = slotsOffset + slot * SLOT;
+            long stored = getLong(position);
+            if (stored == 0) {
+                return null;
+            }
+            if (stored == fingerprint) {
+                // The offset is written before the fingerprint
+                long offset = getLong(position + 8) - 1;
+                if (offset >= 0) {
+                    ByteBuffer record = read(offset);
+                    if (key.equals(TransactionJournal.getString(record))) {
+                        return decode(messageType, record);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Remembers the answer of a customer reference, unless one is remembered already.
+     *
+     * @return true if the answer was remembered
+     * @throws IOException if the answer can not be written or the store is full
+     */
+    public synchronized <T> boolean put(Environment environment, String cardAcceptor, String transactionType,
+                                        String customerReference, Class<T> messageType, T message) throws IOException {
+        if (closed) {
+            throw new IOException("Store closed: " + directory);
+        }
+        String key = key(environment, cardAcceptor, transactionType, customerReference);
+        long hash = hash(key);
+        long fingerprint = fingerprint(hash);
+        long position;
+        for (long slot = hash & (slots - 1); ; slot = (slot + 1) & (slots - 1)) {
+            position = slotsOffset + slot * SLOT;
+            long stored = getLong(position);
+            if (stored == 0) {
+                break;
+            }
+            if (stored == fingerprint && key.equals(TransactionJournal.getString(read(getLong(position + 8) - 1)))) {
+                return false;
+            }
+        }
+        if (count >= slots / 4 * 3) {
+            throw new IOException("Store full: " + directory);
+        }
+        long offset = append(key, encode(messageType, message));
+        putLong(position + 8, offset + 1);
+        putLong(position, fingerprint);
+        for (int i = 0; i < HASHES; i++) {
+            long bit = bit(hash, i);
+            long word = HEADER + (bit >>> 6) * 8;
+            putLong(word, getLong(word) | 1L << (bit & 63));
+        }
+        putLong(COUNT_OFFSET, ++count);
+        return true;
+    }
+
+    /**
+     * Sends a request unless the answer of its customer reference is remembered, waiting for a request with the same
+     * customer reference in flight instead of sending it again.
+     *
+     * @param remember true for answers to remember, e.g. approved ones
+     * @return the remembered answer, the answer of the request in flight or of this request
+     */
+    <T> T execute(Environment environment, String cardAcceptor, String transactionType, String customerReference,
+                  Class<T> messageType, Predicate<T> remember, Request<T> request)
+            throws HpServerError, HpECommerceException, InvalidMessageException {
+        T remembered = lookup(environment, cardAcceptor, transactionType, customerReference, messageType);
+        if (remembered != null) {
+            return remembered;
+        }
+        String key = key(environment, cardAcceptor, transactionType, customerReference);
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            return messageType.cast(await(running));
+        }
+        try {
+            // A request may have completed after the first lookup
+            T answer = lookup(environment, cardAcceptor, transactionType, customerReference, messageType);
+            if (answer == null) {
+                answer = request.send();
+                if (remember.test(answer)) {
+                    try {
+                        put(environment, cardAcceptor, transactionType, customerReference, messageType, answer);
+                    } catch (IOException e) {
+                        // The request was sent, its answer is returned even if it can not be remembered
+                    }
+                }
+            }
+            mine.complete(answer);
+            return answer;
+        } catch (HpServerError | HpECommerceException | InvalidMessageException | RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * @return the number of answers remembered
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * @return the largest number of answers the store can remember
+     */
+    public long getCapacity() {
+        return slots / 4 * 3;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        lock.release();
+        indexChannel.close();
+        if (results != null) {
+            results.close();
+        }
+        synchronized (OPEN) {
+            OPEN.remove(directory, this);
+        }
+    }
+
+    private <T> T lookup(Environment environment, String cardAcceptor, String transactionType, String customerReference,
+                         Class<T> messageType) throws HpECommerceException {
+        try {
+            return get(environment, cardAcceptor, transactionType, customerReference, messageType);
+        } catch (IOException e) {
+            // Not sending is safer than charging twice
+            throw new HpECommerceException("Error when reading idempotency store", e, null);
+        }
+    }
+
+    private static Object await(CompletableFuture<Object> running) throws HpServerError, HpECommerceException, InvalidMessageException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new HpECommerceException("Interrupted waiting for request in flight", e, null);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof HpServerError) {
+                throw (HpServerError) cause;
+            } else if (cause instanceof HpECommerceException) {
+                throw (HpECommerceException) cause;
+            } else if (cause instanceof InvalidMessageException) {
+                throw (InvalidMessageException) cause;
+            }
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private boolean mightContain(long hash) {
+        for (int i = 0; i < HASHES; i++) {
+            long bit = bit(hash, i);
+            if ((getLong(HEADER + (bit >>> 6) * 8) & 1L << (bit & 63)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Double hashing, the i-th bit of a key is h1 + i * h2 with both halves taken from its 64 bit hash.
+     */
+    private long bit(long hash, int i) {
+        long h1 = hash >>> 32;
+        long h2 = hash & 0xffffffffL | 1;
+        return (h1 + i * h2) % bloomBits;
+    }
+
+    private long append(String key, byte[] message) throws IOException {
+        byte[] keyBytes = TransactionJournal.bytes(key);
+        ByteBuffer body = ByteBuffer.allocate(2 + keyBytes.length + 4 + message.length);
+        TransactionJournal.putString(body, keyBytes);
+        body.putInt(message.length).put(message);
+        ByteBuffer record = ByteBuffer.allocate(4 + body.capacity());
+        record.putInt(body.capacity()).put(body.array()).flip();
+        long offset = resultsSize;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += results.write(record, position);
+        }
+        resultsSize = position;
+        return offset;
+    }
+
+    private ByteBuffer read(long offset) throws IOException {
+        ByteBuffer length = ByteBuffer.allocate(4);
+        readFully(length, offset);
+        ByteBuffer body = ByteBuffer.allocate(length.getInt(0));
+        readFully(body, offset + 4);
+        body.flip();
+        return body;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (results.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated idempotency store: " + directory);
+            }
+        }
+    }
+
+    private <T> byte[] encode(Class<T> messageType, T message) throws IOException {
+        try {
+            return codec.encode(messageType, message);
+        } catch (HpECommerceException e) {
+            throw new IOException("Error when writing answer", e);
+        }
+    }
+
+    private <T> T decode(Class<T> messageType, ByteBuffer record) throws IOException {
+        int length = record.getInt();
+        try {
+            return codec.decode(messageType, new ByteArrayInputStream(record.array(), record.position(), length));
+        } catch (HpECommerceException e) {
+            throw new IOException("Error when reading answer", e);
+        }
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position >>> CHUNK_SHIFT)].getLong((int) (position & (CHUNK - 1)));
+    }
+
+    private void putLong(long position, long value) {
+        chunks[(int) (position >>> CHUNK_SHIFT)].putLong((int) (position & (CHUNK - 1)), value);
+    }
+
+    /**
+     * FNV-1a over the characters of the key, mixed with the finalizer of MurmurHash3 so every bit of the hash
+     * depends on every character.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long fingerprint(long hash) {
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static String key(Environment environment, String cardAcceptor, String transactionType,
+                              String customerReference) {
+        return environment + " " + cardAcceptor + ' ' + transactionType + ' ' + customerReference;
+    }
+
+    @Override
+    public String toString() {
+        return "IdempotencyStore{" + directory + ", size=" + size() + ", capacity=" + getCapacity() + '}';
+    }
+}
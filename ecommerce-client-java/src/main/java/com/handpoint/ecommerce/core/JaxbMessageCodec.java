@@ -0,0 +1,37 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+
+import javax.xml.bind.JAXBException;
+import java.io.InputStream;
+
+/**
+ * Message codec that uses JAXB through the JaxbMessageConverter. Handles any JAXB annotated class and is
+ * used as a fallback for messages the streaming codec does not know. Messages are written as compact UTF-8 xml.
+ */
+public class JaxbMessageCodec implements MessageCodec {
+
+    private final JaxbMessageConverter messageConverter = new JaxbMessageConverter();
+
+    @Override
+    public <T> byte[] encode(Class<T> messageType, T message) throws HpECommerceException {
+        MessageBuffer buffer = MessageBuffer.acquire();
+        try {
+            messageConverter.writeMessage(messageType, message, buffer);
+            return buffer.toByteArray();
+        } catch (JAXBException e) {
+            throw new HpECommerceException("Error writing " + messageType.getSimpleName(), e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public <T> T decode(Class<T> messageType, InputStream stream) throws HpECommerceException {
+        try {
+            return messageConverter.convert(messageType, stream);
+        } catch (JAXBException e) {
+            throw new HpECommerceException("Error reading " + messageType.getSimpleName(), e);
+        }
+    }
+}
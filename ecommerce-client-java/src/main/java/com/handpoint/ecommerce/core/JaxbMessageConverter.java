@@ -0,0 +1,167 @@
+package com.handpoint.ecommerce.core;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Generic class used for message conversion when using jaxb
+ * <p/>
+ * Building a JAXBContext is expensive, so one context for all message classes in com.handpoint.ecommerce.messages
+ * is built once, on first use. Marshallers and unmarshallers are not thread safe, so each thread reuses
+ * its own. Classes outside the message packages get a context of their own, built on first use and then cached.
+ *
+ * @author fridrik
+ * @since 12/12/12 10:53 AM
+ */
+public class JaxbMessageConverter {
+
+    public static final String MESSAGES_PACKAGE = "com.handpoint.ecommerce.messages";
+    public static final String MESSAGES_CONTEXT_PATH = MESSAGES_PACKAGE + ":" + MESSAGES_PACKAGE + ".payment:" + MESSAGES_PACKAGE + ".token";
+
+    private static final ConcurrentMap<Class<?>, JAXBContext> contexts = new ConcurrentHashMap<>();
+
+    private static final ThreadLocal<Marshaller> marshaller = ThreadLocal.withInitial(() -> {
+        try {
+            return createMarshaller(MessagesContext.context, true);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Unable to create marshaller", e);
+        }
+    });
+
+    private static final ThreadLocal<Marshaller> compactMarshaller = ThreadLocal.withInitial(() -> {
+        try {
+            return createMarshaller(MessagesContext.context, false);
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Unable to create marshaller", e);
+        }
+    });
+
+    private static final ThreadLocal<Unmarshaller> unmarshaller = ThreadLocal.withInitial(() -> {
+        try {
+            return MessagesContext.context.createUnmarshaller();
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Unable to create unmarshaller", e);
+        }
+    });
+
+    protected <T> T convert(Class<T> messageType, String message) throws JAXBException {
+        return convert(messageType, new StringReader(message));
+    }
+
+    /**
+     * Converts a String to a object of type T. Note, object must be Entity class.
+     *
+     * @param messageType type of class to convert to
+     * @param reader
+     * @param <T>         type of class
+     * @return new object of type T
+     * @throws JAXBException
+     */
+    protected <T> T convert(Class<T> messageType, Reader reader) throws JAXBException {
+        return getUnmarshaller(messageType).unmarshal(new StreamSource(reader), messageType).getValue();
+    }
+
+    /**
+     * Converts a stream of bytes to a object of type T. The encoding is read from the xml declaration.
+     *
+     * @param messageType type of class to convert to
+     * @param stream      the xml to convert
+     * @param <T>         type of class
+     * @return new object of type T
+     * @throws JAXBException
+     */
+    protected <T> T convert(Class<T> messageType, InputStream stream) throws JAXBException {
+        return getUnmarshaller(messageType).unmarshal(new StreamSource(stream), messageType).getValue();
+    }
+
+    /**
+     * Creates a xml string from an object of type T. Note, object must be Entity class.
+     *
+     * @param messageType
+     * @param object
+     * @param <T>
+     * @return
+     * @throws JAXBException
+     */
+    protected <T> String getMessage(Class<T> messageType, Object object) throws JAXBException {
+        StringWriter writer = new StringWriter();
+        getMarshaller(messageType, true).marshal(object, writer);
+        return writer.toString();
+    }
+
+    /**
+     * Writes an object of type T as compact UTF-8 xml, without the indentation added by getMessage.
+     * Used for the messages sent on the wire. Note, object must be Entity class.
+     *
+     * @param messageType
+     * @param object
+     * @param out         where to write the xml
+     * @param <T>
+     * @throws JAXBException
+     */
+    protected <T> void writeMessage(Class<T> messageType, Object object, OutputStream out) throws JAXBException {
+        getMarshaller(messageType, false).marshal(object, out);
+    }
+
+    private static Marshaller getMarshaller(Class<?> messageType, boolean formatted) throws JAXBException {
+        if (isMessage(messageType)) {
+            return formatted ? marshaller.get() : compactMarshaller.get();
+        }
+        return createMarshaller(getContext(messageType), formatted);
+    }
+
+    private static Unmarshaller getUnmarshaller(Class<?> messageType) throws JAXBException {
+        if (isMessage(messageType)) {
+            return unmarshaller.get();
+        }
+        return getContext(messageType).createUnmarshaller();
+    }
+
+    private static Marshaller createMarshaller(JAXBContext context, boolean formatted) throws JAXBException {
+        Marshaller m = context.createMarshaller();
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+        m.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+        return m;
+    }
+
+    private static JAXBContext getContext(Class<?> messageType) throws JAXBException {
+        JAXBContext context = contexts.get(messageType);
+        if (context == null) {
+            context = JAXBContext.newInstance(messageType);
+            JAXBContext existing = contexts.putIfAbsent(messageType, context);
+            if (existing != null) {
+                context = existing;
+            }
+        }
+        return context;
+    }
+
+    private static boolean isMessage(Class<?> messageType) {
+        return messageType.getName().startsWith(MESSAGES_PACKAGE + ".");
+    }
+
+    private static JAXBContext createMessagesContext() {
+        try {
+            return JAXBContext.newInstance(MESSAGES_CONTEXT_PATH, JaxbMessageConverter.class.getClassLoader());
+        } catch (JAXBException e) {
+            throw new IllegalStateException("Unable to create JAXB context for " + MESSAGES_CONTEXT_PATH, e);
+        }
+    }
+
+    /**
+     * Holds the context for the message classes so it is only built when JAXB is actually used.
+     */
+    private static class MessagesContext {
+        private static final JAXBContext context = createMessagesContext();
+    }
+}
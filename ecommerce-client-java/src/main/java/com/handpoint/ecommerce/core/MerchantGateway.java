@@ -0,0 +1,154 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Sends requests for any number of merchants over one http client, connection pool and message codec.
+ * <p/>
+ * An ECommerceClient built from a shared secret owns its own Jersey client, filters and connection pool. The
+ * clients handed out by a gateway instead share those of the gateway and only hold their card acceptor and the
+ * signer of their shared secret, so each merchant costs a few hundred bytes. Signers are cached by shared secret,
+ * the Mac is keyed once for each secret however often a client for it is asked for.
+ */
+public class MerchantGateway {
+
+    private final BixbyClient transport;
+    private final ConcurrentMap<String, HmacSigner> signers = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a gateway without message logging.
+     */
+    public MerchantGateway() {
+        this(false);
+    }
+
+    /**
+     * @param enableMessageLogging if true all messages are logged using com.sun.jersey.api.client.filter.LoggingFilter
+     */
+    public MerchantGateway(boolean enableMessageLogging) {
+        transport = new BixbyClient(null, Environment.LIVE, enableMessageLogging);
+    }
+
+    /**
+     * @param eCommerceUser shared secret, card acceptor and environment of the merchant
+     * @return client sending requests for the merchant over the transport of this gateway
+     */
+    public ECommerceClient merchant(ECommerceUser eCommerceUser) {
+        return merchant(eCommerceUser.getCardAcceptor(), eCommerceUser.getSharedSecret(), eCommerceUser.getEnvironment());
+    }
+
+    /**
+     * @param cardAcceptor the cardAcceptor of the merchant. Assigned by Handpoint
+     * @param sharedSecret the sharedSecret the merchant authenticates with
+     * @param environment  enum used to set environment to either TEST or LIVE
+     * @return client sending requests for the merchant over the transport of this gateway
+     */
+    public ECommerceClient merchant(String cardAcceptor, String sharedSecret, Environment environment) {
+        return new ECommerceClient(cardAcceptor, newClient(sharedSecret, environment));
+    }
+
+    /**
+     * @return client for one merchant sharing the transport of this gateway
+     */
+    BixbyClient newClient(String sharedSecret, Environment environment) {
+        return new BixbyClient(transport, getSigner(sharedSecret), environment);
+    }
+
+    /**
+     * @param sharedSecret the shared secret
+     * @return the cached signer for the shared secret, created on first use
+     */
+    HmacSigner getSigner(String sharedSecret) {
+        HmacSigner signer = signers.get(sharedSecret);
+        return signer != null ? signer : signers.computeIfAbsent(sharedSecret, HmacSigner::new);
+    }
+
+    /**
+     * Drops the cached signer of a shared secret that is no longer used, e.g. after it was rotated. Clients already
+     * holding the signer keep using it.
+     *
+     * @param sharedSecret the shared secret
+     */
+    void removeSigner(String sharedSecret) {
+        signers.remove(sharedSecret);
+    }
+
+    /**
+     * @return sizes of the request bodies sent for all merchants, in total and per message type
+     */
+    public WireMetrics getWireMetrics() {
+        return transport.getWireMetrics();
+    }
+
+    /**
+     * @return the circuit breakers shared by all merchants, null if circuit breakers are turned off
+     */
+    public CircuitBreakers getCircuitBreakers() {
+        return transport.getCircuitBreakers();
+    }
+
+    /**
+     * @return the canceller of transactions whose outcome is unknown, shared by all merchants. Null if there is none
+     */
+    public AutoCanceller getAutoCanceller() {
+        return transport.getAutoCanceller();
+    }
+
+    /**
+     * @return the journal of transactions in flight, shared by all merchants. Null if there is none
+     */
+    public TransactionJournal getTransactionJournal() {
+        return transport.getTransactionJournal();
+    }
+
+    /**
+     * @return the store of answers by customer reference, shared by all merchants. Null if there is none
+     */
+    public IdempotencyStore getIdempotencyStore() {
+        return transport.getIdempotencyStore();
+    }
+
+    /**
+     * @return the cache of token lookups, shared by all merchants. Null if there is none
+     */
+    public TokenCache getTokenCache() {
+        return transport.getTokenCache();
+    }
+
+    /**
+     * @return the time each operation is given to complete, shared by all merchants. Null if requests have no timeout
+     */
+    public Timeouts getTimeouts() {
+        return transport.getTimeouts();
+    }
+
+    /**
+     * @return the limiter of the rate of requests shared by all merchants, with a bucket per card acceptor and
+     * operation. Null if the rate is not limited
+     */
+    public RateLimiter getRateLimiter() {
+        return transport.getRateLimiter();
+    }
+
+    /**
+     * @return the limiter of the requests in flight shared by all merchants, null if requests are not limited
+     */
+    public ConcurrencyLimiter getConcurrencyLimiter() {
+        return transport.getConcurrencyLimiter();
+    }
+
+    /**
+     * @return the pool of keep-alive connections shared by all merchants
+     */
+    public ConnectionPool getConnectionPool() {
+        return transport.getConnectionPool();
+    }
+
+    /**
+     * Closes the pooled connections. Clients handed out by the gateway can not be used afterwards.
+     */
+    public void shutdown() {
+        transport.getConnectionPool().shutdown();
+    }
+}
@@ -0,0 +1,258 @@
+package com.handpoint.ecommerce.core;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up the card acceptor, shared secret and environment of merchants in a local file and hands out clients for
+ * them from a MerchantGateway.
+ * <p/>
+ * The file has one merchant per line, {@code cardAcceptor,sharedSecret,environment}, e.g.
+ * {@code 7f6451e8314defbb50d0,8F10C8AD35B7AEC1...,LIVE}, sorted by card acceptor in byte order (as by
+ * {@code LC_ALL=C sort}). The sort order is the index: the file is memory mapped and a merchant is found by a binary
+ * search over its lines, so opening the registry reads nothing and a lookup touches a few pages whatever the number
+ * of merchants. Clients are created on first use and cached.
+ * <p/>
+ * When the file is replaced the registry reloads it, on reload() or by itself if watching is enabled. Cached clients
+ * of merchants whose shared secret changed get a signer for the new secret, requests already sent keep the signer
+ * they started with. Merchants removed from the file or moved to another environment are dropped from the cache.
+ * Replace the file by renaming a new file over it, a mapped file that is truncated while in use can not be read.
+ */
+public class MerchantRegistry implements Closeable {
+
+    private static final byte SEPARATOR = ',';
+    private static final byte NEWLINE = '\n';
+
+    private final Path file;
+    private final MerchantGateway gateway;
+    private final Map<String, Merchant> merchants = new ConcurrentHashMap<>();
+    private MappedByteBuffer records;
+    private WatchService watchService;
+
+    /**
+     * Opens the registry without watching the file for changes.
+     *
+     * @param file    the merchant file
+     * @param gateway gateway the clients of the merchants share
+     * @throws IOException if the file can not be mapped
+     */
+    public MerchantRegistry(Path file, MerchantGateway gateway) throws IOException {
+        this(file, gateway, false);
+    }
+
+    /**
+     * @param file    the merchant file
+     * @param gateway gateway the clients of the merchants share
+     * @param watch   if true the file is reloaded when it changes
+     * @throws IOException if the file can not be mapped or watched
+     */
+    public MerchantRegistry(Path file, MerchantGateway gateway, boolean watch) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.gateway = gateway;
+        records = map(this.file);
+        if (watch) {
+            watchService = this.file.getFileSystem().newWatchService();
+            this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            Thread watcher = new Thread(this::watch, "merchant-registry-" + this.file.getFileName());
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * @param cardAcceptor the cardAcceptor of the merchant
+     * @return client sending requests for the merchant, or null if the merchant is not in the file
+     */
+    public ECommerceClient getClient(String cardAcceptor) {
+        Merchant merchant = getMerchant(cardAcceptor);
+        return merchant == null ? null : merchant.client;
+    }
+
+    /**
+     * @param cardAcceptor the cardAcceptor of the merchant
+     * @return card acceptor, shared secret and environment of the merchant, or null if the merchant is not in the file
+     */
+    public ECommerceUser getUser(String cardAcceptor) {
+        Merchant merchant = getMerchant(cardAcceptor);
+        return merchant == null ? null : merchant.user;
+    }
+
+    /**
+     * @return number of merchants looked up and cached since the registry was opened
+     */
+    public int getCachedMerchantCount() {
+        return merchants.size();
+    }
+
+    /**
+     * Maps the file again and updates the cached merchants. Cached clients of merchants whose shared secret changed
+     * switch to the new secret, merchants removed or moved to another environment are dropped.
+     *
+     * @throws IOException if the file can not be mapped, the registry then keeps using the records it had
+     */
+    public synchronized void reload() throws IOException {
+        MappedByteBuffer reloaded = map(file);
+        records = reloaded;
+        for (Merchant merchant : merchants.values()) {
+            ECommerceUser user = find(reloaded, merchant.user.getCardAcceptor());
+            if (user == null || user.getEnvironment() != merchant.user.getEnvironment()) {
+                merchants.remove(merchant.user.getCardAcceptor());
+            } else if (!user.getSharedSecret().equals(merchant.user.getSharedSecret())) {
+                merchant.bixbyClient.setSigner(gateway.getSigner(user.getSharedSecret()));
+                gateway.removeSigner(merchant.user.getSharedSecret());
+                merchant.user = user;
+            }
+        }
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private Merchant getMerchant(String cardAcceptor) {
+        Merchant merchant = merchants.get(cardAcceptor);
+        return merchant != null ? merchant : load(cardAcceptor);
+    }
+
+    /**
+     * Creates the client of a merchant on first use. Synchronized with reload so a merchant is never cached from
+     * records older than the last reload.
+     */
+    private synchronized Merchant load(String cardAcceptor) {
+        Merchant merchant = merchants.get(cardAcceptor);
+        if (merchant == null) {
+            ECommerceUser user = find(records, cardAcceptor);
+            if (user == null) {
+                return null;
+            }
+            BixbyClient bixbyClient = gateway.newClient(user.getSharedSecret(), user.getEnvironment());
+            merchant = new Merchant(user, bixbyClient, new ECommerceClient(cardAcceptor, bixbyClient));
+            merchants.put(cardAcceptor, merchant);
+        }
+        return merchant;
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (file.getFileName().equals(event.context())) {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    try {
+                        reload();
+                    } catch (IOException e) {
+                        // Keep the records loaded before, the next change reloads again
+                    }
+                }
+                if (!key.reset()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Registry closed
+        }
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Binary search over the lines of the file. The range searched always starts and ends at line boundaries, the
+     * line around the middle byte is compared with the card acceptor and the range narrowed to the lines before or
+     * after it. Only absolute reads are used, so the buffer can be searched by any number of threads.
+     *
+     * @return the merchant record, or null if there is no line for the card acceptor
+     */
+    static ECommerceUser find(MappedByteBuffer records, String cardAcceptor) {
+        int low = 0;
+        int high = records.limit();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            int start = middle;
+            while (start > low && records.get(start - 1) != NEWLINE) {
+                start--;
+            }
+            int end = middle;
+            while (end < high && records.get(end) != NEWLINE) {
+                end++;
+            }
+            int result = compareCardAcceptor(records, start, end, cardAcceptor);
+            if (result == 0) {
+                return parse(records, start, end);
+            } else if (result < 0) {
+                low = end + 1;
+            } else {
+                high = start;
+            }
+        }
+        return null;
+    }
+
+    private static int compareCardAcceptor(MappedByteBuffer records, int start, int end, String cardAcceptor) {
+        int length = cardAcceptor.length();
+        for (int i = 0; ; i++) {
+            int position = start + i;
+            boolean lineEnded = position >= end || records.get(position) == SEPARATOR;
+            if (i == length) {
+                return lineEnded ? 0 : 1;
+            }
+            if (lineEnded) {
+                return -1;
+            }
+            int difference = (records.get(position) & 0xFF) - cardAcceptor.charAt(i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+    }
+
+    private static ECommerceUser parse(MappedByteBuffer records, int start, int end) {
+        byte[] line = new byte[end - start];
+        for (int i = 0; i < line.length; i++) {
+            line[i] = records.get(start + i);
+        }
+        String[] fields = new String(line, StandardCharsets.UTF_8).trim().split(",");
+        if (fields.length != 3) {
+            throw new IllegalStateException("Invalid merchant record: " + fields[0]);
+        }
+        return new ECommerceUser(fields[0].trim(), fields[1].trim(), Environment.valueOf(fields[2].trim()));
+    }
+
+    private static final class Merchant {
+        private volatile ECommerceUser user;
+        private final BixbyClient bixbyClient;
+        private final ECommerceClient client;
+
+        Merchant(ECommerceUser user, BixbyClient bixbyClient, ECommerceClient client) {
+            this.user = user;
+            this.bixbyClient = bixbyClient;
+            this.client = client;
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.handpoint.ecommerce.core;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Byte buffer that messages are written to before they are sent. Each thread reuses its own buffer, so encoding
+ * a message only allocates the byte array of the final size. Buffers that grew past MAX_RETAINED_SIZE are
+ * dropped after use rather than kept by the thread.
+ */
+final class MessageBuffer extends ByteArrayOutputStream {
+
+    static final int INITIAL_SIZE = 1024;
+    static final int MAX_RETAINED_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<MessageBuffer> buffers = ThreadLocal.withInitial(MessageBuffer::new);
+
+    private MessageBuffer() {
+        super(INITIAL_SIZE);
+    }
+
+    /**
+     * @return the empty buffer of the current thread
+     */
+    static MessageBuffer acquire() {
+        MessageBuffer buffer = buffers.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Hands the buffer back to the current thread once its content has been copied out.
+     */
+    void release() {
+        if (buf.length > MAX_RETAINED_SIZE) {
+            buffers.remove();
+        }
+    }
+}
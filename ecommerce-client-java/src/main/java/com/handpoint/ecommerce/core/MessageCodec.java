@@ -0,0 +1,34 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+
+import java.io.InputStream;
+
+/**
+ * Converts request messages to the bytes sent to the Handpoint E-Commerce web service and
+ * responses read from it back to message objects.
+ */
+public interface MessageCodec {
+
+    /**
+     * Writes a message as UTF-8 encoded xml.
+     *
+     * @param messageType type of the message
+     * @param message     the message to write
+     * @param <T>         type of the message
+     * @return the xml bytes
+     * @throws HpECommerceException if the message can not be written
+     */
+    <T> byte[] encode(Class<T> messageType, T message) throws HpECommerceException;
+
+    /**
+     * Reads a message from xml. The encoding is read from the xml declaration.
+     *
+     * @param messageType type of the message to read
+     * @param stream      the xml to read
+     * @param <T>         type of the message
+     * @return new message of type T
+     * @throws HpECommerceException if the xml can not be read
+     */
+    <T> T decode(Class<T> messageType, InputStream stream) throws HpECommerceException;
+}
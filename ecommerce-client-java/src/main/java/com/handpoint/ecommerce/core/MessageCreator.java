@@ -3,14 +3,12 @@ package com.handpoint.ecommerce.core;
 import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
 import com.handpoint.ecommerce.messages.payment.*;
 import com.handpoint.ecommerce.messages.token.TokenRequest;
-import org.hibernate.validator.internal.engine.ConstraintViolationImpl;
-
-import javax.validation.ConstraintViolation;
-import javax.validation.Validation;
-import java.util.Set;
 
 /**
  * Class used to create request messages and validate data
+ * <p/>
+ * The NotNull and Size constraints of the messages are checked by validators generated at compile time, which give
+ * the same messages as Hibernate Validator without bootstrapping a validator factory for every message.
  */
 public class MessageCreator {
 
@@ -40,9 +38,9 @@ public class MessageCreator {
         authorizationRequest.setExpiryDateMMYY(expiryDateMMYY);
         authorizationRequest.setCardVerificationCode(cardVerificationCode);
         authorizationRequest.setCustomerReference(customerReference);
-        Set<ConstraintViolation<AuthorizationRequest>> constraintViolations = Validation.buildDefaultValidatorFactory().getValidator().validate(authorizationRequest);
-        if (!constraintViolations.isEmpty()) {
-            throw new InvalidMessageException(getConstraintViolationMessage(constraintViolations));
+        String violations = GeneratedMessageValidators.validate(authorizationRequest);
+        if (violations != null) {
+            throw new InvalidMessageException(violations);
         } else if (!hasValidCardData(authorizationRequest)) {
             throw new InvalidMessageException("Invalid card data. Must include either token or card number and expiry date");
         }
@@ -78,10 +76,10 @@ public class MessageCreator {
         paymentRequest.setCardVerificationCode(cardVerificationCode);
         paymentRequest.setCustomerReference(customerReference);
 
-        Set<ConstraintViolation<PaymentRequest>> constraintViolations = Validation.buildDefaultValidatorFactory().getValidator().validate(paymentRequest);
+        String violations = GeneratedMessageValidators.validate(paymentRequest);
 
-        if (!constraintViolations.isEmpty()) {
-            throw new InvalidMessageException(getConstraintViolationMessage(constraintViolations));
+        if (violations != null) {
+            throw new InvalidMessageException(violations);
         } else if (!hasValidCardData(paymentRequest)) {
             throw new InvalidMessageException("Invalid card data. Must include either token or card number and expiry date");
         }
@@ -116,10 +114,10 @@ public class MessageCreator {
         refundRequest.setExpiryDateMMYY(expiryDateMMYY);
         refundRequest.setCustomerReference(customerReference);
 
-        Set<ConstraintViolation<RefundRequest>> constraintViolations = Validation.buildDefaultValidatorFactory().getValidator().validate(refundRequest);
+        String violations = GeneratedMessageValidators.validate(refundRequest);
 
-        if (!constraintViolations.isEmpty()) {
-            throw new InvalidMessageException(getConstraintViolationMessage(constraintViolations));
+        if (violations != null) {
+            throw new InvalidMessageException(violations);
         } else if (!hasValidCardData(refundRequest)) {
             throw new InvalidMessageException("Invalid card data. Must include either token or card number and expiry date");
         }
@@ -165,10 +163,10 @@ public class MessageCreator {
         cancellationRequest.setCurrency(currency);
         cancellationRequest.setTransactionType(transactionType);
         cancellationRequest.setTerminalDateTime(terminalDateTime);
-        Set<ConstraintViolation<CancellationRequest>> constraintViolations = Validation.buildDefaultValidatorFactory().getValidator().validate(cancellationRequest);
+        String violations = GeneratedMessageValidators.validate(cancellationRequest);
 
-        if (!constraintViolations.isEmpty()) {
-            throw new InvalidMessageException(getConstraintViolationMessage(constraintViolations));
+        if (violations != null) {
+            throw new InvalidMessageException(violations);
         }
         return cancellationRequest;
     }
@@ -185,10 +183,10 @@ public class MessageCreator {
         TokenRequest tokenRequest = new TokenRequest();
         tokenRequest.setCardNumber(cardNumber);
         tokenRequest.setExpiryDateMMYY(expiryDateMMYY);
-        Set<ConstraintViolation<TokenRequest>> constraintViolations = Validation.buildDefaultValidatorFactory().getValidator().validate(tokenRequest);
+        String violations = GeneratedMessageValidators.validate(tokenRequest);
 
-        if (!constraintViolations.isEmpty()) {
-            throw new InvalidMessageException(getConstraintViolationMessage(constraintViolations));
+        if (violations != null) {
+            throw new InvalidMessageException(violations);
         }
         return tokenRequest;
     }
@@ -235,22 +233,4 @@ public class MessageCreator {
     protected static boolean hasValidCardData(RefundRequest message) {
         return (message.getCardNumber() != null && message.getExpiryDateMMYY() != null) || message.getToken() != null || message.getPaymentGuid() != null;
     }
-
-    /**
-     * Method creates an error message from constraint violations.
-     *
-     * @param violations
-     * @return string with violation message.
-     */
-    private static String getConstraintViolationMessage(Set violations) {
-        StringBuilder builder = new StringBuilder();
-        for (Object c : violations) {
-            if (c instanceof ConstraintViolationImpl) {
-                ConstraintViolation violation = (ConstraintViolation) c;
-                builder.append(violation.getMessage());
-                builder.append("\n");
-            }
-        }
-        return builder.toString();
-    }
 }
@@ -0,0 +1,113 @@
+package com.handpoint.ecommerce.core;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads the xml of one message type with StAX. The serializers for the message classes are generated at
+ * compile time from their JAXB annotations, see GeneratedMessageSerializers.
+ * <p/>
+ * Like JAXB, null fields are left out of the xml and unknown elements are ignored when reading.
+ *
+ * @param <T> type of the message
+ */
+abstract class MessageSerializer<T> {
+
+    private final Class<T> messageType;
+    private final String rootElement;
+
+    protected MessageSerializer(Class<T> messageType, String rootElement) {
+        this.messageType = messageType;
+        this.rootElement = rootElement;
+    }
+
+    public Class<T> getMessageType() {
+        return messageType;
+    }
+
+    public String getRootElement() {
+        return rootElement;
+    }
+
+    /**
+     * Writes the message as the root element and its fields.
+     */
+    public void write(T message, XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement(rootElement);
+        writeFields(message, writer);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Reads a message from the root element the reader is positioned on.
+     */
+    public T read(XMLStreamReader reader) throws XMLStreamException {
+        T message = newMessage();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (!readField(message, reader.getLocalName(), reader)) {
+                skipElement(reader);
+            }
+        }
+        return message;
+    }
+
+    protected abstract T newMessage();
+
+    protected abstract void writeFields(T message, XMLStreamWriter writer) throws XMLStreamException;
+
+    /**
+     * Reads the field for the current start element and leaves the reader on its end element.
+     *
+     * @return false if the element is not a field of the message
+     */
+    protected abstract boolean readField(T message, String element, XMLStreamReader reader) throws XMLStreamException;
+
+    protected static void writeElement(XMLStreamWriter writer, String element, String value) throws XMLStreamException {
+        if (value != null) {
+            writer.writeStartElement(element);
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+    }
+
+    protected static void writeList(XMLStreamWriter writer, String wrapper, String item, List<String> values) throws XMLStreamException {
+        if (values != null) {
+            writer.writeStartElement(wrapper);
+            for (String value : values) {
+                writeElement(writer, item, value);
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    protected static List<String> readList(XMLStreamReader reader, String item) throws XMLStreamException {
+        List<String> values = new ArrayList<>();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (item.equals(reader.getLocalName())) {
+                values.add(reader.getElementText());
+            } else {
+                skipElement(reader);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Skips the current element including all its children.
+     */
+    protected static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.handpoint.ecommerce.core;
+
+/**
+ * An amount of money in a currency, held as a whole number of minor units, e.g. 7000 for 70.00 EUR and 70 for
+ * 70 ISK, so amounts add up exactly and compare without parsing.
+ * <p/>
+ * Amounts are sent to the Handpoint E-Commerce web service as decimal strings with the number of decimals of the
+ * currency, but at least two, as the web service writes them, e.g. "70.00" for 70 ISK. parseMinorUnits and
+ * formatAmount convert between the two without creating objects, for code that reads or writes many amounts.
+ */
+public final class Money implements Comparable<Money> {
+
+    // Decimals of amounts on the wire, of currencies with fewer decimals
+    private static final int WIRE_SCALE = 2;
+    // Sign, 19 digits of a long, the decimal point and the zeros padding the decimals to the wire scale
+    private static final int MAX_LENGTH = 21 + WIRE_SCALE;
+
+    private final long minorUnits;
+    private final Currency currency;
+
+    private Money(long minorUnits, Currency currency) {
+        this.minorUnits = minorUnits;
+        this.currency = currency;
+    }
+
+    /**
+     * @param currency   the currency
+     * @param minorUnits the amount in minor units of the currency, e.g. cents
+     * @return the amount
+     */
+    public static Money of(Currency currency, long minorUnits) {
+        if (currency == null) {
+            throw new IllegalArgumentException("currency is required");
+        }
+        return new Money(minorUnits, currency);
+    }
+
+    /**
+     * @param currency the currency
+     * @param amount   the amount as a decimal string, e.g. "70.00"
+     * @return the amount
+     * @throws NumberFormatException if the amount is not a decimal number, or has decimals the currency does not
+     *                               have that are not zero
+     */
+    public static Money parse(Currency currency, CharSequence amount) {
+        return of(currency, parseMinorUnits(currency, amount));
+    }
+
+    /**
+     * @param currency the alphabetic currency code, e.g. "EUR"
+     * @param amount   the amount as a decimal string, e.g. "70.00"
+     * @return the amount
+     * @throws IllegalArgumentException if the currency is not known or the amount is not a valid decimal number
+     */
+    public static Money parse(String currency, CharSequence amount) {
+        return parse(Currency.fromValue(currency), amount);
+    }
+
+    /**
+     * Parses a decimal amount into minor units of the currency. Missing decimals are taken as zeros, so "70" and
+     * "70.5" are 7000 and 7050 in EUR. Decimals the currency does not have may be given if they are zeros, so
+     * "70.00" is 70 in ISK.
+     *
+     * @param currency the currency
+     * @param amount   the amount as a decimal string
+     * @return the amount in minor units
+     * @throws NumberFormatException if the amount is not a decimal number, has decimals the currency does not have
+     *                               that are not zero, or does not fit in a long
+     */
+    public static long parseMinorUnits(Currency currency, CharSequence amount) {
+        int length = amount.length();
+        int i = 0;
+        boolean negative = length > 0 && amount.charAt(0) == '-';
+        if (negative) {
+            i++;
+        }
+        // Accumulated as a negative number so Long.MIN_VALUE minor units can be parsed
+        long value = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (; i < length; i++) {
+            char c = amount.charAt(i);
+            if (c == '.' && decimals < 0) {
+                decimals = 0;
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                throw invalidAmount(amount);
+            }
+            if (decimals >= 0 && ++decimals > currency.exponent) {
+                if (c != '0') {
+                    throw invalidAmount(amount);
+                }
+                continue;
+            }
+            int digit = c - '0';
+            if (value < Long.MIN_VALUE / 10 || value * 10 < Long.MIN_VALUE + digit) {
+                throw invalidAmount(amount);
+            }
+            value = value * 10 - digit;
+            digits++;
+        }
+        if (digits == 0 || decimals == 0) {
+            throw invalidAmount(amount);
+        }
+        for (int scale = Math.max(decimals, 0); scale < currency.exponent; scale++) {
+            if (value < Long.MIN_VALUE / 10) {
+                throw invalidAmount(amount);
+            }
+            value *= 10;
+        }
+        if (!negative) {
+            if (value == Long.MIN_VALUE) {
+                throw invalidAmount(amount);
+            }
+            value = -value;
+        }
+        return value;
+    }
+
+    /**
+     * Appends an amount in minor units as the decimal string sent to the web service, e.g. 7000 EUR as "70.00" and
+     * 70 ISK as "70.00".
+     *
+     * @param currency   the currency
+     * @param minorUnits the amount in minor units
+     * @param out        where the amount is appended
+     */
+    public static void formatAmount(Currency currency, long minorUnits, StringBuilder out) {
+        int scale = Math.max(currency.exponent, WIRE_SCALE);
+        // Work with the negative value so Long.MIN_VALUE needs no special case
+        long value = minorUnits < 0 ? minorUnits : -minorUnits;
+        if (minorUnits < 0) {
+            out.append('-');
+        }
+        int start = out.length();
+        int written = 0;
+        for (; written < scale - currency.exponent; written++) {
+            out.append('0');
+        }
+        do {
+            if (written == scale) {
+                out.append('.');
+            }
+            out.append((char) ('0' - value % 10));
+            value /= 10;
+            written++;
+        } while (value != 0 || written <= scale);
+        // Digits were appended from the least significant, put them in order
+        for (int left = start, right = out.length() - 1; left < right; left++, right--) {
+            char c = out.charAt(left);
+            out.setCharAt(left, out.charAt(right));
+            out.setCharAt(right, c);
+        }
+    }
+
+    /**
+     * @return the amount in minor units of the currency
+     */
+    public long getMinorUnits() {
+        return minorUnits;
+    }
+
+    public Currency getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return the amount as the decimal string sent to the web service, e.g. "70.00" for 7000 EUR and 70 ISK
+     */
+    public String toAmountString() {
+        StringBuilder out = new StringBuilder(MAX_LENGTH);
+        formatAmount(currency, minorUnits, out);
+        return out.toString();
+    }
+
+    /**
+     * @param other amount in the same currency
+     * @return the sum of the amounts
+     * @throws IllegalArgumentException if the currencies differ
+     * @throws ArithmeticException      if the sum does not fit in a long
+     */
+    public Money plus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.addExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * @param other amount in the same currency
+     * @return this amount less the other
+     * @throws IllegalArgumentException if the currencies differ
+     * @throws ArithmeticException      if the difference does not fit in a long
+     */
+    public Money minus(Money other) {
+        checkCurrency(other);
+        return new Money(Math.subtractExact(minorUnits, other.minorUnits), currency);
+    }
+
+    /**
+     * Amounts are ordered by currency, then by amount.
+     */
+    @Override
+    public int compareTo(Money other) {
+        int result = currency.compareTo(other.currency);
+        return result != 0 ? result : Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Money)) return false;
+        Money money = (Money) o;
+        return minorUnits == money.minorUnits && currency == money.currency;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * currency.id + Long.hashCode(minorUnits);
+    }
+
+    @Override
+    public String toString() {
+        return toAmountString() + " " + currency.alpha;
+    }
+
+    private void checkCurrency(Money other) {
+        if (currency != other.currency) {
+            throw new IllegalArgumentException("Currencies differ: " + currency.alpha + " and " + other.currency.alpha);
+        }
+    }
+
+    private static NumberFormatException invalidAmount(CharSequence amount) {
+        return new NumberFormatException("Invalid amount: " + amount);
+    }
+}
@@ -0,0 +1,14 @@
+package com.handpoint.ecommerce.core;
+
+/**
+ * The endpoints of the Handpoint E-Commerce web service. Requests are sent to one operation per message type,
+ * all token requests to the token store.
+ */
+public enum Operation {
+    AUTHORIZATION,
+    PAYMENT,
+    REFUND,
+    REVERSAL,
+    CANCELLATION,
+    TOKENSTORE
+}
@@ -0,0 +1,166 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of requests of each card acceptor and operation, e.g. to the transactions per second an acquirer
+ * agreement allows, with a TokenBucket for each.
+ * <p/>
+ * A default limit can be set for an operation, it applies to every card acceptor without a limit of its own. Limits
+ * can be changed at any time and take effect on the next request. Without any limit set every request is let through
+ * at once. Looking up a bucket takes no lock, buckets are only created under a lock, on the first request of a card
+ * acceptor.
+ */
+public class RateLimiter {
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 0;
+
+    private final long maxWaitNanos;
+    // Guarded by this
+    private final TokenBucket.Rate[] defaults = new TokenBucket.Rate[Operation.values().length];
+    private final ConcurrentMap<String, Buckets> buckets = new ConcurrentHashMap<>();
+    private volatile boolean limited;
+
+    /**
+     * Creates a limiter that rejects requests over the limit at once.
+     */
+    public RateLimiter() {
+        this(DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    /**
+     * @param maxWaitMillis longest a request waits for a permit, 0 to reject requests over the limit at once and
+     *                      Long.MAX_VALUE to always wait
+     */
+    public RateLimiter(long maxWaitMillis) {
+        if (maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid max wait");
+        }
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Sets the limit of every card acceptor without a limit of its own for the operation.
+     *
+     * @param operation        the operation
+     * @param permitsPerSecond requests per second
+     * @param burst            requests let through at once after a quiet period
+     */
+    public synchronized void setDefaultLimit(Operation operation, double permitsPerSecond, int burst) {
+        defaults[operation.ordinal()] = new TokenBucket.Rate(permitsPerSecond, burst);
+        applyDefault(operation);
+        limited = true;
+    }
+
+    /**
+     * Removes the default limit of the operation, card acceptors without a limit of their own are no longer limited.
+     */
+    public synchronized void removeDefaultLimit(Operation operation) {
+        defaults[operation.ordinal()] = null;
+        applyDefault(operation);
+    }
+
+    /**
+     * Sets the limit of a card acceptor for the operation, replacing the default limit.
+     *
+     * @param cardAcceptor     the card acceptor
+     * @param operation        the operation
+     * @param permitsPerSecond requests per second
+     * @param burst            requests let through at once after a quiet period
+     */
+    public synchronized void setLimit(String cardAcceptor, Operation operation, double permitsPerSecond, int burst) {
+        Buckets byOperation = create(cardAcceptor);
+        byOperation.buckets[operation.ordinal()].setRate(permitsPerSecond, burst);
+        byOperation.own[operation.ordinal()] = true;
+        limited = true;
+    }
+
+    /**
+     * Removes the limit of a card acceptor for the operation, the default limit applies again.
+     */
+    public synchronized void removeLimit(String cardAcceptor, Operation operation) {
+        Buckets byOperation = buckets.get(cardAcceptor);
+        if (byOperation != null) {
+            byOperation.own[operation.ordinal()] = false;
+            byOperation.buckets[operation.ordinal()].setRate(defaults[operation.ordinal()]);
+        }
+    }
+
+    /**
+     * Takes a permit for a request, waiting for it for at most the max wait of the limiter.
+     *
+     * @param cardAcceptor the card acceptor sending the request
+     * @param operation    the operation of the request
+     * @return true if the request may be sent, false if it is over the limit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(String cardAcceptor, Operation operation) throws InterruptedException {
+        return tryAcquire(cardAcceptor, operation, null);
+    }
+
+    /**
+     * Takes a permit for a request, waiting for it for at most the max wait of the limiter and not beyond the deadline.
+     *
+     * @param cardAcceptor the card acceptor sending the request
+     * @param operation    the operation of the request
+     * @param deadline     deadline of the request, or null
+     * @return true if the request may be sent, false if it is over the limit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(String cardAcceptor, Operation operation, Deadline deadline) throws InterruptedException {
+        if (!limited) {
+            return true;
+        }
+        TokenBucket bucket = get(cardAcceptor, operation);
+        long wait = deadline == null ? maxWaitNanos : Math.min(maxWaitNanos, deadline.remainingNanos());
+        return wait == 0 ? bucket.tryAcquire() : bucket.tryAcquire(wait, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param cardAcceptor the card acceptor
+     * @param operation    the operation
+     * @return the bucket of the card acceptor and operation, created on first use. Without a rate if neither the card
+     * acceptor nor the operation has a limit
+     */
+    public TokenBucket get(String cardAcceptor, Operation operation) {
+        Buckets byOperation = buckets.get(cardAcceptor);
+        if (byOperation == null) {
+            byOperation = create(cardAcceptor);
+        }
+        return byOperation.buckets[operation.ordinal()];
+    }
+
+    private synchronized Buckets create(String cardAcceptor) {
+        Buckets byOperation = buckets.get(cardAcceptor);
+        if (byOperation == null) {
+            byOperation = new Buckets();
+            for (int i = 0; i < defaults.length; i++) {
+                byOperation.buckets[i].setRate(defaults[i]);
+            }
+            buckets.put(cardAcceptor, byOperation);
+        }
+        return byOperation;
+    }
+
+    private void applyDefault(Operation operation) {
+        for (Buckets byOperation : buckets.values()) {
+            if (!byOperation.own[operation.ordinal()]) {
+                byOperation.buckets[operation.ordinal()].setRate(defaults[operation.ordinal()]);
+            }
+        }
+    }
+
+    private static final class Buckets {
+        private final TokenBucket[] buckets = new TokenBucket[Operation.values().length];
+        // Card acceptors with a limit of their own, guarded by the limiter
+        private final boolean[] own = new boolean[buckets.length];
+
+        Buckets() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new TokenBucket();
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.handpoint.ecommerce.core;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable state of a single request, the terminal date time and the http headers sent with it.
+ * Each request gets its own context so one client can be shared by any number of threads
+ * without requests overwriting each others headers.
+ * <p/>
+ * A context may also carry the signer of the merchant sending the request, so requests of many merchants can be
+ * signed on one http client, and the deadline by which the request must complete.
+ */
+public final class RequestContext {
+
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyyMMddHHmmssSSS");
+
+    private final String terminalDateTime;
+    private final Map<String, String> httpHeaders;
+    private final HmacSigner signer;
+    private final Deadline deadline;
+
+    private RequestContext(String terminalDateTime, Map<String, String> httpHeaders, HmacSigner signer, Deadline deadline) {
+        this.terminalDateTime = terminalDateTime;
+        this.httpHeaders = Collections.unmodifiableMap(httpHeaders);
+        this.signer = signer;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Creates a context for a new request, stamped with the current time.
+     *
+     * @return new request context
+     */
+    public static RequestContext create() {
+        return forTerminalDateTime(LocalDateTime.now().format(dateFormat));
+    }
+
+    /**
+     * Creates a context for a request sent with the given terminal date time.
+     *
+     * @param terminalDateTime formatted as yyyyMMddHHmmssSSS
+     * @return new request context
+     */
+    public static RequestContext forTerminalDateTime(String terminalDateTime) {
+        Map<String, String> headers = new HashMap<>();
+        headers.put(HmacFilter.MWS_DATE, terminalDateTime);
+        return new RequestContext(terminalDateTime, headers, null, null);
+    }
+
+    /**
+     * Creates a copy of this context with an additional http header.
+     *
+     * @param key   the header key
+     * @param value the header value
+     * @return new request context
+     */
+    public RequestContext withHttpHeader(String key, String value) {
+        Map<String, String> headers = new HashMap<>(httpHeaders);
+        headers.put(key, value);
+        return new RequestContext(terminalDateTime, headers, signer, deadline);
+    }
+
+    /**
+     * Creates a copy of this context signed by the given signer instead of the HmacFilter of the http client.
+     *
+     * @param signer signer keyed with the shared secret of the merchant sending the request
+     * @return new request context
+     */
+    public RequestContext withSigner(HmacSigner signer) {
+        return new RequestContext(terminalDateTime, new HashMap<>(httpHeaders), signer, deadline);
+    }
+
+    /**
+     * Creates a copy of this context that must complete by the given deadline.
+     *
+     * @param deadline time by which the response must be read
+     * @return new request context
+     */
+    public RequestContext withDeadline(Deadline deadline) {
+        return new RequestContext(terminalDateTime, new HashMap<>(httpHeaders), signer, deadline);
+    }
+
+    public String getTerminalDateTime() {
+        return terminalDateTime;
+    }
+
+    public Map<String, String> getHttpHeaders() {
+        return httpHeaders;
+    }
+
+    /**
+     * @return the signer of the request, or null if the request is signed by the HmacFilter of the http client
+     */
+    public HmacSigner getSigner() {
+        return signer;
+    }
+
+    /**
+     * @return the deadline of the request, or null if it has none
+     */
+    public Deadline getDeadline() {
+        return deadline;
+    }
+}
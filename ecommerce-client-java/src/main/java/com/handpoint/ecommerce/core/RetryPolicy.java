@@ -0,0 +1,186 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.RequestRejectedException;
+import org.apache.http.conn.ConnectTimeoutException;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides when a request that could not be sent is sent again, and how long to wait before it is.
+ * <p/>
+ * A request is only retried if sending it again can not apply it twice. Requests that only read, like getting a
+ * token, are retried whatever went wrong. Requests that move money or change a token are retried only if no
+ * connection was made, e.g. the connection was refused, so the web service can not have seen them. A payment that
+ * failed after it was sent is not retried, it is resolved by cancelling it with the terminalDateTime of the
+ * HpECommerceException.
+ * <p/>
+ * The wait before each retry grows exponentially with decorrelated jitter, a random time between the base delay and
+ * three times the previous wait, capped at the maximum delay, so clients that failed together do not retry
+ * together. Retries are also limited by a budget shared by all requests of the policy: each request adds a
+ * fraction of a retry to the budget and each retry takes a whole one, so retries never exceed that fraction of the
+ * traffic and an outage of the web service is not made worse by every client retrying.
+ */
+public class RetryPolicy {
+
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    public static final long DEFAULT_BASE_DELAY_MILLIS = 50;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+    public static final int DEFAULT_BUDGET_PERCENT = 10;
+
+    // The budget is kept in thousandths of a retry
+    private static final long RETRY_COST = 1000;
+    private static final long MAX_BALANCE = 10 * RETRY_COST;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final long deposit;
+    private final AtomicLong balance = new AtomicLong(MAX_BALANCE);
+
+    /**
+     * Creates a policy with the default attempts, delays and budget.
+     */
+    public RetryPolicy() {
+        this(DEFAULT_MAX_ATTEMPTS, DEFAULT_BASE_DELAY_MILLIS, DEFAULT_MAX_DELAY_MILLIS, DEFAULT_BUDGET_PERCENT);
+    }
+
+    /**
+     * @param maxAttempts     attempts to send a request, including the first. 1 turns retries off
+     * @param baseDelayMillis shortest wait before a retry
+     * @param maxDelayMillis  longest wait before a retry
+     * @param budgetPercent   retries allowed as a percentage of requests. A burst of up to 10 retries is allowed
+     *                        before any requests are sent
+     */
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, int budgetPercent) {
+        if (maxAttempts < 1 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis || budgetPercent < 0) {
+            throw new IllegalArgumentException("Invalid retry policy");
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        this.deposit = budgetPercent * RETRY_COST / 100;
+    }
+
+    /**
+     * Sends a request, retrying it as long as the policy allows.
+     *
+     * @param idempotent true if the request only reads and can be sent any number of times
+     * @param request    sends the request
+     * @return the response
+     * @throws Exception the exception of the last attempt
+     */
+    public <T> T execute(boolean idempotent, Callable<T> request) throws Exception {
+        return execute(idempotent, null, request);
+    }
+
+    /**
+     * Sends a request, retrying it as long as the policy allows and the wait before the retry ends before the deadline.
+     *
+     * @param idempotent true if the request only reads and can be sent any number of times
+     * @param deadline   deadline of the request, or null
+     * @param request    sends the request
+     * @return the response
+     * @throws Exception the exception of the last attempt
+     */
+    public <T> T execute(boolean idempotent, Deadline deadline, Callable<T> request) throws Exception {
+        deposit();
+        long delay = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return request.call();
+            } catch (Exception e) {
+                if (attempt >= maxAttempts || !isRetryable(idempotent, e) || !withdraw()) {
+                    throw e;
+                }
+                delay = nextDelay(delay);
+                if (deadline != null && deadline.remaining(TimeUnit.MILLISECONDS) <= delay) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @param idempotent true if the request can be sent any number of times
+     * @param e          the exception sending the request failed with
+     * @return true if the request may be sent again. Requests the client refused to send, e.g. because a circuit
+     * breaker is open or a limit is reached, are not retried
+     */
+    public boolean isRetryable(boolean idempotent, Exception e) {
+        if (e instanceof RequestRejectedException) {
+            return false;
+        }
+        return idempotent || isNotSent(e);
+    }
+
+    /**
+     * @param e the exception sending a request failed with
+     * @return true if no connection was made, so the web service can not have received the request
+     */
+    public static boolean isNotSent(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof ConnectTimeoutException
+                    || cause instanceof NoRouteToHostException || cause instanceof UnknownHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decorrelated jitter, a random wait between the base delay and three times the previous wait.
+     *
+     * @param previousDelay the previous wait, 0 before the first retry
+     * @return the next wait in milliseconds
+     */
+    long nextDelay(long previousDelay) {
+        long upper = Math.min(maxDelayMillis, Math.max(baseDelayMillis, previousDelay * 3));
+        return upper <= baseDelayMillis
+                ? baseDelayMillis
+                : ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1);
+    }
+
+    /**
+     * @return retries the budget currently allows
+     */
+    public long getRetryBudget() {
+        return balance.get() / RETRY_COST;
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= MAX_BALANCE) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(MAX_BALANCE, current + deposit)));
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = balance.get();
+            if (current < RETRY_COST) {
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - RETRY_COST));
+        return true;
+    }
+}
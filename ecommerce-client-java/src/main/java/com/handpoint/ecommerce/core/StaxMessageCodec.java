@@ -0,0 +1,103 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Streaming message codec built on StAX. Requests are written as compact UTF-8 xml straight to a pooled byte
+ * buffer and responses read without the class introspection JAXB does, using the serializers generated at compile
+ * time for every message class in com.handpoint.ecommerce.messages. Any other class is handed to the JAXB codec.
+ */
+public class StaxMessageCodec implements MessageCodec {
+
+    private static final Map<Class<?>, MessageSerializer<?>> serializers = new HashMap<>();
+
+    static {
+        for (MessageSerializer<?> serializer : GeneratedMessageSerializers.SERIALIZERS) {
+            serializers.put(serializer.getMessageType(), serializer);
+        }
+    }
+
+    private static final ThreadLocal<XMLOutputFactory> outputFactory = ThreadLocal.withInitial(XMLOutputFactory::newInstance);
+
+    private static final ThreadLocal<XMLInputFactory> inputFactory = ThreadLocal.withInitial(() -> {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    });
+
+    private final MessageCodec fallback;
+
+    public StaxMessageCodec() {
+        this(new JaxbMessageCodec());
+    }
+
+    /**
+     * @param fallback codec used for messages this codec does not know
+     */
+    public StaxMessageCodec(MessageCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public <T> byte[] encode(Class<T> messageType, T message) throws HpECommerceException {
+        MessageSerializer<T> serializer = getSerializer(messageType);
+        if (serializer == null) {
+            return fallback.encode(messageType, message);
+        }
+        MessageBuffer buffer = MessageBuffer.acquire();
+        try {
+            XMLStreamWriter writer = outputFactory.get().createXMLStreamWriter(buffer, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            serializer.write(message, writer);
+            writer.writeEndDocument();
+            writer.close();
+            return buffer.toByteArray();
+        } catch (XMLStreamException e) {
+            throw new HpECommerceException("Error writing " + messageType.getSimpleName(), e);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Override
+    public <T> T decode(Class<T> messageType, InputStream stream) throws HpECommerceException {
+        MessageSerializer<T> serializer = getSerializer(messageType);
+        if (serializer == null) {
+            return fallback.decode(messageType, stream);
+        }
+        try {
+            XMLStreamReader reader = inputFactory.get().createXMLStreamReader(stream);
+            try {
+                reader.nextTag();
+                return serializer.read(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new HpECommerceException("Error reading " + messageType.getSimpleName(), e);
+        }
+    }
+
+    /**
+     * @param messageType type of the message
+     * @return true if the message is written and read by this codec rather than the fallback
+     */
+    public boolean supports(Class<?> messageType) {
+        return serializers.containsKey(messageType);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> MessageSerializer<T> getSerializer(Class<T> messageType) {
+        return (MessageSerializer<T>) serializers.get(messageType);
+    }
+}
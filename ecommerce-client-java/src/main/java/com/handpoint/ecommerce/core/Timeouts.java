@@ -0,0 +1,59 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The time each operation is given to complete, from sending the request until the response is read, including
+ * waits and retries. A request gets a Deadline that far from when it is sent, or the deadline of the client it is
+ * sent with if that is earlier, see ECommerceClient.withDeadline.
+ * <p/>
+ * Timeouts can be changed at any time and apply to requests sent after the change.
+ */
+public class Timeouts {
+
+    public static final long DEFAULT_TIMEOUT_MILLIS = 30000;
+
+    private final AtomicLongArray timeoutMillis = new AtomicLongArray(Operation.values().length);
+
+    /**
+     * Gives every operation the default timeout.
+     */
+    public Timeouts() {
+        this(DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis timeout of every operation
+     */
+    public Timeouts(long timeoutMillis) {
+        for (Operation operation : Operation.values()) {
+            setTimeout(operation, timeoutMillis);
+        }
+    }
+
+    /**
+     * @param operation     the operation
+     * @param timeoutMillis time requests of the operation are given to complete
+     */
+    public void setTimeout(Operation operation, long timeoutMillis) {
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutMillis.set(operation.ordinal(), timeoutMillis);
+    }
+
+    /**
+     * @return time requests of the operation are given to complete, in milliseconds
+     */
+    public long getTimeoutMillis(Operation operation) {
+        return timeoutMillis.get(operation.ordinal());
+    }
+
+    /**
+     * @return the deadline of a request of the operation sent now
+     */
+    public Deadline newDeadline(Operation operation) {
+        return Deadline.after(getTimeoutMillis(operation), TimeUnit.MILLISECONDS);
+    }
+}
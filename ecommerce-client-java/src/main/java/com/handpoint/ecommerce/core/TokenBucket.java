@@ -0,0 +1,160 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lets requests through at a rate of permitsPerSecond, with bursts of up to burst requests after a quiet period.
+ * <p/>
+ * The bucket keeps no count of tokens, only the time at which it is full again. A permit moves that time one
+ * interval, 1 / permitsPerSecond, into the future and is granted if it is then at most burst intervals ahead of now.
+ * That is a single compare and set of one long, so the bucket takes no lock and a request never waits for another
+ * one, whatever the number of threads. A request that waits for its permit reserves it first and sleeps outside the
+ * bucket, requests after it wait for later permits.
+ * <p/>
+ * The rate can be changed at any time, the next permit is granted at the new rate. A bucket without a rate grants
+ * every permit.
+ */
+public class TokenBucket {
+
+    private volatile Rate rate;
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * Creates a bucket without a rate, granting every permit until setRate is called.
+     */
+    public TokenBucket() {
+    }
+
+    /**
+     * @param permitsPerSecond permits granted per second
+     * @param burst            permits granted at once after a quiet period
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        setRate(permitsPerSecond, burst);
+    }
+
+    /**
+     * @param permitsPerSecond permits granted per second
+     * @param burst            permits granted at once after a quiet period
+     */
+    public void setRate(double permitsPerSecond, int burst) {
+        setRate(new Rate(permitsPerSecond, burst));
+    }
+
+    /**
+     * Removes the rate, every permit is granted.
+     */
+    public void removeRate() {
+        setRate(null);
+    }
+
+    /**
+     * Permits taken at the old rate are not carried over beyond an empty bucket, so a higher rate grants its next
+     * permit one new interval from now.
+     */
+    void setRate(Rate rate) {
+        this.rate = rate;
+        if (rate != null) {
+            long empty = System.nanoTime() + rate.capacityNanos;
+            long full;
+            do {
+                full = fullAt.get();
+            } while (full - empty > 0 && !fullAt.compareAndSet(full, empty));
+        }
+    }
+
+    /**
+     * @return permits granted per second, 0 if the bucket has no rate
+     */
+    public double getPermitsPerSecond() {
+        Rate current = rate;
+        return current == null ? 0 : current.permitsPerSecond;
+    }
+
+    /**
+     * @return permits granted at once after a quiet period, 0 if the bucket has no rate
+     */
+    public int getBurst() {
+        Rate current = rate;
+        return current == null ? 0 : current.burst;
+    }
+
+    /**
+     * Takes a permit if one is available now.
+     *
+     * @return true if the permit was granted
+     */
+    public boolean tryAcquire() {
+        return reserve(0) == 0;
+    }
+
+    /**
+     * Takes a permit, waiting for it if it is available within the timeout. A permit that is waited for stays taken
+     * if the thread is interrupted while waiting.
+     *
+     * @return true if the permit was granted, false at once if it would not be available within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        long wait = reserve(unit.toNanos(timeout));
+        if (wait < 0) {
+            return false;
+        }
+        TimeUnit.NANOSECONDS.sleep(wait);
+        return true;
+    }
+
+    /**
+     * Takes a permit, waiting as long as needed for it.
+     *
+     * @throws InterruptedException if interrupted while waiting, the permit stays taken
+     */
+    public void acquire() throws InterruptedException {
+        TimeUnit.NANOSECONDS.sleep(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * @return nanoseconds to wait for the permit reserved, or -1 if it would not be available within maxWaitNanos
+     */
+    private long reserve(long maxWaitNanos) {
+        Rate current = rate;
+        if (current == null) {
+            return 0;
+        }
+        while (true) {
+            long now = System.nanoTime();
+            long full = fullAt.get();
+            long next = (full - now > 0 ? full : now) + current.intervalNanos;
+            long wait = next - now - current.capacityNanos;
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (fullAt.compareAndSet(full, next)) {
+                return wait > 0 ? wait : 0;
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket{permitsPerSecond=" + getPermitsPerSecond() + ", burst=" + getBurst() + '}';
+    }
+
+    static final class Rate {
+        private final double permitsPerSecond;
+        private final int burst;
+        private final long intervalNanos;
+        private final long capacityNanos;
+
+        Rate(double permitsPerSecond, int burst) {
+            if (!(permitsPerSecond > 0) || burst < 1) {
+                throw new IllegalArgumentException("Invalid rate");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+            this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            this.capacityNanos = intervalNanos * burst;
+        }
+    }
+}
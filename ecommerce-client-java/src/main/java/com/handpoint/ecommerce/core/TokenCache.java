@@ -0,0 +1,450 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.token.Token;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the masked card number, expiry date and card type of tokens, so pages showing the stored card do not send a
+ * request to the token store on every view.
+ * <p/>
+ * Entries are kept outside the Java heap in fixed slots of 80 bytes, so millions of tokens add nothing to the work of
+ * the garbage collector. The slots are grouped in buckets of 8, a token can only be in the bucket its key hashes to.
+ * When the bucket is full the entry used least recently is evicted, expired entries are replaced first. Tokens are
+ * identified by two independent 64 bit hashes of the environment, the card acceptor and the token, the names are not
+ * stored. Values too long for their slot fields are not cached.
+ * <p/>
+ * Given a file, the slots are memory-mapped from it, so a restarted JVM finds the tokens it cached before. Entries are
+ * written so that a JVM dying while writing one leaves the slot empty.
+ * <p/>
+ * Every bucket is guarded by one of a fixed number of locks, threads using different tokens seldom wait for each
+ * other. Each lock counts the updates of its buckets, so a lookup sent before a token was updated or deleted does
+ * not cache the answer it gets after, see {@link #generation}.
+ */
+public class TokenCache implements Closeable {
+
+    public static final long DEFAULT_CAPACITY = 1 << 20;
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final long MAGIC = 0x4850544f4b454e43L;
+    private static final int HEADER = 64;
+    private static final int WAYS = 8;
+    private static final int SLOT = 80;
+    private static final int BUCKET = WAYS * SLOT;
+    private static final int SEGMENT_SHIFT = 21;
+    private static final int LOCKS = 4096;
+
+    private static final int HASH2 = 8;
+    private static final int EXPIRES = 16;
+    private static final int USED = 20;
+    private static final int MASKED_CARD_NUMBER = 24;
+    private static final int EXPIRY_DATE = 48;
+    private static final int CARD_TYPE_NAME = 54;
+    private static final int MASKED_CARD_NUMBER_LENGTH = 23;
+    private static final int EXPIRY_DATE_LENGTH = 5;
+    private static final int CARD_TYPE_NAME_LENGTH = SLOT - CARD_TYPE_NAME - 1;
+    private static final int NULL = 0xff;
+    private static final byte[] ABSENT = {};
+    private static final Map<File, TokenCache> OPEN = new HashMap<>();
+    private static final Map<String, TokenCache> SHARED = new HashMap<>();
+
+    private final File file;
+    private final long buckets;
+    private final long ttlSeconds;
+    private final ByteBuffer[] segments;
+    private final Stripe[] locks;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a cache in memory outside the Java heap.
+     *
+     * @param capacity  tokens the cache holds at most
+     * @param ttlMillis how long a token is cached, at least a second
+     */
+    public TokenCache(long capacity, long ttlMillis) {
+        buckets = buckets(capacity);
+        ttlSeconds = ttlSeconds(ttlMillis);
+        segments = new ByteBuffer[segmentCount(buckets)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = ByteBuffer.allocateDirect((int) (segmentBuckets(buckets, i) * BUCKET));
+        }
+        locks = locks(buckets);
+        file = null;
+        channel = null;
+        lock = null;
+    }
+
+    /**
+     * Creates a cache memory-mapped from a file, keeping the tokens cached before if the file exists and was created
+     * with the same capacity.
+     *
+     * @param file      the snapshot file, created if it does not exist
+     * @param capacity  tokens the cache holds at most
+     * @param ttlMillis how long a token is cached, at least a second
+     * @throws IOException if the file can not be mapped or is used by another cache
+     */
+    public TokenCache(File file, long capacity, long ttlMillis) throws IOException {
+        this.file = file;
+        buckets = buckets(capacity);
+        ttlSeconds = ttlSeconds(ttlMillis);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileLock acquired;
+        try {
+            acquired = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            acquired = null;
+        }
+        if (acquired == null) {
+            channel.close();
+            throw new IOException("Cache file in use: " + file);
+        }
+        lock = acquired;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        while (header.hasRemaining() && channel.read(header, header.position()) > 0) {
+            // Read the whole header
+        }
+        if (header.position() < HEADER || header.getLong(0) != MAGIC || header.getLong(8) != buckets) {
+            // Another capacity or not a cache, start cold
+            channel.truncate(0);
+            header.clear();
+            header.putLong(0, MAGIC).putLong(8, buckets);
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+        }
+        segments = new ByteBuffer[segmentCount(buckets)];
+        long position = HEADER;
+        for (int i = 0; i < segments.length; i++) {
+            long size = segmentBuckets(buckets, i) * BUCKET;
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+            position += size;
+        }
+        locks = locks(buckets);
+    }
+
+    /**
+     * Maps the cache of a file once per JVM, so the clients configured with the same file share it.
+     */
+    static TokenCache open(File file, long capacity, long ttlMillis) throws IOException {
+        File key = file.getCanonicalFile();
+        synchronized (OPEN) {
+            TokenCache cache = OPEN.get(key);
+            if (cache == null) {
+                cache = new TokenCache(key, capacity, ttlMillis);
+                OPEN.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Creates the cache in memory once per JVM and configuration, so the clients configured with the same capacity
+     * and ttl share it instead of allocating their own.
+     */
+    static TokenCache shared(long capacity, long ttlMillis) {
+        String key = capacity + " " + ttlMillis;
+        synchronized (SHARED) {
+            TokenCache cache = SHARED.get(key);
+            if (cache == null) {
+                cache = new TokenCache(capacity, ttlMillis);
+                SHARED.put(key, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * @return a copy of the cached token, or null if it is not cached or expired
+     */
+    public Token get(Environment environment, String cardAcceptor, String token) {
+        String key = key(environment, cardAcceptor, token);
+        long hash1 = hash(key, 0xcbf29ce484222325L);
+        long hash2 = hash(key, 0x84222325cbf29ce4L);
+        long bucket = hash1 & (buckets - 1);
+        ByteBuffer segment = segments[(int) (bucket >>> SEGMENT_SHIFT)];
+        int offset = (int) ((bucket & ((1L << SEGMENT_SHIFT) - 1)) * BUCKET);
+        int now = now();
+        synchronized (locks[(int) (bucket & (locks.length - 1))]) {
+            int slot = find(segment, offset, hash1, hash2);
+            if (slot >= 0 && segment.getInt(slot + EXPIRES) - now > 0) {
+                segment.putInt(slot + USED, now);
+                Token cached = new Token();
+                cached.setToken(token);
+                cached.setMaskedCardNumber(getString(segment, slot + MASKED_CARD_NUMBER));
+                cached.setExpiryDateMMYY(getString(segment, slot + EXPIRY_DATE));
+                cached.setCardTypeName(getString(segment, slot + CARD_TYPE_NAME));
+                hits.increment();
+                return cached;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches a token, unless its values are too long to cache. A token cached before is replaced, and lookups sent
+     * before it do not cache their answer.
+     *
+     * @param environment  the environment of the token
+     * @param cardAcceptor the card acceptor of the token
+     * @param token        the name of the token
+     * @param value        the token with its card information
+     */
+    public void put(Environment environment, String cardAcceptor, String token, Token value) {
+        put(environment, cardAcceptor, token, value, -1);
+    }
+
+    /**
+     * Caches the answer of a lookup, unless the token was updated or deleted since the lookup was sent.
+     *
+     * @param generation the generation of the token read before the lookup was sent
+     * @return true if the token was cached
+     */
+    public boolean put(Environment environment, String cardAcceptor, String token, Token value, long generation) {
+        byte[] maskedCardNumber = bytes(value.getMaskedCardNumber(), MASKED_CARD_NUMBER_LENGTH);
+        byte[] expiryDate = bytes(value.getExpiryDateMMYY(), EXPIRY_DATE_LENGTH);
+        byte[] cardTypeName = bytes(value.getCardTypeName(), CARD_TYPE_NAME_LENGTH);
+        if (maskedCardNumber == null || expiryDate == null || cardTypeName == null) {
+            invalidate(environment, cardAcceptor, token);
+            return false;
+        }
+        String key = key(environment, cardAcceptor, token);
+        long hash1 = hash(key, 0xcbf29ce484222325L);
+        long hash2 = hash(key, 0x84222325cbf29ce4L);
+        long bucket = hash1 & (buckets - 1);
+        ByteBuffer segment = segments[(int) (bucket >>> SEGMENT_SHIFT)];
+        int offset = (int) ((bucket & ((1L << SEGMENT_SHIFT) - 1)) * BUCKET);
+        int now = now();
+        Stripe stripe = locks[(int) (bucket & (locks.length - 1))];
+        synchronized (stripe) {
+            if (generation < 0) {
+                stripe.generation++;
+            } else if (generation != stripe.generation) {
+                return false;
+            }
+            int slot = find(segment, offset, hash1, hash2);
+            if (slot < 0) {
+                slot = victim(segment, offset, now);
+            }
+            // Empty while written, the first hash is written last
+            segment.putLong(slot, 0);
+            segment.putLong(slot + HASH2, hash2);
+            segment.putInt(slot + EXPIRES, now + (int) ttlSeconds);
+            segment.putInt(slot + USED, now);
+            putString(segment, slot + MASKED_CARD_NUMBER, maskedCardNumber);
+            putString(segment, slot + EXPIRY_DATE, expiryDate);
+            putString(segment, slot + CARD_TYPE_NAME, cardTypeName);
+            segment.putLong(slot, hash1 == 0 ? 1 : hash1);
+        }
+        return true;
+    }
+
+    /**
+     * Removes a token from the cache, e.g. before it is updated or deleted. Lookups sent before do not cache their
+     * answer.
+     */
+    public void invalidate(Environment environment, String cardAcceptor, String token) {
+        String key = key(environment, cardAcceptor, token);
+        long hash1 = hash(key, 0xcbf29ce484222325L);
+        long hash2 = hash(key, 0x84222325cbf29ce4L);
+        long bucket = hash1 & (buckets - 1);
+        ByteBuffer segment = segments[(int) (bucket >>> SEGMENT_SHIFT)];
+        int offset = (int) ((bucket & ((1L << SEGMENT_SHIFT) - 1)) * BUCKET);
+        Stripe stripe = locks[(int) (bucket & (locks.length - 1))];
+        synchronized (stripe) {
+            stripe.generation++;
+            int slot = find(segment, offset, hash1, hash2);
+            if (slot >= 0) {
+                segment.putLong(slot, 0);
+            }
+        }
+    }
+
+    /**
+     * Read before a lookup is sent and passed to {@link #put(Environment, String, String, Token, long)} with its
+     * answer. Changes whenever the token, or another token guarded by the same lock, is updated or removed.
+     *
+     * @return the generation of the token
+     */
+    public long generation(Environment environment, String cardAcceptor, String token) {
+        long bucket = hash(key(environment, cardAcceptor, token), 0xcbf29ce484222325L) & (buckets - 1);
+        Stripe stripe = locks[(int) (bucket & (locks.length - 1))];
+        synchronized (stripe) {
+            return stripe.generation;
+        }
+    }
+
+    /**
+     * @return the number of tokens the cache holds at most
+     */
+    public long getCapacity() {
+        return buckets * WAYS;
+    }
+
+    /**
+     * @return lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * @return lookups not answered from the cache
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null && channel.isOpen()) {
+            lock.release();
+            channel.close();
+            synchronized (OPEN) {
+                OPEN.remove(file, this);
+            }
+        }
+    }
+
+    private static int find(ByteBuffer segment, int offset, long hash1, long hash2) {
+        long stored = hash1 == 0 ? 1 : hash1;
+        for (int slot = offset; slot < offset + BUCKET; slot += SLOT) {
+            if (segment.getLong(slot) == stored && segment.getLong(slot + HASH2) == hash2) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return an empty slot, else an expired one, else the one used least recently
+     */
+    private static int victim(ByteBuffer segment, int offset, int now) {
+        int victim = offset;
+        for (int slot = offset; slot < offset + BUCKET; slot += SLOT) {
+            if (segment.getLong(slot) == 0 || segment.getInt(slot + EXPIRES) - now <= 0) {
+                return slot;
+            }
+            if (segment.getInt(slot + USED) - segment.getInt(victim + USED) < 0) {
+                victim = slot;
+            }
+        }
+        return victim;
+    }
+
+    private static byte[] bytes(String value, int maxLength) {
+        if (value == null) {
+            return ABSENT;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return bytes.length > maxLength ? null : bytes;
+    }
+
+    private static void putString(ByteBuffer segment, int position, byte[] value) {
+        if (value == ABSENT) {
+            segment.put(position, (byte) NULL);
+            return;
+        }
+        segment.put(position, (byte) value.length);
+        for (int i = 0; i < value.length; i++) {
+            segment.put(position + 1 + i, value[i]);
+        }
+    }
+
+    private static String getString(ByteBuffer segment, int position) {
+        int length = segment.get(position) & 0xff;
+        if (length == NULL) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = segment.get(position + 1 + i);
+        }
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Seconds since the epoch, stored in an int. Compared by their difference, so they only overflow in 2106 and
+     * then keep working.
+     */
+    private static int now() {
+        return (int) (System.currentTimeMillis() / 1000);
+    }
+
+    private static long hash(String key, long seed) {
+        long hash = seed;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * @return the key of a token, also used to share lookups in flight
+     */
+    static String key(Environment environment, String cardAcceptor, String token) {
+        return environment + " " + cardAcceptor + " " + token;
+    }
+
+    private static long buckets(long capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity");
+        }
+        long buckets = (capacity + WAYS - 1) / WAYS;
+        return Long.highestOneBit(buckets) == buckets ? buckets : Long.highestOneBit(buckets) << 1;
+    }
+
+    private static long ttlSeconds(long ttlMillis) {
+        if (ttlMillis < 1000 || ttlMillis > TimeUnit.DAYS.toMillis(365)) {
+            throw new IllegalArgumentException("Invalid ttl");
+        }
+        return ttlMillis / 1000;
+    }
+
+    private static int segmentCount(long buckets) {
+        return (int) ((buckets + (1L << SEGMENT_SHIFT) - 1) >>> SEGMENT_SHIFT);
+    }
+
+    private static long segmentBuckets(long buckets, int segment) {
+        return Math.min(1L << SEGMENT_SHIFT, buckets - ((long) segment << SEGMENT_SHIFT));
+    }
+
+    private static Stripe[] locks(long buckets) {
+        Stripe[] locks = new Stripe[(int) Math.min(LOCKS, buckets)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Stripe();
+        }
+        return locks;
+    }
+
+    /**
+     * Lock of the buckets whose index is the same modulo the number of locks.
+     */
+    private static final class Stripe {
+        /**
+         * Updates and removals of the tokens of the buckets, guarded by the stripe.
+         */
+        long generation;
+    }
+}
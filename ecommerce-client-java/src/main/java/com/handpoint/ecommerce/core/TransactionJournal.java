@@ -0,0 +1,485 @@
+package com.handpoint.ecommerce.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of the authorizations, payments and refunds in flight, so a transaction whose outcome is lost
+ * with the JVM can be cancelled or looked up after a restart.
+ * <p/>
+ * The client records the intent of a transaction before it is sent and its outcome once it is known. Entries without
+ * an outcome are unresolved: in flight, or sent without an answer. When the web service answers a cancellation of
+ * the transaction it is resolved as well. Entries still unresolved when the journal is opened again are listed by
+ * getRecovered, to be cancelled with the terminalDateTime of the entry and then resolved.
+ * <p/>
+ * The journal is a file mapped into memory and appended to, each record checked by a CRC so a record torn by a crash
+ * ends the journal. Appending copies a record into the mapping, which the operating system keeps when the JVM dies,
+ * so no system call is made per record. With force set the intent is also forced to the disk before the request is
+ * sent, surviving a crash of the machine: one thread forces the mapping for every record appended until then, while
+ * the others wait for it, so concurrent requests share the cost of a single force. When the file is full the
+ * unresolved entries are copied to a new file that replaces it.
+ * <p/>
+ * A file can only be open in one journal at a time.
+ */
+public class TransactionJournal implements Closeable {
+
+    public static final int DEFAULT_CAPACITY = 4 * 1024 * 1024;
+
+    // Outcomes recorded by the client
+    public static final String ANSWERED = "answered";
+    public static final String ERROR = "error";
+    public static final String NOT_SENT = "not sent";
+    public static final String CANCELLED = "cancelled";
+
+    private static final byte INTENT = 1;
+    private static final byte OUTCOME = 2;
+    // Length and CRC of the record body
+    private static final int HEADER = 8;
+    private static final Map<File, TransactionJournal> OPEN = new HashMap<>();
+
+    /**
+     * The intent of a transaction.
+     */
+    public static final class Entry {
+        private final long id;
+        private final long createdMillis;
+        private final String transactionType;
+        private final String cardAcceptor;
+        private final String currency;
+        private final String amount;
+        private final String terminalDateTime;
+        private final String customerReference;
+
+        Entry(long id, long createdMillis, String transactionType, String cardAcceptor, String currency, String amount,
+              String terminalDateTime, String customerReference) {
+            this.id = id;
+            this.createdMillis = createdMillis;
+            this.transactionType = transactionType;
+            this.cardAcceptor = cardAcceptor;
+            this.currency = currency;
+            this.amount = amount;
+            this.terminalDateTime = terminalDateTime;
+            this.customerReference = customerReference;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        /**
+         * @return when the intent was recorded, System.currentTimeMillis()
+         */
+        public long getCreatedMillis() {
+            return createdMillis;
+        }
+
+        /**
+         * @return authorization, payment or refund
+         */
+        public String getTransactionType() {
+            return transactionType;
+        }
+
+        public String getCardAcceptor() {
+            return cardAcceptor;
+        }
+
+        public String getCurrency() {
+            return currency;
+        }
+
+        public String getAmount() {
+            return amount;
+        }
+
+        /**
+         * @return the terminalDateTime of the request, to cancel it with
+         */
+        public String getTerminalDateTime() {
+            return terminalDateTime;
+        }
+
+        public String getCustomerReference() {
+            return customerReference;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" + id + ", " + transactionType + ", cardAcceptor=" + cardAcceptor + ", terminalDateTime="
+                    + terminalDateTime + ", customerReference=" + customerReference + '}';
+        }
+    }
+
+    private final File file;
+    private final int capacity;
+    private final boolean force;
+    private final ConcurrentMap<Long, Entry> unresolved = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Long> byTransaction = new ConcurrentHashMap<>();
+    private final List<Entry> recovered;
+
+    // Guarded by this
+    private FileChannel channel;
+    private FileLock lock;
+    private MappedByteBuffer buffer;
+    private long appended;
+    private long nextId = 1;
+    private boolean closed;
+
+    // Guarded by flushLock
+    private final Object flushLock = new Object();
+    private volatile long forced;
+
+    /**
+     * Opens a journal of the default capacity that does not force records to the disk.
+     *
+     * @param file the journal, created if it does not exist
+     * @throws IOException if the file can not be opened or is open in another journal
+     */
+    public TransactionJournal(File file) throws IOException {
+        this(file, DEFAULT_CAPACITY, false);
+    }
+
+    /**
+     * @param file     the journal, created if it does not exist
+     * @param capacity size of the file in bytes, or of an existing file if it is larger
+     * @param force    true to force each intent to the disk before the request is sent
+     * @throws IOException if the file can not be opened or is open in another journal
+     */
+    public TransactionJournal(File file, int capacity, boolean force) throws IOException {
+        if (capacity < 1024) {
+            throw new IllegalArgumentException("Invalid journal capacity");
+        }
+        this.file = file;
+        this.capacity = capacity;
+        this.force = force;
+        synchronized (this) {
+            map();
+            recover();
+        }
+        this.recovered = Collections.unmodifiableList(new ArrayList<>(unresolved.values()));
+    }
+
+    /**
+     * Opens the journal of a file once per JVM, so the clients configured with the same file share it.
+     */
+    static TransactionJournal open(File file, boolean force) throws IOException {
+        File key = file.getCanonicalFile();
+        synchronized (OPEN) {
+            TransactionJournal journal = OPEN.get(key);
+            if (journal == null) {
+                journal = new TransactionJournal(key, DEFAULT_CAPACITY, force);
+                OPEN.put(key, journal);
+            }
+            return journal;
+        }
+    }
+
+    /**
+     * Records the intent of a transaction, forcing it to the disk if the journal forces records.
+     *
+     * @param transactionType   authorization, payment or refund
+     * @param cardAcceptor      the card acceptor sending the transaction
+     * @param currency          the currency of the transaction
+     * @param amount            the amount of the transaction
+     * @param terminalDateTime  the terminalDateTime of the request
+     * @param customerReference the customer reference of the transaction, or null
+     * @return the id of the entry, to record its outcome with
+     * @throws IOException if the intent could not be recorded
+     */
+    public long begin(String transactionType, String cardAcceptor, String currency, String amount,
+                      String terminalDateTime, String customerReference) throws IOException {
+        Entry entry;
+        long end;
+        synchronized (this) {
+            entry = new Entry(nextId++, System.currentTimeMillis(), transactionType, cardAcceptor, currency, amount,
+                    terminalDateTime, customerReference);
+            end = append(intent(entry));
+            unresolved.put(entry.id, entry);
+            byTransaction.put(key(cardAcceptor, transactionType, terminalDateTime), entry.id);
+        }
+        if (force) {
+            flush(end);
+        }
+        return entry.id;
+    }
+
+    /**
+     * Records the outcome of a transaction, it is no longer unresolved. The outcome is not forced to the disk, if it
+     * is lost the transaction is only cancelled needlessly.
+     *
+     * @param id      the id returned by begin
+     * @param outcome e.g. ANSWERED or NOT_SENT
+     * @throws IOException if the outcome could not be recorded
+     */
+    public synchronized void complete(long id, String outcome) throws IOException {
+        Entry entry = unresolved.get(id);
+        if (entry == null) {
+            return;
+        }
+        append(outcome(id, outcome));
+        unresolved.remove(id);
+        byTransaction.remove(key(entry.cardAcceptor, entry.transactionType, entry.terminalDateTime));
+    }
+
+    /**
+     * Records the outcome of the transaction with the terminalDateTime, e.g. once its cancellation was answered.
+     *
+     * @return true if the transaction was unresolved
+     * @throws IOException if the outcome could not be recorded
+     */
+    public boolean resolve(String cardAcceptor, String transactionType, String terminalDateTime, String outcome) throws IOException {
+        Long id = byTransaction.get(key(cardAcceptor, transactionType, terminalDateTime));
+        if (id == null) {
+            return false;
+        }
+        complete(id, outcome);
+        return true;
+    }
+
+    /**
+     * @return the entries unresolved when the journal was opened, their outcome was lost with the JVM. Entries
+     * resolved since are still listed
+     */
+    public List<Entry> getRecovered() {
+        return recovered;
+    }
+
+    /**
+     * @return the entries without an outcome, in flight or sent without an answer
+     */
+    public List<Entry> getUnresolved() {
+        return new ArrayList<>(unresolved.values());
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Forces the records to the disk and closes the file.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        buffer.force();
+        lock.release();
+        channel.close();
+        synchronized (OPEN) {
+            OPEN.remove(file, this);
+        }
+    }
+
+    /**
+     * Forces the mapping to the disk unless another thread already forced it beyond end. Threads arriving while the
+     * mapping is forced wait, and are then covered by the next force.
+     */
+    private void flush(long end) {
+        if (forced >= end) {
+            return;
+        }
+        synchronized (flushLock) {
+            if (forced >= end) {
+                return;
+            }
+            long target;
+            MappedByteBuffer mapping;
+            synchronized (this) {
+                target = appended;
+                mapping = buffer;
+            }
+            mapping.force();
+            forced = target;
+        }
+    }
+
+    private void map() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Journal in use: " + file);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(capacity, channel.size()));
+    }
+
+    /**
+     * Reads the records up to the first empty or torn one and clears the rest of the file.
+     */
+    private void recover() {
+        int position = 0;
+        while (position + HEADER <= buffer.limit()) {
+            int length = buffer.getInt(position);
+            if (length <= 0 || length > buffer.limit() - position - HEADER) {
+                break;
+            }
+            byte[] body = new byte[length];
+            buffer.position(position + HEADER);
+            buffer.get(body);
+            if (crc(body) != buffer.getInt(position + 4)) {
+                break;
+            }
+            apply(ByteBuffer.wrap(body));
+            position += HEADER + length;
+        }
+        buffer.position(position);
+        byte[] zeros = new byte[8192];
+        while (buffer.hasRemaining()) {
+            buffer.put(zeros, 0, Math.min(zeros.length, buffer.remaining()));
+        }
+        buffer.position(position);
+    }
+
+    private void apply(ByteBuffer body) {
+        byte type = body.get();
+        long id = body.getLong();
+        nextId = Math.max(nextId, id + 1);
+        if (type == INTENT) {
+            Entry entry = new Entry(id, body.getLong(), getString(body), getString(body), getString(body),
+                    getString(body), getString(body), getString(body));
+            unresolved.put(id, entry);
+            byTransaction.put(key(entry.cardAcceptor, entry.transactionType, entry.terminalDateTime), id);
+        } else if (type == OUTCOME) {
+            Entry entry = unresolved.remove(id);
+            if (entry != null) {
+                byTransaction.remove(key(entry.cardAcceptor, entry.transactionType, entry.terminalDateTime));
+            }
+        }
+    }
+
+    /**
+     * Appends a record, writing its length last so a record torn by a crash reads as the end of the journal.
+     *
+     * @return the number of bytes appended to the journal since it was opened, including this record
+     */
+    private long append(byte[] body) throws IOException {
+        if (closed) {
+            throw new IOException("Journal closed: " + file);
+        }
+        if (buffer.remaining() < HEADER + body.length) {
+            compact();
+            if (buffer.remaining() < HEADER + body.length) {
+                throw new IOException("Journal full: " + file);
+            }
+        }
+        int position = buffer.position();
+        buffer.putInt(position + 4, crc(body));
+        buffer.position(position + HEADER);
+        buffer.put(body);
+        buffer.putInt(position, body.length);
+        appended += HEADER + body.length;
+        return appended;
+    }
+
+    /**
+     * Copies the unresolved entries to a new file, forced to the disk, and replaces the journal with it.
+     */
+    private void compact() throws IOException {
+        ByteBuffer records = ByteBuffer.allocate(Math.max(capacity, buffer.capacity()));
+        for (Entry entry : unresolved.values()) {
+            byte[] body = intent(entry);
+            if (records.remaining() < HEADER + body.length) {
+                throw new IOException("Journal full: " + file);
+            }
+            records.putInt(body.length).putInt(crc(body)).put(body);
+        }
+        int length = records.position();
+        records.flip();
+        File compacted = new File(file.getPath() + ".tmp");
+        try (FileChannel out = FileChannel.open(compacted.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                out.write(records);
+            }
+            out.force(true);
+        }
+        lock.release();
+        channel.close();
+        Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map();
+        buffer.position(length);
+        forced = appended;
+    }
+
+    private static byte[] intent(Entry entry) {
+        byte[][] strings = {bytes(entry.transactionType), bytes(entry.cardAcceptor), bytes(entry.currency),
+                bytes(entry.amount), bytes(entry.terminalDateTime), bytes(entry.customerReference)};
+        int length = 1 + 8 + 8;
+        for (byte[] string : strings) {
+            length += 2 + (string == null ? 0 : string.length);
+        }
+        ByteBuffer body = ByteBuffer.allocate(length).put(INTENT).putLong(entry.id).putLong(entry.createdMillis);
+        for (byte[] string : strings) {
+            putString(body, string);
+        }
+        return body.array();
+    }
+
+    private static byte[] outcome(long id, String outcome) {
+        byte[] string = bytes(outcome);
+        ByteBuffer body = ByteBuffer.allocate(1 + 8 + 2 + (string == null ? 0 : string.length)).put(OUTCOME).putLong(id);
+        putString(body, string);
+        return body.array();
+    }
+
+    static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static void putString(ByteBuffer body, byte[] string) {
+        if (string == null) {
+            body.putShort((short) -1);
+        } else {
+            body.putShort((short) string.length).put(string);
+        }
+    }
+
+    static String getString(ByteBuffer body) {
+        int length = body.getShort();
+        if (length < 0) {
+            return null;
+        }
+        String value = new String(body.array(), body.position(), length, StandardCharsets.UTF_8);
+        body.position(body.position() + length);
+        return value;
+    }
+
+    static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        return (int) crc.getValue();
+    }
+
+    private static String key(String cardAcceptor, String transactionType, String terminalDateTime) {
+        return cardAcceptor + ' ' + transactionType + ' ' + terminalDateTime;
+    }
+
+    @Override
+    public String toString() {
+        return "TransactionJournal{" + file + ", unresolved=" + unresolved.size() + '}';
+    }
+}
@@ -59,6 +59,14 @@ public class UrlGenerator {
         return builder.toString();
     }
 
+    /**
+     * @param environment the environment
+     * @return the base url of the web service in the environment
+     */
+    public static String getBaseUrl(Environment environment) throws HpServerError {
+        return environment == Environment.LIVE ? Config.getInstance().getLiveBaseUrl() : Config.getInstance().getTestBaseUrl();
+    }
+
     private static String getECommerceBaseUrl(String cardAcceptor, Environment environment) throws HpServerError {
         StringBuilder builder = new StringBuilder();
         if (environment == Environment.LIVE) {
@@ -0,0 +1,111 @@
+package com.handpoint.ecommerce.core;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the request bodies sent to the Handpoint E-Commerce web service and their size in bytes,
+ * in total and per message type.
+ */
+public class WireMetrics {
+
+    private final Counter total = new Counter();
+    private final LongAccumulator maxRequestBytes = new LongAccumulator(Math::max, 0);
+    private final ConcurrentMap<Class<?>, Counter> messages = new ConcurrentHashMap<>();
+
+    /**
+     * Records a request body written to the wire.
+     *
+     * @param messageType type of the message sent
+     * @param bytes       size of the encoded message
+     */
+    public void record(Class<?> messageType, int bytes) {
+        total.add(bytes);
+        maxRequestBytes.accumulate(bytes);
+        messages.computeIfAbsent(messageType, type -> new Counter()).add(bytes);
+    }
+
+    /**
+     * @return number of request bodies sent
+     */
+    public long getRequestCount() {
+        return total.count.sum();
+    }
+
+    /**
+     * @return bytes of all request bodies sent
+     */
+    public long getRequestBytes() {
+        return total.bytes.sum();
+    }
+
+    /**
+     * @return size of the largest request body sent
+     */
+    public long getMaxRequestBytes() {
+        return maxRequestBytes.get();
+    }
+
+    /**
+     * @return average bytes per request body, 0 if none has been sent
+     */
+    public double getAverageRequestBytes() {
+        return total.average();
+    }
+
+    /**
+     * @param messageType type of message
+     * @return number of messages of the type sent
+     */
+    public long getRequestCount(Class<?> messageType) {
+        Counter counter = messages.get(messageType);
+        return counter == null ? 0 : counter.count.sum();
+    }
+
+    /**
+     * @param messageType type of message
+     * @return bytes of all messages of the type sent
+     */
+    public long getRequestBytes(Class<?> messageType) {
+        Counter counter = messages.get(messageType);
+        return counter == null ? 0 : counter.bytes.sum();
+    }
+
+    /**
+     * @param messageType type of message
+     * @return average bytes per message of the type, 0 if none has been sent
+     */
+    public double getAverageRequestBytes(Class<?> messageType) {
+        Counter counter = messages.get(messageType);
+        return counter == null ? 0 : counter.average();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("WireMetrics[requests=").append(getRequestCount())
+                .append(", bytes=").append(getRequestBytes())
+                .append(", max=").append(getMaxRequestBytes());
+        for (ConcurrentMap.Entry<Class<?>, Counter> entry : messages.entrySet()) {
+            builder.append(", ").append(entry.getKey().getSimpleName()).append('=')
+                    .append(String.format("%.1f", entry.getValue().average()));
+        }
+        return builder.append(']').toString();
+    }
+
+    private static final class Counter {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        void add(int length) {
+            count.increment();
+            bytes.add(length);
+        }
+
+        double average() {
+            long sent = count.sum();
+            return sent == 0 ? 0 : (double) bytes.sum() / sent;
+        }
+    }
+}
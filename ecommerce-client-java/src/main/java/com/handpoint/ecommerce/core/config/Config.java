@@ -0,0 +1,378 @@
+package com.handpoint.ecommerce.core.config;
+
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Configuration class used to get properties for the E-Commerce client.
+ *
+ * @author palmithor
+ * @since 12/7/12 10:22 PM PM
+ */
+
+public class Config {
+
+    private static volatile Config instance = null;
+
+    private Properties config = new Properties();
+
+    /**
+     * Create config instance
+     *
+     * @throws HpServerError
+     */
+    private Config() throws HpServerError {
+        try {
+            init();
+        } catch (IOException e) {
+            throw new HpServerError(new Error("Unable to initialize properties file", e));
+        }
+    }
+
+
+    /**
+     * Get instance
+     *
+     * @return singleton instance of Config
+     * @throws HpServerError
+     */
+    public static Config getInstance() throws HpServerError {
+        if (instance == null) {
+            synchronized (Config.class) {
+                if (instance == null) {
+                    instance = new Config();
+                }
+            }
+        }
+        return instance;
+    }
+
+
+    /**
+     * Initialize the properties file.
+     * Initialization of the properties file can be done by either setting JVM property, System property or using the
+     * default file, which is packaged with the jar.
+     *
+     * @throws IOException
+     */
+    private void init() throws IOException {
+        if (System.getProperty(ConfigEnum.CONFIG_JVM_LOCATION.getValue()) != null) {
+            config.load(new FileInputStream(System.getProperty(ConfigEnum.CONFIG_JVM_LOCATION.getValue())));
+        } else if (System.getenv(ConfigEnum.CONFIG_SYSTEM_ENV_LOCATION.getValue()) != null) {
+            config.load(new FileInputStream(System.getenv(ConfigEnum.CONFIG_SYSTEM_ENV_LOCATION.getValue())));
+        } else {
+            InputStream in = getClass().getResourceAsStream("ecommerce-client.properties");
+            config.load(in);
+            in.close();
+        }
+    }
+
+
+    /**
+     * Getter for the com.handpoint.bixby.live.baseurl property
+     *
+     * @return the base live url
+     */
+    public String getLiveBaseUrl() {
+        return getProperty(ConfigEnum.BASE_URL_LIVE, "");
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.test.baseurl property
+     *
+     * @return the base test url
+     */
+    public String getTestBaseUrl() {
+        return getProperty(ConfigEnum.BASE_URL_TEST, null);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.http.pool.maxtotal property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return the maximum number of pooled http connections
+     */
+    public int getHttpPoolMaxTotal(int defaultValue) {
+        return getIntProperty(ConfigEnum.HTTP_POOL_MAX_TOTAL, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.http.pool.maxperhost property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return the maximum number of pooled http connections to a single host
+     */
+    public int getHttpPoolMaxPerHost(int defaultValue) {
+        return getIntProperty(ConfigEnum.HTTP_POOL_MAX_PER_HOST, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.http.pool.idletimeout property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return milliseconds a pooled connection may stay idle before it is closed
+     */
+    public long getHttpPoolIdleTimeout(long defaultValue) {
+        String value = getProperty(ConfigEnum.HTTP_POOL_IDLE_TIMEOUT, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.message.codec property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return the name of the codec used to write and read messages, stax or jaxb
+     */
+    public String getMessageCodec(String defaultValue) {
+        return getProperty(ConfigEnum.MESSAGE_CODEC, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.card.screening property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return true if card data is checked locally before requests are sent
+     */
+    public boolean isCardScreening(boolean defaultValue) {
+        String value = getProperty(ConfigEnum.CARD_SCREENING, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.batch.parallelism property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return the maximum number of operations of a batch sent at the same time
+     */
+    public int getBatchParallelism(int defaultValue) {
+        return getIntProperty(ConfigEnum.BATCH_PARALLELISM, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.retry.maxattempts property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return attempts to send a request that can be retried, including the first
+     */
+    public int getRetryMaxAttempts(int defaultValue) {
+        return getIntProperty(ConfigEnum.RETRY_MAX_ATTEMPTS, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.retry.budget.percent property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return retries allowed as a percentage of requests
+     */
+    public int getRetryBudgetPercent(int defaultValue) {
+        return getIntProperty(ConfigEnum.RETRY_BUDGET_PERCENT, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.circuitbreaker.enabled property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return true if requests are sent through circuit breakers
+     */
+    public boolean isCircuitBreakerEnabled(boolean defaultValue) {
+        String value = getProperty(ConfigEnum.CIRCUIT_BREAKER_ENABLED, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.concurrency.limit.enabled property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return true if requests in flight are limited by a ConcurrencyLimiter
+     */
+    public boolean isConcurrencyLimitEnabled(boolean defaultValue) {
+        String value = getProperty(ConfigEnum.CONCURRENCY_LIMIT_ENABLED, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.concurrency.limit.maxwait.millis property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return longest a request waits for the concurrency limit, in milliseconds
+     */
+    public int getConcurrencyLimitMaxWaitMillis(int defaultValue) {
+        return getIntProperty(ConfigEnum.CONCURRENCY_LIMIT_MAX_WAIT, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.ratelimit.permitspersecond property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return requests per second allowed for each card acceptor and operation, 0 for no limit
+     */
+    public int getRateLimitPermitsPerSecond(int defaultValue) {
+        return getIntProperty(ConfigEnum.RATE_LIMIT_PERMITS_PER_SECOND, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.ratelimit.burst property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return requests let through at once after a quiet period
+     */
+    public int getRateLimitBurst(int defaultValue) {
+        return getIntProperty(ConfigEnum.RATE_LIMIT_BURST, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.ratelimit.maxwait.millis property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return longest a request waits for the rate limit, in milliseconds
+     */
+    public int getRateLimitMaxWaitMillis(int defaultValue) {
+        return getIntProperty(ConfigEnum.RATE_LIMIT_MAX_WAIT, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.timeout.millis property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return milliseconds every operation is given to complete
+     */
+    public long getTimeoutMillis(long defaultValue) {
+        String value = getProperty(ConfigEnum.TIMEOUT, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.timeout.&lt;operation&gt;.millis properties, e.g.
+     * com.handpoint.bixby.timeout.payment.millis
+     *
+     * @param operation    name of the operation in lower case
+     * @param defaultValue returned if the property is not set
+     * @return milliseconds the operation is given to complete
+     */
+    public long getOperationTimeoutMillis(String operation, long defaultValue) {
+        String key = "com.handpoint.bixby.timeout." + operation + ".millis";
+        String value = System.getProperty(key, config.getProperty(key));
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.timeout.connect.millis property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return milliseconds to wait for a connection to be made
+     */
+    public int getConnectTimeoutMillis(int defaultValue) {
+        return getIntProperty(ConfigEnum.CONNECT_TIMEOUT, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.autocancel.enabled property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return true if transactions whose outcome is unknown are cancelled by an AutoCanceller
+     */
+    public boolean isAutoCancelEnabled(boolean defaultValue) {
+        String value = getProperty(ConfigEnum.AUTO_CANCEL_ENABLED, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.autocancel.maxattempts property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return attempts to cancel a transaction whose outcome is unknown
+     */
+    public int getAutoCancelMaxAttempts(int defaultValue) {
+        return getIntProperty(ConfigEnum.AUTO_CANCEL_MAX_ATTEMPTS, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.journal.file property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return path of the journal of transactions in flight
+     */
+    public String getJournalFile(String defaultValue) {
+        return getProperty(ConfigEnum.JOURNAL_FILE, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.journal.force property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return true if transactions are forced to the disk before they are sent
+     */
+    public boolean isJournalForce(boolean defaultValue) {
+        String value = getProperty(ConfigEnum.JOURNAL_FORCE, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.idempotency.dir property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return path of the directory of the idempotency store
+     */
+    public String getIdempotencyDirectory(String defaultValue) {
+        return getProperty(ConfigEnum.IDEMPOTENCY_DIRECTORY, defaultValue);
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.idempotency.expectedkeys property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return number of customer references a new idempotency store is sized for
+     */
+    public long getIdempotencyExpectedKeys(long defaultValue) {
+        String value = getProperty(ConfigEnum.IDEMPOTENCY_EXPECTED_KEYS, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.tokencache.capacity property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return number of tokens cached at most, 0 to not cache tokens
+     */
+    public long getTokenCacheCapacity(long defaultValue) {
+        String value = getProperty(ConfigEnum.TOKEN_CACHE_CAPACITY, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.tokencache.ttl.millis property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return milliseconds a token is cached
+     */
+    public long getTokenCacheTtl(long defaultValue) {
+        String value = getProperty(ConfigEnum.TOKEN_CACHE_TTL, null);
+        return value == null ? defaultValue : Long.parseLong(value.trim());
+    }
+
+    /**
+     * Getter for the com.handpoint.bixby.tokencache.file property
+     *
+     * @param defaultValue returned if the property is not set
+     * @return path of the file the token cache is mapped from
+     */
+    public String getTokenCacheFile(String defaultValue) {
+        return getProperty(ConfigEnum.TOKEN_CACHE_FILE, defaultValue);
+    }
+
+    private int getIntProperty(ConfigEnum property, int defaultValue) {
+        String value = getProperty(property, null);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /**
+     * A JVM system property with the same key overrides the value in the properties file.
+     */
+    private String getProperty(ConfigEnum property, String defaultValue) {
+        return System.getProperty(property.getValue(), config.getProperty(property.getValue(), defaultValue));
+    }
+}
@@ -0,0 +1,51 @@
+package com.handpoint.ecommerce.core.config;
+
+/**
+ * Enum used for Config class. All properties are listed in an enum.
+ *
+ * @author palmithor
+ * @since 12/10/12 12:55 PM
+ */
+public enum ConfigEnum {
+
+    CONFIG_JVM_LOCATION("HandpointEcommerceProperties"),
+    CONFIG_SYSTEM_ENV_LOCATION("ECOMMERCE_CLIENT_PROPERTIES"),
+    BASE_URL_LIVE("com.handpoint.bixby.live.baseurl"),
+    BASE_URL_TEST("com.handpoint.bixby.test.baseurl"),
+    HTTP_POOL_MAX_TOTAL("com.handpoint.bixby.http.pool.maxtotal"),
+    HTTP_POOL_MAX_PER_HOST("com.handpoint.bixby.http.pool.maxperhost"),
+    HTTP_POOL_IDLE_TIMEOUT("com.handpoint.bixby.http.pool.idletimeout"),
+    MESSAGE_CODEC("com.handpoint.bixby.message.codec"),
+    CARD_SCREENING("com.handpoint.bixby.card.screening"),
+    BATCH_PARALLELISM("com.handpoint.bixby.batch.parallelism"),
+    RETRY_MAX_ATTEMPTS("com.handpoint.bixby.retry.maxattempts"),
+    RETRY_BUDGET_PERCENT("com.handpoint.bixby.retry.budget.percent"),
+    CIRCUIT_BREAKER_ENABLED("com.handpoint.bixby.circuitbreaker.enabled"),
+    CONCURRENCY_LIMIT_ENABLED("com.handpoint.bixby.concurrency.limit.enabled"),
+    CONCURRENCY_LIMIT_MAX_WAIT("com.handpoint.bixby.concurrency.limit.maxwait.millis"),
+    RATE_LIMIT_PERMITS_PER_SECOND("com.handpoint.bixby.ratelimit.permitspersecond"),
+    RATE_LIMIT_BURST("com.handpoint.bixby.ratelimit.burst"),
+    RATE_LIMIT_MAX_WAIT("com.handpoint.bixby.ratelimit.maxwait.millis"),
+    TIMEOUT("com.handpoint.bixby.timeout.millis"),
+    CONNECT_TIMEOUT("com.handpoint.bixby.timeout.connect.millis"),
+    AUTO_CANCEL_ENABLED("com.handpoint.bixby.autocancel.enabled"),
+    AUTO_CANCEL_MAX_ATTEMPTS("com.handpoint.bixby.autocancel.maxattempts"),
+    JOURNAL_FILE("com.handpoint.bixby.journal.file"),
+    JOURNAL_FORCE("com.handpoint.bixby.journal.force"),
+    IDEMPOTENCY_DIRECTORY("com.handpoint.bixby.idempotency.dir"),
+    IDEMPOTENCY_EXPECTED_KEYS("com.handpoint.bixby.idempotency.expectedkeys"),
+    TOKEN_CACHE_CAPACITY("com.handpoint.bixby.tokencache.capacity"),
+    TOKEN_CACHE_TTL("com.handpoint.bixby.tokencache.ttl.millis"),
+    TOKEN_CACHE_FILE("com.handpoint.bixby.tokencache.file");
+
+
+    private final String value;
+
+    private ConfigEnum(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
\ No newline at end of file
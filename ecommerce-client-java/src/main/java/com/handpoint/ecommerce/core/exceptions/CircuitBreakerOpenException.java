@@ -0,0 +1,12 @@
+package com.handpoint.ecommerce.core.exceptions;
+
+/**
+ * Thrown instead of sending a request while the circuit breaker of its operation is open, because too many recent
+ * requests to the operation failed or were slow. The request was not sent.
+ */
+public class CircuitBreakerOpenException extends RequestRejectedException {
+
+    public CircuitBreakerOpenException(String message, String terminalDateTime) {
+        super(message, terminalDateTime);
+    }
+}
@@ -0,0 +1,12 @@
+package com.handpoint.ecommerce.core.exceptions;
+
+/**
+ * Thrown instead of sending a request when the requests in flight to the web service are at the limit of the
+ * ConcurrencyLimiter and the request could not wait for one of them to complete. The request was not sent.
+ */
+public class ConcurrencyLimitExceededException extends RequestRejectedException {
+
+    public ConcurrencyLimitExceededException(String message, String terminalDateTime) {
+        super(message, terminalDateTime);
+    }
+}
@@ -0,0 +1,12 @@
+package com.handpoint.ecommerce.core.exceptions;
+
+/**
+ * Thrown when the deadline of a request passed before its response was read. The request may have reached the web
+ * service and been applied, cancel it with the terminalDateTime to be sure it is not.
+ */
+public class DeadlineExceededException extends HpECommerceException {
+
+    public DeadlineExceededException(String message, Throwable e, String terminalDateTime) {
+        super(message, e, terminalDateTime);
+    }
+}
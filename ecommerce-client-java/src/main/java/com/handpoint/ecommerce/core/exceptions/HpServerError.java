@@ -11,6 +11,7 @@ import com.handpoint.ecommerce.messages.ErrorMessage;
 public class HpServerError extends Exception {
 
     private ErrorMessage errorMessage;
+    private int status;
 
     public HpServerError(ErrorMessage errorMessage) {
         super();
@@ -26,6 +27,12 @@ public class HpServerError extends Exception {
         this.errorMessage = errorMessage;
     }
 
+    public HpServerError(String message, ErrorMessage errorMessage, int status) {
+        super(message);
+        this.errorMessage = errorMessage;
+        this.status = status;
+    }
+
     public HpServerError(String message, Throwable e) {
         super(message, e);
     }
@@ -33,4 +40,11 @@ public class HpServerError extends Exception {
     public ErrorMessage getErrorMessage() {
         return errorMessage;
     }
+
+    /**
+     * @return the http status of the error response, or 0 if not known
+     */
+    public int getStatus() {
+        return status;
+    }
 }
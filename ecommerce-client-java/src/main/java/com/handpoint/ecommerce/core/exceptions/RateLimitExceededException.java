@@ -0,0 +1,12 @@
+package com.handpoint.ecommerce.core.exceptions;
+
+/**
+ * Thrown instead of sending a request when the rate limit of its card acceptor and operation is reached and the
+ * request could not wait for a permit. The request was not sent.
+ */
+public class RateLimitExceededException extends RequestRejectedException {
+
+    public RateLimitExceededException(String message, String terminalDateTime) {
+        super(message, terminalDateTime);
+    }
+}
@@ -0,0 +1,12 @@
+package com.handpoint.ecommerce.core.exceptions;
+
+/**
+ * Thrown instead of sending a request the client refused to send, e.g. because a circuit breaker is open or a limit
+ * is reached. The request was not sent, so it can be sent again later without being applied twice.
+ */
+public class RequestRejectedException extends HpECommerceException {
+
+    public RequestRejectedException(String message, String terminalDateTime) {
+        super(message, null, terminalDateTime);
+    }
+}
@@ -14,7 +14,8 @@ public class ErrorMessage {
     private String reason;
 
     @XmlElementWrapper(name = "details")
-    private List<String> detail;
+    @XmlElement(name = "detail")
+    private List<String> details;
 
     public String getReason() {
         return reason;
@@ -25,10 +26,10 @@ public class ErrorMessage {
     }
 
     public List<String> getDetails() {
-        return detail;
+        return details;
     }
 
     public void setDetails(List<String> details) {
-        this.detail = details;
+        this.details = details;
     }
 }
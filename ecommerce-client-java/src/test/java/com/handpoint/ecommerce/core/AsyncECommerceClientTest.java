@@ -0,0 +1,78 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.messages.payment.Payment;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.element;
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the asynchronous client completes its futures off the event loop, with errors and on timeouts.
+ */
+public class AsyncECommerceClientTest {
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer((exchange, body) -> {
+        String reference = element(body, "customerReference");
+        if ("hang".equals(reference)) {
+            LocalBixbyServer.hang(exchange, body);
+        } else if (exchange.getRequestURI().getPath().endsWith("/payment/") && reference != null) {
+            respond(exchange, "<payment><customerReference>" + reference + "</customerReference></payment>");
+        } else {
+            respond(exchange, 400, "<error><reason>Invalid request</reason></error>");
+        }
+    });
+
+    @After
+    public void clearTimeout() {
+        System.clearProperty(ConfigEnum.TIMEOUT.getValue());
+    }
+
+    @Test
+    public void testCompletesOffEventLoop() throws Exception {
+        try (AsyncECommerceClient client = new AsyncECommerceClient("cardAcceptor", "secret", Environment.TEST)) {
+            String thread = client.paymentWithToken(Currency.ISK.alpha, "70", "token", "ref")
+                    .thenApply(payment -> {
+                        assertEquals("ref", payment.getCustomerReference());
+                        return Thread.currentThread().getName();
+                    })
+                    .get(5, TimeUnit.SECONDS);
+            assertTrue(thread, thread.startsWith("ecommerce-async-"));
+        }
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        try (AsyncECommerceClient client = new AsyncECommerceClient("cardAcceptor", "secret", Environment.TEST)) {
+            client.paymentWithToken(Currency.ISK.alpha, "70", "token").get(5, TimeUnit.SECONDS);
+            fail("Expected HpServerError");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof HpServerError);
+        }
+    }
+
+    @Test
+    public void testHungConnectionTimesOut() throws Exception {
+        System.setProperty(ConfigEnum.TIMEOUT.getValue(), "300");
+        try (AsyncECommerceClient client = new AsyncECommerceClient("cardAcceptor", "secret", Environment.TEST)) {
+            long start = System.nanoTime();
+            try {
+                Payment payment = client.paymentWithToken(Currency.ISK.alpha, "70", "token", "hang").get(5, TimeUnit.SECONDS);
+                fail("Expected HpECommerceException, got " + payment);
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof HpECommerceException);
+                assertNotNull(((HpECommerceException) e.getCause()).terminalDateTime);
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.core.exceptions.DeadlineExceededException;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.messages.payment.Cancellation;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that payments whose outcome is unknown are cancelled in the background until the web service answers, and that
+ * only 4xx errors end the attempts.
+ */
+public class AutoCancellerTest {
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer(this::handleRequest);
+
+    private final AtomicInteger cancellationsLost = new AtomicInteger();
+    private final AtomicInteger cancellationErrors = new AtomicInteger();
+    private volatile int cancellationErrorStatus;
+    private final List<String> cancelled = new CopyOnWriteArrayList<>();
+
+    private void handleRequest(HttpExchange exchange, String body) throws IOException {
+        if (exchange.getRequestURI().getPath().endsWith("/cancellation/")) {
+            if (cancellationsLost.getAndDecrement() > 0) {
+                exchange.close();
+                return;
+            }
+            if (cancellationErrors.getAndDecrement() > 0) {
+                respond(exchange, cancellationErrorStatus, "<error><reason>Cancellation failed</reason></error>");
+                return;
+            }
+            String terminalDateTime = LocalBixbyServer.element(body, "terminalDateTime");
+            cancelled.add(terminalDateTime);
+            respond(exchange, "<cancellation><terminalDateTime>" + terminalDateTime + "</terminalDateTime></cancellation>");
+        } else {
+            // Payments never answer
+            LocalBixbyServer.hang(exchange, body);
+        }
+    }
+
+    @Test
+    public void testTimedOutPaymentIsCancelled() throws Exception {
+        cancellationsLost.set(2);
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        AutoCanceller canceller = new AutoCanceller(5, 10, 100);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<AutoCanceller.Transaction> result = new AtomicReference<>();
+        canceller.addListener(new AutoCanceller.Listener() {
+            @Override
+            public void onCancelled(AutoCanceller.Transaction transaction, Cancellation cancellation) {
+                result.set(transaction);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(AutoCanceller.Transaction transaction, Exception e) {
+                done.countDown();
+            }
+        });
+        client.setAutoCanceller(canceller);
+        String terminalDateTime = null;
+        try {
+            client.withDeadline(Deadline.after(300, TimeUnit.MILLISECONDS)).paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            terminalDateTime = e.terminalDateTime;
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        AutoCanceller.Transaction transaction = result.get();
+        assertNotNull(transaction);
+        assertEquals(ECommerceClient.PAYMENT, transaction.getTransactionType());
+        assertEquals(terminalDateTime, transaction.getTerminalDateTimeOriginal());
+        assertEquals(3, transaction.getAttempts());
+        assertEquals(1, cancelled.size());
+        assertEquals(terminalDateTime, cancelled.get(0));
+        assertEquals(0, canceller.getPendingCount());
+        canceller.shutdown();
+    }
+
+    @Test
+    public void testAttemptsRunOut() throws Exception {
+        cancellationsLost.set(Integer.MAX_VALUE);
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        AutoCanceller canceller = new AutoCanceller(2, 10, 100);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        canceller.addListener(new AutoCanceller.Listener() {
+            @Override
+            public void onCancelled(AutoCanceller.Transaction transaction, Cancellation cancellation) {
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(AutoCanceller.Transaction transaction, Exception e) {
+                failure.set(e);
+                done.countDown();
+            }
+        });
+        client.setAutoCanceller(canceller);
+        try {
+            client.withDeadline(Deadline.after(300, TimeUnit.MILLISECONDS)).paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            // Outcome unknown
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(failure.get() instanceof HpECommerceException);
+        assertTrue(cancelled.isEmpty());
+        assertEquals(0, canceller.getPendingCount());
+        canceller.shutdown();
+    }
+
+    @Test
+    public void testServerErrorIsRetried() throws Exception {
+        cancellationErrors.set(2);
+        cancellationErrorStatus = 503;
+        AutoCanceller canceller = new AutoCanceller(5, 10, 100);
+        AtomicReference<AutoCanceller.Transaction> result = new AtomicReference<>();
+        cancelTimedOutPayment(canceller, result, new AtomicReference<>());
+        assertEquals(3, result.get().getAttempts());
+        assertEquals(1, cancelled.size());
+        canceller.shutdown();
+    }
+
+    @Test
+    public void testClientErrorIsFinal() throws Exception {
+        cancellationErrors.set(Integer.MAX_VALUE);
+        cancellationErrorStatus = 400;
+        AutoCanceller canceller = new AutoCanceller(5, 10, 100);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        AtomicReference<AutoCanceller.Transaction> result = new AtomicReference<>();
+        cancelTimedOutPayment(canceller, result, failure);
+        assertEquals(400, ((HpServerError) failure.get()).getStatus());
+        assertEquals(1, result.get().getAttempts());
+        assertTrue(cancelled.isEmpty());
+        canceller.shutdown();
+    }
+
+    @Test
+    public void testConfiguredClientsShareCanceller() throws Exception {
+        System.setProperty(ConfigEnum.AUTO_CANCEL_ENABLED.getValue(), "true");
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            ECommerceClient other = new ECommerceClient("other", "secret", Environment.LIVE);
+            assertNotNull(client.getAutoCanceller());
+            assertSame(client.getAutoCanceller(), other.getAutoCanceller());
+        } finally {
+            System.clearProperty(ConfigEnum.AUTO_CANCEL_ENABLED.getValue());
+        }
+    }
+
+    /**
+     * Times out a payment and waits for the canceller to cancel it or give up.
+     */
+    private void cancelTimedOutPayment(AutoCanceller canceller, AtomicReference<AutoCanceller.Transaction> result,
+                                       AtomicReference<Exception> failure) throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        CountDownLatch done = new CountDownLatch(1);
+        canceller.addListener(new AutoCanceller.Listener() {
+            @Override
+            public void onCancelled(AutoCanceller.Transaction transaction, Cancellation cancellation) {
+                result.set(transaction);
+                done.countDown();
+            }
+
+            @Override
+            public void onFailed(AutoCanceller.Transaction transaction, Exception e) {
+                result.set(transaction);
+                failure.set(e);
+                done.countDown();
+            }
+        });
+        client.setAutoCanceller(canceller);
+        try {
+            client.withDeadline(Deadline.after(300, TimeUnit.MILLISECONDS)).paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            // Outcome unknown
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, canceller.getPendingCount());
+    }
+
+    @Test
+    public void testPaymentNotSentIsNotCancelled() throws Exception {
+        LocalBixbyServer.pointClientsNowhere();
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        AutoCanceller canceller = new AutoCanceller();
+        client.setAutoCanceller(canceller);
+        try {
+            client.paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+            fail("Expected HpECommerceException");
+        } catch (HpECommerceException e) {
+            // Connection refused
+        }
+        assertEquals(0, canceller.getPendingCount());
+        canceller.shutdown();
+    }
+}
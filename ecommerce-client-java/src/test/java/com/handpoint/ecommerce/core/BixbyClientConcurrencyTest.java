@@ -0,0 +1,303 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.DeadlineExceededException;
+import com.handpoint.ecommerce.core.exceptions.HpServerError;
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.messages.payment.Payment;
+import com.handpoint.ecommerce.messages.payment.PaymentRequest;
+import com.handpoint.ecommerce.messages.token.Token;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.Rule;
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Stress test for one ECommerceClient shared by many threads. A local server verifies that every request
+ * carries exactly one date and a valid HMAC and echoes the request back, so headers or bodies leaking
+ * between concurrent requests show up as failures.
+ */
+public class BixbyClientConcurrencyTest {
+
+    private static final String SHARED_SECRET = "8F10C8AD35B7AEC11675B50DBF6ACEAA0B4EC280B92500E51A02F7BBBE7B07C6";
+    private static final String CARD_ACCEPTOR = "7f6451e8314defbb50d0";
+    private static final int THREADS = 16;
+    private static final int REQUESTS_PER_THREAD = 40;
+    private static final Pattern CUSTOMER_REFERENCE = Pattern.compile("<customerReference>(.*)</customerReference>");
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer(this::handleRequest);
+
+    private AtomicInteger rejectedRequests = new AtomicInteger();
+    private AtomicInteger tokenLookups = new AtomicInteger();
+    private volatile CountDownLatch tokenLookupReceived;
+    private volatile CountDownLatch answerTokenLookup;
+
+    @Test
+    public void testSharedClientKeepsRequestsApart() throws Exception {
+        final ECommerceClient client = new ECommerceClient(CARD_ACCEPTOR, SHARED_SECRET, Environment.TEST);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            results.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int mismatches = 0;
+                    for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                        String reference = "ref-" + thread + "-" + i;
+                        if (i % 2 == 0) {
+                            Payment payment = client.paymentWithToken(Currency.ISK.alpha, "70.00", "token", reference);
+                            if (!reference.equals(payment.getCustomerReference())) {
+                                mismatches++;
+                            }
+                        } else {
+                            Token token = client.getToken(reference);
+                            if (!reference.equals(token.getToken())) {
+                                mismatches++;
+                            }
+                        }
+                    }
+                    return mismatches;
+                }
+            }));
+        }
+        int mismatches = 0;
+        for (Future<Integer> result : results) {
+            mismatches += result.get();
+        }
+        executor.shutdown();
+
+        assertEquals(0, mismatches);
+        assertEquals(0, rejectedRequests.get());
+        assertEquals(THREADS * REQUESTS_PER_THREAD / 2, client.getWireMetrics().getRequestCount(PaymentRequest.class));
+    }
+
+    @Test
+    public void testConcurrentTokenLookupsShareOneRequest() throws Exception {
+        final ECommerceClient client = new ECommerceClient(CARD_ACCEPTOR, SHARED_SECRET, Environment.TEST);
+        tokenLookupReceived = new CountDownLatch(1);
+        answerTokenLookup = new CountDownLatch(1);
+        List<FutureTask<Token>> results = new ArrayList<>();
+        List<Thread> waiters = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            FutureTask<Token> result = new FutureTask<>(() -> client.getToken("shared"));
+            results.add(result);
+            Thread thread = new Thread(result);
+            thread.start();
+            if (t == 0) {
+                // The first lookup is held by the server until every other thread waits for it
+                assertTrue(tokenLookupReceived.await(5, TimeUnit.SECONDS));
+            } else {
+                waiters.add(thread);
+            }
+        }
+        awaitWaiting(waiters);
+        answerTokenLookup.countDown();
+        Set<Token> tokens = Collections.newSetFromMap(new IdentityHashMap<Token, Boolean>());
+        for (FutureTask<Token> result : results) {
+            Token token = result.get(5, TimeUnit.SECONDS);
+            assertEquals("shared", token.getToken());
+            tokens.add(token);
+        }
+
+        assertEquals(1, tokenLookups.get());
+        assertEquals(THREADS, tokens.size());
+        tokenLookupReceived = null;
+        client.getToken("shared");
+        assertEquals(2, tokenLookups.get());
+    }
+
+    @Test
+    public void testTokenLookupWaiterDeadlineCarriesTerminalDateTime() throws Exception {
+        final ECommerceClient client = new ECommerceClient(CARD_ACCEPTOR, SHARED_SECRET, Environment.TEST);
+        tokenLookupReceived = new CountDownLatch(1);
+        answerTokenLookup = new CountDownLatch(1);
+        FutureTask<Token> owner = new FutureTask<>(() -> client.getToken("shared"));
+        new Thread(owner).start();
+        assertTrue(tokenLookupReceived.await(5, TimeUnit.SECONDS));
+        try {
+            client.withDeadline(Deadline.after(100, TimeUnit.MILLISECONDS)).getToken("shared");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertNotNull(e.terminalDateTime);
+        } finally {
+            answerTokenLookup.countDown();
+        }
+        assertEquals("shared", owner.get(5, TimeUnit.SECONDS).getToken());
+        assertEquals(1, tokenLookups.get());
+    }
+
+    /**
+     * Waits until every thread is parked, i.e. waits for the lookup in flight.
+     */
+    private static void awaitWaiting(List<Thread> threads) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.WAITING) {
+                assertTrue("Thread not waiting: " + thread.getState(), System.nanoTime() < deadline);
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    @Test
+    public void testBatchReturnsEveryResultOnce() throws Exception {
+        ECommerceClient client = new ECommerceClient(CARD_ACCEPTOR, SHARED_SECRET, Environment.TEST);
+        client.setBatchParallelism(THREADS / 2);
+        List<BatchOperation<?>> operations = new ArrayList<>();
+        for (int i = 0; i < REQUESTS_PER_THREAD * 4; i++) {
+            final String reference = "batch-" + i;
+            if (i % 3 == 0) {
+                operations.add(c -> c.paymentWithToken(Currency.ISK.alpha, "70.00", "token", reference));
+            } else if (i % 3 == 1) {
+                operations.add(c -> c.getToken(reference));
+            } else {
+                // Fails validation without reaching the server
+                operations.add(c -> c.paymentWithToken(null, "70.00", "token", reference));
+            }
+        }
+        boolean[] seen = new boolean[operations.size()];
+        Iterator<BatchResult<?>> results = client.submitBatch(operations);
+        while (results.hasNext()) {
+            BatchResult<?> result = results.next();
+            int index = result.getIndex();
+            assertFalse(seen[index]);
+            seen[index] = true;
+            String reference = "batch-" + index;
+            if (index % 3 == 0) {
+                assertEquals(reference, ((Payment) result.getResponse()).getCustomerReference());
+            } else if (index % 3 == 1) {
+                assertEquals(reference, ((Token) result.getResponse()).getToken());
+            } else {
+                assertTrue(result.getException() instanceof InvalidMessageException);
+            }
+        }
+        for (boolean s : seen) {
+            assertTrue(s);
+        }
+        assertEquals(0, rejectedRequests.get());
+    }
+
+    @Test
+    public void testGatewaySignsWithSecretOfEachMerchant() throws Exception {
+        MerchantGateway gateway = new MerchantGateway();
+        try {
+            final ECommerceClient merchant = gateway.merchant(CARD_ACCEPTOR, SHARED_SECRET, Environment.TEST);
+            final ECommerceClient otherMerchant = gateway.merchant("other", "other secret", Environment.TEST);
+            ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final int thread = t;
+                results.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        int failures = 0;
+                        for (int i = 0; i < REQUESTS_PER_THREAD; i++) {
+                            String reference = "ref-" + thread + "-" + i;
+                            if (i % 4 == 3) {
+                                try {
+                                    otherMerchant.getToken(reference);
+                                    failures++;
+                                } catch (HpServerError e) {
+                                    // The server only knows the shared secret of the first merchant
+                                }
+                            } else if (i % 2 == 0) {
+                                Payment payment = merchant.paymentWithToken(Currency.ISK.alpha, "70.00", "token", reference);
+                                if (!reference.equals(payment.getCustomerReference())) {
+                                    failures++;
+                                }
+                            } else if (!reference.equals(merchant.getToken(reference).getToken())) {
+                                failures++;
+                            }
+                        }
+                        return failures;
+                    }
+                }));
+            }
+            int failures = 0;
+            for (Future<Integer> result : results) {
+                failures += result.get();
+            }
+            executor.shutdown();
+
+            assertEquals(0, failures);
+            assertEquals(THREADS * REQUESTS_PER_THREAD / 4, rejectedRequests.get());
+            assertEquals(THREADS * REQUESTS_PER_THREAD / 2, gateway.getWireMetrics().getRequestCount(PaymentRequest.class));
+            assertSame(gateway.getSigner(SHARED_SECRET), gateway.getSigner(SHARED_SECRET));
+        } finally {
+            gateway.shutdown();
+        }
+    }
+
+    private void handleRequest(HttpExchange exchange, String body) throws IOException {
+        List<String> dates = exchange.getRequestHeaders().get(HmacFilter.MWS_DATE);
+        List<String> hmacs = exchange.getRequestHeaders().get(HmacFilter.MWS_HMAC);
+        String path = exchange.getRequestURI().getPath();
+        if (dates == null || dates.size() != 1 || hmacs == null || hmacs.size() != 1
+                || !hmacs.get(0).equals(hmac(exchange.getRequestMethod() + path + dates.get(0) + body))) {
+            rejectedRequests.incrementAndGet();
+            respond(exchange, 401, "<error><reason>Invalid hmac</reason></error>");
+            return;
+        }
+        if (path.endsWith("/payment/")) {
+            Matcher matcher = CUSTOMER_REFERENCE.matcher(body);
+            String reference = matcher.find() ? matcher.group(1) : "";
+            respond(exchange, 200, "<payment><customerReference>" + reference + "</customerReference><terminalDateTime>"
+                    + dates.get(0) + "</terminalDateTime></payment>");
+        } else {
+            tokenLookups.incrementAndGet();
+            CountDownLatch received = tokenLookupReceived;
+            if (received != null) {
+                received.countDown();
+                try {
+                    answerTokenLookup.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            String[] segments = path.split("/");
+            respond(exchange, 200, "<tokenStore><token>" + segments[segments.length - 1] + "</token></tokenStore>");
+        }
+    }
+
+    private static String hmac(String toMac) {
+        try {
+            Mac mac = Mac.getInstance(HmacFilter.HMAC_SHA_1);
+            mac.init(new SecretKeySpec(SHARED_SECRET.getBytes(), HmacFilter.HMAC_SHA_1));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : mac.doFinal(toMac.getBytes())) {
+                hex.append(String.format("%02x", b & 0xFF));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.InvalidMessageException;
+import com.handpoint.ecommerce.messages.payment.Refund;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Luhn check, expiry date check and BIN lookup of the CardScreener.
+ */
+public class CardScreenerTest {
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer((exchange, body) ->
+            respond(exchange, "<refund><approvalCode>123456</approvalCode></refund>"));
+
+    private static final Clock MARCH_2013 = Clock.fixed(LocalDate.of(2013, 3, 15).atStartOfDay().toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+
+    private CardScreener screener = new CardScreener(MARCH_2013);
+
+    @Test
+    public void testValidCardNumbers() {
+        assertTrue(CardScreener.isValidCardNumber("4222222222222"));
+        assertTrue(CardScreener.isValidCardNumber("4111111111111111"));
+        assertTrue(CardScreener.isValidCardNumber("5555555555554444"));
+        assertTrue(CardScreener.isValidCardNumber("371449635398431"));
+    }
+
+    @Test
+    public void testInvalidCardNumbers() {
+        assertFalse(CardScreener.isValidCardNumber("4222222222223"));
+        assertFalse(CardScreener.isValidCardNumber("40000000000000002"));
+        assertFalse(CardScreener.isValidCardNumber("42222222222"));
+        assertFalse(CardScreener.isValidCardNumber("42222222222a2"));
+    }
+
+    @Test
+    public void testScreen() throws Exception {
+        screener.screen("4222222222222", "0313");
+        screener.screen("4222222222222", "1215");
+        screener.screen(null, null);
+    }
+
+    @Test
+    public void testScreenExpired() {
+        assertScreenFails("4222222222222", "0213", CardScreener.CARD_EXPIRED);
+        assertScreenFails("4222222222222", "1212", CardScreener.CARD_EXPIRED);
+    }
+
+    @Test
+    public void testScreenInvalid() {
+        assertScreenFails("4222222222223", "1215", CardScreener.INVALID_CARD_NUMBER);
+        assertScreenFails("4222222222222", "1315", CardScreener.INVALID_EXPIRY_DATE);
+        assertScreenFails("4222222222222", "121", CardScreener.INVALID_EXPIRY_DATE);
+    }
+
+    @Test
+    public void testRefundToExpiredCard() throws Exception {
+        try (ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST)) {
+            client.setCardScreener(screener);
+            Refund refund = client.refund(Currency.ISK.alpha, "70", "4222222222222", "0213");
+            assertEquals("123456", refund.getApprovalCode());
+            try {
+                client.refund(Currency.ISK.alpha, "70", "4222222222223", "0213");
+                fail("Expected InvalidMessageException");
+            } catch (InvalidMessageException e) {
+                assertEquals(CardScreener.INVALID_CARD_NUMBER, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testCardTypeName() {
+        assertEquals("VISA", CardScreener.getCardTypeName("4222222222222"));
+        assertEquals("American Express", CardScreener.getCardTypeName("371449635398431"));
+        assertEquals("MasterCard", CardScreener.getCardTypeName("5555555555554444"));
+        assertEquals("MasterCard", CardScreener.getCardTypeName("2221000000000009"));
+        assertEquals("Discover", CardScreener.getCardTypeName("6011111111111117"));
+        assertEquals("JCB", CardScreener.getCardTypeName("3530111333300000"));
+        assertNull(CardScreener.getCardTypeName("1234567890123"));
+        assertNull(CardScreener.getCardTypeName("4222"));
+    }
+
+    private void assertScreenFails(String cardNumber, String expiryDateMMYY, String message) {
+        try {
+            screener.screen(cardNumber, expiryDateMMYY);
+            fail("Expected InvalidMessageException");
+        } catch (InvalidMessageException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+}
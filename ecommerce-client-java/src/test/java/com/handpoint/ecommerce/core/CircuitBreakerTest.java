@@ -0,0 +1,158 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.core.exceptions.CircuitBreakerOpenException;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the states of the CircuitBreaker, that listeners can not fail calls and that clients fail fast while it is
+ * open.
+ */
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final List<String> transitions = new ArrayList<>();
+
+    @Test
+    public void testOpensOnFailureRate() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(FAST);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onFailure(FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+        breaker.onFailure(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals("CLOSED>OPEN", String.join(",", transitions));
+    }
+
+    @Test
+    public void testOpensOnSlowCallRate() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onSuccess(i < 2 ? FAST : SLOW);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(80, breaker.getSlowCallRate());
+    }
+
+    @Test
+    public void testSlidingWindowForgetsOldCalls() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST);
+        }
+        for (int i = 0; i < 100; i++) {
+            breaker.tryAcquire();
+            breaker.onSuccess(FAST);
+        }
+        assertEquals(0, breaker.getFailureRate());
+        for (int i = 0; i < 4; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST);
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void testHalfOpenProbes() throws Exception {
+        CircuitBreaker breaker = newBreaker();
+        open(breaker);
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        breaker.onSuccess(FAST);
+        breaker.onFailure(FAST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        Thread.sleep(60);
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        breaker.onSuccess(FAST);
+        breaker.onSuccess(FAST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("CLOSED>OPEN,OPEN>HALF_OPEN,HALF_OPEN>OPEN,OPEN>HALF_OPEN,HALF_OPEN>CLOSED", String.join(",", transitions));
+    }
+
+    @Test
+    public void testClientFailsFastWhileOpen() throws Exception {
+        // Nothing listens on the port, every request is refused
+        System.setProperty(ConfigEnum.BASE_URL_TEST.getValue(), "http://localhost:1");
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            client.setRetryPolicy(null);
+            int refused = 0;
+            for (int i = 0; i < CircuitBreakers.DEFAULT_MINIMUM_CALLS + 5; i++) {
+                try {
+                    client.getToken("TOKEN_1");
+                    fail("Expected HpECommerceException");
+                } catch (CircuitBreakerOpenException e) {
+                    refused++;
+                    assertNotNull(e.terminalDateTime);
+                } catch (HpECommerceException e) {
+                    // Connection refused
+                }
+            }
+            assertEquals(5, refused);
+            CircuitBreaker breaker = client.getCircuitBreakers().get(Environment.TEST, "http://localhost:1", Operation.TOKENSTORE);
+            assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+            assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreakers().get(Environment.TEST, "http://localhost:1", Operation.PAYMENT).getState());
+        } finally {
+            System.clearProperty(ConfigEnum.BASE_URL_TEST.getValue());
+        }
+    }
+
+    @Test
+    public void testThrowingListenerIsIsolated() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10, 10, 50, 80, 100, 50, 2);
+        breaker.addListener((b, from, to) -> {
+            throw new IllegalStateException("Listener failed");
+        });
+        breaker.addListener((b, from, to) -> transitions.add(from + ">" + to));
+        List<Throwable> reported = new ArrayList<>();
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        thread.setUncaughtExceptionHandler((t, e) -> reported.add(e));
+        try {
+            open(breaker);
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+        assertEquals("CLOSED>OPEN", String.join(",", transitions));
+        assertEquals(1, reported.size());
+        assertTrue(reported.get(0) instanceof IllegalStateException);
+    }
+
+    private CircuitBreaker newBreaker() {
+        CircuitBreaker breaker = new CircuitBreaker("test", 10, 10, 50, 80, 100, 50, 2);
+        breaker.addListener((b, from, to) -> transitions.add(from + ">" + to));
+        return breaker;
+    }
+
+    private static void open(CircuitBreaker breaker) {
+        for (int i = 0; i < 10; i++) {
+            breaker.tryAcquire();
+            breaker.onFailure(FAST);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,149 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.core.exceptions.ConcurrencyLimitExceededException;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the limit, queue and adaptation of the ConcurrencyLimiter, per operation, and that clients are refused over
+ * the limit.
+ */
+public class ConcurrencyLimiterTest {
+
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void testRejectsOverLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 0, 0);
+        long start = limiter.acquire();
+        assertTrue(start != -1);
+        assertEquals(-1, limiter.acquire());
+        assertEquals(1, limiter.getInFlight());
+        limiter.release();
+        assertTrue(limiter.acquire() != -1);
+    }
+
+    @Test
+    public void testQueuedRequestWaitsForRelease() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1, 5000);
+        limiter.acquire();
+        AtomicLong queuedStart = new AtomicLong(-1);
+        Thread queued = new Thread(() -> {
+            try {
+                queuedStart.set(limiter.acquire());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        queued.start();
+        while (limiter.getQueueDepth() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(-1, limiter.acquire());
+        limiter.release();
+        queued.join(5000);
+        assertTrue(queuedStart.get() != -1);
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testQueuedRequestTimesOut() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 1, 10);
+        limiter.acquire();
+        assertEquals(-1, limiter.acquire());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    public void testGrowsAndBacksOff() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8, 0, 0);
+        long first = limiter.acquire();
+        long second = limiter.acquire();
+        limiter.acquire();
+        for (int i = 0; i < 60; i++) {
+            long start = limiter.acquire();
+            assertTrue(start != -1);
+            limiter.release(start - RTT, false);
+        }
+        assertEquals(8, limiter.getLimit());
+
+        limiter.release(first, true);
+        assertEquals(7, limiter.getLimit());
+        // Started under the limit before the cut, so it does not cut again
+        limiter.release(second, true);
+        assertEquals(7, limiter.getLimit());
+        limiter.release(limiter.acquire(), true);
+        assertEquals(6, limiter.getLimit());
+    }
+
+    @Test
+    public void testSlowRoundTripCutsLimit() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, 0, 0);
+        Thread.sleep(100);
+        long start = limiter.acquire();
+        limiter.release(start - RTT, false);
+        assertEquals(10, limiter.getLimit());
+        for (int i = 0; i < 5; i++) {
+            start = limiter.acquire();
+            limiter.release(start - 5 * RTT, false);
+        }
+        // The average rises above twice the shortest round trip on the third slow request, later ones started before the cut
+        assertEquals(9, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    public void testComparesRoundTripsPerOperation() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8, 0, 0);
+        // Round trips started after the limiter was created
+        Thread.sleep(500);
+        limiter.acquire();
+        limiter.acquire();
+        limiter.acquire();
+        // Token lookups are fast and payments slow, neither slower than usual
+        for (int i = 0; i < 60; i++) {
+            long start = limiter.acquire();
+            assertTrue(start != -1);
+            if (i % 2 == 0) {
+                limiter.release(Operation.TOKENSTORE, start - RTT, false);
+            } else {
+                limiter.release(Operation.PAYMENT, start - 5 * RTT, false);
+            }
+        }
+        assertEquals(8, limiter.getLimit());
+
+        // Payments slow down
+        for (int i = 0; i < 5; i++) {
+            long start = limiter.acquire();
+            limiter.release(Operation.PAYMENT, start - 20 * RTT, false);
+        }
+        assertEquals(7, limiter.getLimit());
+    }
+
+    @Test
+    public void testClientRefusedOverLimit() throws Exception {
+        System.setProperty(ConfigEnum.BASE_URL_TEST.getValue(), "http://localhost:1");
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            assertNotNull(client.getConcurrencyLimiter());
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 0, 0);
+            client.setConcurrencyLimiter(limiter);
+            limiter.acquire();
+            try {
+                client.getToken("TOKEN_1");
+                fail("Expected ConcurrencyLimitExceededException");
+            } catch (ConcurrencyLimitExceededException e) {
+                assertNotNull(e.terminalDateTime);
+            }
+            assertEquals(1, limiter.getInFlight());
+        } finally {
+            System.clearProperty(ConfigEnum.BASE_URL_TEST.getValue());
+        }
+    }
+}
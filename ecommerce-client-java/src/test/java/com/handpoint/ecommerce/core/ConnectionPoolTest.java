@@ -0,0 +1,57 @@
+package com.handpoint.ecommerce.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import org.apache.http.pool.PoolStats;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that requests reuse the pooled keep-alive connections and that closing a client closes them.
+ */
+public class ConnectionPoolTest {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer(new LocalBixbyServer.Handler() {
+        @Override
+        public void handle(HttpExchange exchange, String body) throws IOException {
+            requests.incrementAndGet();
+            respond(exchange, "<tokenStore><token>TOKEN_1</token></tokenStore>");
+        }
+    });
+
+    @Test
+    public void testSequentialRequestsReuseOneConnection() throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("TOKEN_1", client.getToken("TOKEN_1").getToken());
+        }
+        assertEquals(5, requests.get());
+        PoolStats stats = client.getConnectionPool().getStats(server.getUrl());
+        assertEquals(0, stats.getLeased());
+        assertEquals(1, stats.getAvailable());
+
+        client.close();
+        assertEquals(0, client.getConnectionPool().getStats().getAvailable());
+    }
+
+    @Test
+    public void testDeadlineViewSharesConnections() throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        client.getToken("TOKEN_1");
+        ECommerceClient view = client.withDeadline(Deadline.after(5, TimeUnit.SECONDS));
+        assertSame(client.getConnectionPool(), view.getConnectionPool());
+        view.getToken("TOKEN_1");
+        view.close();
+        assertEquals(1, client.getConnectionPool().getStats().getAvailable());
+        client.close();
+    }
+}
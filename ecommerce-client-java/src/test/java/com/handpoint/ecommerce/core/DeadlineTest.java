@@ -0,0 +1,78 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.DeadlineExceededException;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that requests to a web service that does not answer end at their deadline or operation timeout.
+ */
+public class DeadlineTest {
+
+    private final AtomicInteger received = new AtomicInteger();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer((exchange, body) -> {
+        received.incrementAndGet();
+        LocalBixbyServer.hang(exchange, body);
+    });
+
+    @Test
+    public void testDeadline() throws Exception {
+        Deadline later = Deadline.after(1, TimeUnit.SECONDS);
+        Deadline sooner = Deadline.after(50, TimeUnit.MILLISECONDS);
+        assertFalse(sooner.isExpired());
+        assertTrue(sooner.remaining(TimeUnit.MILLISECONDS) <= 50);
+        assertSame(sooner, later.min(sooner));
+        assertSame(sooner, sooner.min(null));
+        Thread.sleep(60);
+        assertTrue(sooner.isExpired());
+        assertEquals(0, sooner.remainingNanos());
+        assertEquals(1, sooner.remainingTimeoutMillis());
+    }
+
+    @Test
+    public void testReadEndsAtDeadline() throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        long start = System.nanoTime();
+        try {
+            client.withDeadline(Deadline.after(300, TimeUnit.MILLISECONDS)).paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertNotNull(e.terminalDateTime);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, received.get());
+    }
+
+    @Test
+    public void testOperationTimeout() throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        client.getTimeouts().setTimeout(Operation.TOKENSTORE, 300);
+        long start = System.nanoTime();
+        try {
+            client.getToken("TOKEN_1");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertNotNull(e.terminalDateTime);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(2));
+    }
+
+    @Test
+    public void testExpiredDeadlineIsNotSent() throws Exception {
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        try {
+            client.withDeadline(Deadline.after(0, TimeUnit.MILLISECONDS)).getToken("TOKEN_1");
+            fail("Expected DeadlineExceededException");
+        } catch (DeadlineExceededException e) {
+            assertNull(e.getCause());
+        }
+        assertEquals(0, received.get());
+    }
+}
@@ -0,0 +1,197 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.sun.net.httpserver.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.element;
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that queued operations survive an outage of the web service and a restart, and are forwarded in order
+ * whatever the listeners throw.
+ */
+public class ForwardQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer(this::handleRequest);
+
+    private ECommerceClient client;
+    private final List<String> received = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void createClient() {
+        // The web service is down until the tests bring it up
+        LocalBixbyServer.pointClientsNowhere();
+        System.setProperty(ConfigEnum.CIRCUIT_BREAKER_ENABLED.getValue(), "false");
+        client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+    }
+
+    @After
+    public void enableCircuitBreakers() {
+        System.clearProperty(ConfigEnum.CIRCUIT_BREAKER_ENABLED.getValue());
+    }
+
+    private void bringUp() {
+        server.pointClientsHere();
+    }
+
+    private void handleRequest(HttpExchange exchange, String body) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        if (path.endsWith("/reversal/") && element(body, "authorizationGuid") != null) {
+            received.add("reversal " + element(body, "authorizationGuid"));
+            respond(exchange, "<reversal></reversal>");
+        } else if (path.endsWith("/reversal/")) {
+            received.add("reversal " + element(body, "paymentGuid") + " " + element(body, "customerReference"));
+            respond(exchange, "<reversal></reversal>");
+        } else if (path.endsWith("/payment/")) {
+            received.add("capture " + element(body, "authorizationGuid"));
+            respond(exchange, "<payment></payment>");
+        } else {
+            received.add("cancellation");
+            respond(exchange, "<cancellation></cancellation>");
+        }
+    }
+
+    private ForwardQueue open(CountDownLatch forwarded) throws IOException {
+        ForwardQueue queue = new ForwardQueue(folder.getRoot(), cardAcceptor -> client, 100, 50, 200, false);
+        queue.addListener(new ForwardQueue.Listener() {
+            @Override
+            public void onForwarded(ForwardQueue.Entry entry, Object response) {
+                forwarded.countDown();
+            }
+
+            @Override
+            public void onFailed(ForwardQueue.Entry entry, Exception e) {
+            }
+        });
+        return queue;
+    }
+
+    @Test
+    public void testForwardsAfterOutageInOrder() throws Exception {
+        CountDownLatch forwarded = new CountDownLatch(3);
+        ForwardQueue queue = open(forwarded);
+        queue.reversePayment("cardAcceptor", "PG1", "first");
+        queue.cancelPayment("cardAcceptor", Currency.ISK.alpha, "70", "20260101120000000");
+        queue.reversePayment("cardAcceptor", "PG1", "second");
+        Thread.sleep(300);
+        assertEquals(3, queue.getPendingCount());
+        assertTrue(received.isEmpty());
+
+        bringUp();
+        assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(3, received.size());
+        assertEquals("reversal PG1 first", received.get(0));
+        assertEquals("cancellation", received.get(1));
+        assertEquals("reversal PG1 second", received.get(2));
+        queue.close();
+        queue = open(new CountDownLatch(0));
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+    }
+
+    @Test
+    public void testThrowingListenerDoesNotStopForwarding() throws Exception {
+        ForwardQueue queue = new ForwardQueue(folder.getRoot(), cardAcceptor -> client, 100, 50, 200, false);
+        CountDownLatch forwarded = new CountDownLatch(2);
+        queue.addListener(new ForwardQueue.Listener() {
+            @Override
+            public void onForwarded(ForwardQueue.Entry entry, Object response) {
+                throw new IllegalStateException("Listener failed");
+            }
+
+            @Override
+            public void onFailed(ForwardQueue.Entry entry, Exception e) {
+            }
+        });
+        queue.addListener(new ForwardQueue.Listener() {
+            @Override
+            public void onForwarded(ForwardQueue.Entry entry, Object response) {
+                forwarded.countDown();
+            }
+
+            @Override
+            public void onFailed(ForwardQueue.Entry entry, Exception e) {
+            }
+        });
+        bringUp();
+        queue.reversePayment("cardAcceptor", "PG1", "first");
+        queue.reversePayment("cardAcceptor", "PG2", "second");
+        assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+    }
+
+    @Test
+    public void testForwardsAfterRestart() throws Exception {
+        ForwardQueue queue = open(new CountDownLatch(0));
+        queue.reversePayment("cardAcceptor", "PG1", null);
+        queue.deleteToken("cardAcceptor", "TOKEN_1");
+        queue.close();
+
+        bringUp();
+        CountDownLatch forwarded = new CountDownLatch(2);
+        queue = open(forwarded);
+        assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+        assertEquals(0, queue.getPendingCount());
+        queue.close();
+    }
+
+    @Test
+    public void testCaptureIsForwardedBeforeReversalOfItsAuthorization() throws Exception {
+        assertFalse(ForwardQueue.Type.CAPTURE_AUTHORIZATION.isRepeatable());
+        CountDownLatch forwarded = new CountDownLatch(2);
+        ForwardQueue queue = open(forwarded);
+        queue.captureAuthorization("cardAcceptor", Currency.ISK.alpha, "70", "AG1");
+        queue.reverseAuthorization("cardAcceptor", "AG1", null);
+        Thread.sleep(300);
+        assertEquals(2, queue.getPendingCount());
+
+        bringUp();
+        assertTrue(forwarded.await(5, TimeUnit.SECONDS));
+        assertEquals(2, received.size());
+        assertEquals("capture AG1", received.get(0));
+        assertEquals("reversal AG1", received.get(1));
+        queue.close();
+    }
+
+    @Test
+    public void testRefundBeingSentIsNotSentAgain() throws Exception {
+        ForwardQueue queue = open(new CountDownLatch(0));
+        queue.refundPayment("cardAcceptor", Currency.ISK.alpha, "70", "PG1");
+        queue.close();
+        File[] indexes = folder.getRoot().listFiles((dir, name) -> name.endsWith(".index"));
+        assertEquals(1, indexes.length);
+        try (RandomAccessFile index = new RandomAccessFile(indexes[0], "rw")) {
+            // The JVM died while the refund was being sent
+            index.write(2);
+        }
+
+        bringUp();
+        queue = open(new CountDownLatch(0));
+        assertEquals(0, queue.getPendingCount());
+        assertEquals(1, queue.getUnknown().size());
+        assertEquals(ForwardQueue.Type.REFUND_PAYMENT, queue.getUnknown().get(0).getType());
+        assertEquals("PG1", queue.getUnknown().get(0).getTransaction());
+        queue.close();
+        assertTrue(received.isEmpty());
+    }
+}
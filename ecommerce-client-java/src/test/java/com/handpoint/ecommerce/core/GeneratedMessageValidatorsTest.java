@@ -0,0 +1,79 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.payment.AuthorizationRequest;
+import com.handpoint.ecommerce.messages.payment.CancellationRequest;
+import com.handpoint.ecommerce.messages.payment.PaymentRequest;
+import com.handpoint.ecommerce.messages.payment.RefundRequest;
+import com.handpoint.ecommerce.messages.token.TokenRequest;
+import org.junit.Test;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validation;
+import javax.validation.Validator;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests that the generated validators find the same violations, with the same messages, as Hibernate Validator.
+ */
+public class GeneratedMessageValidatorsTest {
+
+    private static final List<Class<?>> MESSAGES = Arrays.<Class<?>>asList(AuthorizationRequest.class, PaymentRequest.class,
+            RefundRequest.class, CancellationRequest.class, TokenRequest.class);
+    private static final String[] VALUES = {null, "", "123", "1234", "12345"};
+
+    private static Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Test
+    public void testSameViolationsAsHibernateValidator() throws Exception {
+        Random random = new Random(42);
+        for (Class<?> messageType : MESSAGES) {
+            for (int i = 0; i < 200; i++) {
+                Object message = messageType.newInstance();
+                for (Method setter : messageType.getMethods()) {
+                    if (setter.getName().startsWith("set") && Arrays.equals(setter.getParameterTypes(), new Class<?>[]{String.class})) {
+                        setter.invoke(message, VALUES[random.nextInt(VALUES.length)]);
+                    }
+                }
+                assertEquals(messageType.getSimpleName(), hibernateViolations(message), generatedViolations(messageType, message));
+            }
+        }
+    }
+
+    @Test
+    public void testValidMessage() throws Exception {
+        TokenRequest tokenRequest = new TokenRequest();
+        tokenRequest.setCardNumber("4222222222222");
+        tokenRequest.setExpiryDateMMYY("1215");
+        assertNull(GeneratedMessageValidators.validate(tokenRequest));
+    }
+
+    private static List<String> hibernateViolations(Object message) {
+        List<String> violations = new ArrayList<>();
+        for (ConstraintViolation<Object> violation : validator.validate(message)) {
+            violations.add(violation.getMessage());
+        }
+        Collections.sort(violations);
+        return violations;
+    }
+
+    private static List<String> generatedViolations(Class<?> messageType, Object message) throws Exception {
+        String result = (String) GeneratedMessageValidators.class.getDeclaredMethod("validate", messageType).invoke(null, message);
+        List<String> violations = new ArrayList<>();
+        if (result != null) {
+            for (String violation : result.split("\n")) {
+                violations.add(violation);
+            }
+            assertEquals('\n', result.charAt(result.length() - 1));
+        }
+        Collections.sort(violations);
+        return violations;
+    }
+}
@@ -0,0 +1,77 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.payment.PaymentRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of keying a new Mac and building the HMAC string for every request, as the HmacFilter used to,
+ * against the HmacSigner. Run with the main method after mvn test-compile; the GC profiler reports the bytes
+ * allocated per signature as gc.alloc.rate.norm.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HmacSignerBenchmark {
+
+    private static final String SHARED_SECRET = "8F10C8AD35B7AEC11675B50DBF6ACEAA0B4EC280B92500E51A02F7BBBE7B07C6";
+    private static final String PATH = "/viscus/cardacceptors/7f6451e8314defbb50d0/payments/";
+    private static final String DATE = "20130301120000000";
+
+    private HmacSigner signer;
+    private byte[] body;
+    private byte[] hex;
+
+    @Setup
+    public void setUp() throws Exception {
+        signer = new HmacSigner(SHARED_SECRET);
+        body = new StaxMessageCodec().encode(PaymentRequest.class,
+                MessageCreator.paymentRequest("WEB", Currency.ISK.alpha, "70.00", null, "4222222222222", "1215", "123", "reference", null));
+        hex = new byte[HmacSigner.HEX_LENGTH];
+    }
+
+    @Benchmark
+    public String signWithNewMac() throws Exception {
+        String toMac = "POST" + PATH + DATE + new String(body);
+        Mac mac = Mac.getInstance(HmacFilter.HMAC_SHA_1);
+        mac.init(new SecretKeySpec(SHARED_SECRET.getBytes(), HmacFilter.HMAC_SHA_1));
+        StringBuilder builder = new StringBuilder();
+        for (byte b : mac.doFinal(toMac.getBytes())) {
+            builder.append((char) HmacFilter.HEX_CHAR_TABLE[(b & 0xFF) >>> 4]).append((char) HmacFilter.HEX_CHAR_TABLE[b & 0xF]);
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public String signWithSigner() {
+        return signer.sign("POST", PATH, DATE, body);
+    }
+
+    @Benchmark
+    public byte[] signWithSignerIntoBuffer() {
+        signer.sign("POST", PATH, DATE, body, hex, 0);
+        return hex;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(HmacSignerBenchmark.class.getSimpleName()).addProfiler(GCProfiler.class).build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package com.handpoint.ecommerce.core;
+
+import org.junit.Test;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the HmacSigner gives the same HMAC as hashing the concatenated HMAC string.
+ */
+public class HmacSignerTest {
+
+    private static final String SHARED_SECRET = "8F10C8AD35B7AEC11675B50DBF6ACEAA0B4EC280B92500E51A02F7BBBE7B07C6";
+    private static final String DATE = "20130301120000000";
+
+    private HmacSigner signer = new HmacSigner(SHARED_SECRET);
+
+    @Test
+    public void testSignWithBody() throws Exception {
+        byte[] body = "<payment><amount>70.00</amount></payment>".getBytes(StandardCharsets.UTF_8);
+        assertEquals(hmac("POST/payments/" + DATE + new String(body, StandardCharsets.UTF_8)), signer.sign("POST", "/payments/", DATE, body));
+    }
+
+    @Test
+    public void testSignWithoutBody() throws Exception {
+        assertEquals(hmac("GET/tokens/TOKEN_1" + DATE), signer.sign("GET", "/tokens/TOKEN_1", DATE, null));
+    }
+
+    @Test
+    public void testSignLongPath() throws Exception {
+        StringBuilder path = new StringBuilder();
+        for (int i = 0; i < 50; i++) {
+            path.append("/segment").append(i);
+        }
+        assertEquals(hmac("DELETE" + path + DATE), signer.sign("DELETE", path.toString(), DATE, null));
+    }
+
+    @Test
+    public void testSignIntoBuffer() throws Exception {
+        byte[] hex = new byte[HmacSigner.HEX_LENGTH + 2];
+        signer.sign("GET", "/tokens/TOKEN_1", DATE, null, hex, 2);
+        assertEquals(hmac("GET/tokens/TOKEN_1" + DATE), new String(hex, 2, HmacSigner.HEX_LENGTH, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testSignFromManyThreads() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        Future<?>[] results = new Future<?>[64];
+        for (int i = 0; i < results.length; i++) {
+            final String path = "/tokens/TOKEN_" + i;
+            results[i] = executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    for (int j = 0; j < 100; j++) {
+                        assertEquals(hmac("GET" + path + DATE), signer.sign("GET", path, DATE, null));
+                    }
+                    return null;
+                }
+            });
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    public void testSignForManySignersInTurn() throws Exception {
+        HmacSigner[] signers = new HmacSigner[12];
+        for (int i = 0; i < signers.length; i++) {
+            signers[i] = new HmacSigner(SHARED_SECRET + i);
+        }
+        // More signers than a thread keeps Macs for, then a few it keeps
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < signers.length; i++) {
+                assertEquals(hmac(SHARED_SECRET + i, "GET/tokens/TOKEN_1" + DATE), signers[i].sign("GET", "/tokens/TOKEN_1", DATE, null));
+            }
+            for (int i = 0; i < 3 * signers.length; i++) {
+                int n = i % 3;
+                assertEquals(hmac(SHARED_SECRET + n, "GET/tokens/TOKEN_" + i + DATE), signers[n].sign("GET", "/tokens/TOKEN_" + i, DATE, null));
+            }
+        }
+    }
+
+    private static String hmac(String toMac) throws Exception {
+        return hmac(SHARED_SECRET, toMac);
+    }
+
+    private static String hmac(String sharedSecret, String toMac) throws Exception {
+        Mac mac = Mac.getInstance(HmacFilter.HMAC_SHA_1);
+        mac.init(new SecretKeySpec(sharedSecret.getBytes(), HmacFilter.HMAC_SHA_1));
+        StringBuilder hex = new StringBuilder();
+        for (byte b : mac.doFinal(toMac.getBytes())) {
+            hex.append(String.format("%02x", b & 0xFF));
+        }
+        return hex.toString();
+    }
+}
@@ -0,0 +1,129 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.payment.Payment;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the idempotency store remembers answers across restarts and that repeated payments are sent once.
+ */
+public class IdempotencyStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer();
+
+    private static Payment payment(String paymentGuid) {
+        Payment payment = new Payment();
+        payment.setPaymentGuid(paymentGuid);
+        payment.setApprovalCode("123456");
+        return payment;
+    }
+
+    @Test
+    public void testRemembersAcrossRestart() throws Exception {
+        File directory = folder.getRoot();
+        IdempotencyStore store = new IdempotencyStore(directory, 1000);
+        assertNull(store.get(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref1", Payment.class));
+        for (int i = 0; i < 500; i++) {
+            assertTrue(store.put(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref" + i, Payment.class, payment("PG" + i)));
+        }
+        assertFalse(store.put(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref1", Payment.class, payment("other")));
+        assertNull(store.get(Environment.TEST, "ca", ECommerceClient.AUTHORIZATION, "ref1", Payment.class));
+        assertNull(store.get(Environment.TEST, "other", ECommerceClient.PAYMENT, "ref1", Payment.class));
+        assertNull(store.get(Environment.LIVE, "ca", ECommerceClient.PAYMENT, "ref1", Payment.class));
+        store.close();
+
+        store = new IdempotencyStore(directory, 10);
+        assertEquals(500, store.size());
+        for (int i = 0; i < 500; i++) {
+            assertEquals("PG" + i, store.get(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref" + i, Payment.class).getPaymentGuid());
+        }
+        assertNull(store.get(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref500", Payment.class));
+        store.close();
+    }
+
+    @Test
+    public void testFullStoreThrows() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(folder.getRoot(), 16);
+        try {
+            for (long i = 0; i < store.getCapacity(); i++) {
+                store.put(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref" + i, Payment.class, payment("PG" + i));
+            }
+            store.put(Environment.TEST, "ca", ECommerceClient.PAYMENT, "full", Payment.class, payment("PG"));
+            fail("Expected IOException");
+        } catch (IOException e) {
+            // Full
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testCoalescesRequestsInFlight() throws Exception {
+        IdempotencyStore store = new IdempotencyStore(folder.getRoot());
+        AtomicInteger sent = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<?>[] futures = new Future<?>[4];
+            for (int i = 0; i < futures.length; i++) {
+                futures[i] = executor.submit(() -> store.execute(Environment.TEST, "ca", ECommerceClient.PAYMENT, "ref", Payment.class,
+                        payment -> payment.getApprovalCode() != null, () -> {
+                            sent.incrementAndGet();
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            return payment("PG1");
+                        }));
+            }
+            Thread.sleep(200);
+            release.countDown();
+            for (Future<?> future : futures) {
+                assertEquals("PG1", ((Payment) future.get(5, TimeUnit.SECONDS)).getPaymentGuid());
+            }
+            assertEquals(1, sent.get());
+        } finally {
+            executor.shutdownNow();
+            store.close();
+        }
+    }
+
+    @Test
+    public void testClientSendsRepeatedPaymentOnce() throws Exception {
+        AtomicInteger payments = new AtomicInteger();
+        server.handle((exchange, body) -> {
+            int n = payments.incrementAndGet();
+            respond(exchange, "<payment><paymentGuid>PG" + n + "</paymentGuid><approvalCode>123456</approvalCode></payment>");
+        });
+        IdempotencyStore store = new IdempotencyStore(folder.getRoot());
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            client.setIdempotencyStore(store);
+            assertEquals("PG1", client.paymentWithToken(Currency.ISK.alpha, "70", "token", "ref").getPaymentGuid());
+            assertEquals("PG1", client.paymentWithToken(Currency.ISK.alpha, "70", "token", "ref").getPaymentGuid());
+            assertEquals("PG2", client.paymentWithToken(Currency.ISK.alpha, "70", "token", "other").getPaymentGuid());
+            assertEquals("PG3", client.paymentWithToken(Currency.ISK.alpha, "70", "token").getPaymentGuid());
+            assertEquals(3, payments.get());
+        } finally {
+            store.close();
+        }
+    }
+}
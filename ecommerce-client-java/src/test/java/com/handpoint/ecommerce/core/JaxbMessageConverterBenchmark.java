@@ -0,0 +1,78 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.payment.Authorization;
+import com.handpoint.ecommerce.messages.payment.AuthorizationRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.Marshaller;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of building a JAXBContext per message, as the converter used to, against the cached
+ * context with per-thread marshallers. Not run by the unit tests, start it with the main method after
+ * mvn test-compile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JaxbMessageConverterBenchmark {
+
+    private JaxbMessageConverter messageConverter;
+    private AuthorizationRequest request;
+    private String response;
+
+    @Setup
+    public void setUp() throws Exception {
+        messageConverter = new JaxbMessageConverter();
+        request = MessageCreator.authorizationRequest("WEB", Currency.ISK.alpha, "70.00", null, "4222222222222", "1215", "123", "reference");
+        response = "<authorization><authorizationGuid>guid</authorizationGuid><amount>70.00</amount><currency>ISK</currency>"
+                + "<cardTypeName>VISA</cardTypeName><maskedCardNumber>422222******2222</maskedCardNumber><approvalCode>123456</approvalCode>"
+                + "<terminalDateTime>20130301120000000</terminalDateTime></authorization>";
+    }
+
+    @Benchmark
+    public String marshalWithContextPerCall() throws Exception {
+        JAXBContext jc = JAXBContext.newInstance(AuthorizationRequest.class);
+        Marshaller m = jc.createMarshaller();
+        m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
+        StringWriter writer = new StringWriter();
+        m.marshal(request, writer);
+        return writer.toString();
+    }
+
+    @Benchmark
+    public String marshalWithCachedContext() throws Exception {
+        return messageConverter.getMessage(AuthorizationRequest.class, request);
+    }
+
+    @Benchmark
+    public Object unmarshalWithContextPerCall() throws Exception {
+        return JAXBContext.newInstance(Authorization.class).createUnmarshaller().unmarshal(new StringReader(response));
+    }
+
+    @Benchmark
+    public Authorization unmarshalWithCachedContext() throws Exception {
+        return messageConverter.convert(Authorization.class, response);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(JaxbMessageConverterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,138 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.rules.ExternalResource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the Handpoint E-Commerce web service. Test environment clients created while the rule is active
+ * send their requests to it, until a test points them elsewhere.
+ */
+public class LocalBixbyServer extends ExternalResource {
+
+    /**
+     * Answers a request, given its body.
+     */
+    public interface Handler {
+        void handle(HttpExchange exchange, String body) throws IOException;
+    }
+
+    /**
+     * Url nothing listens on, requests to it are refused.
+     */
+    public static final String REFUSED_URL = "http://localhost:1";
+
+    private volatile Handler handler;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public LocalBixbyServer() {
+        this(LocalBixbyServer::hang);
+    }
+
+    public LocalBixbyServer(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    protected void before() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                handler.handle(exchange, readFully(exchange.getRequestBody()));
+            }
+        });
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        pointClientsHere();
+    }
+
+    @Override
+    protected void after() {
+        System.clearProperty(ConfigEnum.BASE_URL_TEST.getValue());
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    /**
+     * Replaces the handler of the requests received from now on.
+     */
+    public void handle(Handler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Sends the requests of test environment clients created from now on to this server.
+     */
+    public void pointClientsHere() {
+        System.setProperty(ConfigEnum.BASE_URL_TEST.getValue(), getUrl());
+    }
+
+    /**
+     * Sends the requests of test environment clients created from now on where connections are refused.
+     */
+    public static void pointClientsNowhere() {
+        System.setProperty(ConfigEnum.BASE_URL_TEST.getValue(), REFUSED_URL);
+    }
+
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public static void respond(HttpExchange exchange, String body) throws IOException {
+        respond(exchange, 200, body);
+    }
+
+    public static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().add("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Never answers, the connection is closed after 5 seconds.
+     */
+    public static void hang(HttpExchange exchange, String body) {
+        try {
+            Thread.sleep(5000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        exchange.close();
+    }
+
+    /**
+     * @return the text of the first element with the name, null if there is none
+     */
+    public static String element(String body, String name) {
+        Matcher matcher = Pattern.compile("<" + name + ">([^<]*)</" + name + ">").matcher(body);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), "UTF-8");
+    }
+}
@@ -0,0 +1,108 @@
+package com.handpoint.ecommerce.core;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests lookups in the merchant file and reloading it.
+ */
+public class MerchantRegistryTest {
+
+    private static final int MERCHANTS = 1000;
+
+    private Path directory;
+    private Path file;
+    private MerchantGateway gateway;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("merchants");
+        file = directory.resolve("merchants.csv");
+        write(file, "secret");
+        gateway = new MerchantGateway();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        gateway.shutdown();
+        for (Path path : Files.newDirectoryStream(directory)) {
+            Files.delete(path);
+        }
+        Files.delete(directory);
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        try (MerchantRegistry registry = new MerchantRegistry(file, gateway)) {
+            for (int i = 0; i < MERCHANTS; i += 7) {
+                ECommerceUser user = registry.getUser(cardAcceptor(i));
+                assertEquals(cardAcceptor(i), user.getCardAcceptor());
+                assertEquals("secret" + i, user.getSharedSecret());
+                assertEquals(i % 2 == 0 ? Environment.LIVE : Environment.TEST, user.getEnvironment());
+            }
+            ECommerceClient client = registry.getClient(cardAcceptor(MERCHANTS - 1));
+            assertEquals(cardAcceptor(MERCHANTS - 1), client.getCardAcceptor());
+            assertSame(client, registry.getClient(cardAcceptor(MERCHANTS - 1)));
+            assertNull(registry.getClient("ca"));
+            assertNull(registry.getClient("ca00000"));
+            assertNull(registry.getClient("zz"));
+            assertNull(registry.getClient(""));
+            assertEquals((MERCHANTS - 1) / 7 + 2, registry.getCachedMerchantCount());
+        }
+    }
+
+    @Test
+    public void testReloadRotatesSecret() throws IOException {
+        try (MerchantRegistry registry = new MerchantRegistry(file, gateway)) {
+            ECommerceClient client = registry.getClient(cardAcceptor(5));
+            assertNotNull(client);
+            replace("rotated");
+            registry.reload();
+            assertEquals("rotated5", registry.getUser(cardAcceptor(5)).getSharedSecret());
+            assertSame(client, registry.getClient(cardAcceptor(5)));
+        }
+    }
+
+    @Test
+    public void testWatcherReloads() throws Exception {
+        try (MerchantRegistry registry = new MerchantRegistry(file, gateway, true)) {
+            assertEquals("secret3", registry.getUser(cardAcceptor(3)).getSharedSecret());
+            replace("watched");
+            long deadline = System.currentTimeMillis() + 30000;
+            while (!"watched3".equals(registry.getUser(cardAcceptor(3)).getSharedSecret())
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertEquals("watched3", registry.getUser(cardAcceptor(3)).getSharedSecret());
+        }
+    }
+
+    private void replace(String secretPrefix) throws IOException {
+        Path replacement = directory.resolve("merchants.csv.new");
+        write(replacement, secretPrefix);
+        Files.move(replacement, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(Path path, String secretPrefix) throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < MERCHANTS; i++) {
+            lines.add(cardAcceptor(i) + "," + secretPrefix + i + "," + (i % 2 == 0 ? Environment.LIVE : Environment.TEST));
+        }
+        Files.write(path, lines, StandardCharsets.UTF_8);
+    }
+
+    private static String cardAcceptor(int i) {
+        return String.format("ca%06d", i);
+    }
+}
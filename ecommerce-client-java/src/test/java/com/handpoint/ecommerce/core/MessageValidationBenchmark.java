@@ -0,0 +1,52 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.payment.AuthorizationRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.validation.Validation;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of validating a message with a Hibernate Validator factory built per call, as MessageCreator
+ * used to, against the generated validator. Run with the main method after mvn test-compile.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageValidationBenchmark {
+
+    private AuthorizationRequest request;
+
+    @Setup
+    public void setUp() throws Exception {
+        request = MessageCreator.authorizationRequest("WEB", Currency.ISK.alpha, "70.00", null, "4222222222222", "1215", "123", "reference");
+    }
+
+    @Benchmark
+    public Object validateWithFactoryPerCall() {
+        return Validation.buildDefaultValidatorFactory().getValidator().validate(request);
+    }
+
+    @Benchmark
+    public String validateGenerated() {
+        return GeneratedMessageValidators.validate(request);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(MessageValidationBenchmark.class.getSimpleName()).build()).run();
+    }
+}
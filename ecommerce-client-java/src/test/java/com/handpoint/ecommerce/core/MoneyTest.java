@@ -0,0 +1,101 @@
+package com.handpoint.ecommerce.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests parsing and formatting of amounts and the Currency lookups.
+ */
+public class MoneyTest {
+
+    @Test
+    public void testParse() {
+        assertEquals(7000, Money.parseMinorUnits(Currency.EUR, "70.00"));
+        assertEquals(7000, Money.parseMinorUnits(Currency.EUR, "70"));
+        assertEquals(7050, Money.parseMinorUnits(Currency.EUR, "70.5"));
+        assertEquals(5, Money.parseMinorUnits(Currency.EUR, "0.05"));
+        assertEquals(-1999, Money.parseMinorUnits(Currency.USD, "-19.99"));
+        assertEquals(70, Money.parseMinorUnits(Currency.ISK, "70"));
+        assertEquals(70, Money.parseMinorUnits(Currency.ISK, "70.00"));
+        assertEquals(7000, Money.parseMinorUnits(Currency.EUR, "70.000"));
+        assertEquals(Long.MAX_VALUE, Money.parseMinorUnits(Currency.EUR, "92233720368547758.07"));
+        assertEquals(Long.MIN_VALUE, Money.parseMinorUnits(Currency.EUR, "-92233720368547758.08"));
+        assertEquals(Money.of(Currency.GBP, 1234), Money.parse("GBP", "12.34"));
+    }
+
+    @Test
+    public void testParseInvalid() {
+        String[] invalid = {"", "-", ".", "70.", "70.001", "7a", "70.0.0", "1.0e3", "92233720368547758.08", "70.5",
+                "70.01"};
+        Currency[] currencies = {Currency.EUR, Currency.EUR, Currency.EUR, Currency.EUR, Currency.EUR, Currency.EUR,
+                Currency.EUR, Currency.EUR, Currency.EUR, Currency.ISK, Currency.ISK};
+        for (int i = 0; i < invalid.length; i++) {
+            try {
+                Money.parseMinorUnits(currencies[i], invalid[i]);
+                fail("Expected NumberFormatException for " + invalid[i]);
+            } catch (NumberFormatException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testFormat() {
+        assertEquals("70.00", Money.of(Currency.EUR, 7000).toAmountString());
+        assertEquals("0.05", Money.of(Currency.EUR, 5).toAmountString());
+        assertEquals("0.00", Money.of(Currency.EUR, 0).toAmountString());
+        assertEquals("-19.99", Money.of(Currency.USD, -1999).toAmountString());
+        assertEquals("70.00", Money.of(Currency.ISK, 70).toAmountString());
+        assertEquals("-92233720368547758.08", Money.of(Currency.EUR, Long.MIN_VALUE).toAmountString());
+        assertEquals("70.00 EUR", Money.of(Currency.EUR, 7000).toString());
+
+        StringBuilder out = new StringBuilder("amount=");
+        Money.formatAmount(Currency.SEK, 123456, out);
+        assertEquals("amount=1234.56", out.toString());
+    }
+
+    @Test
+    public void testRoundTrip() {
+        Money amount = Money.parse(Currency.ISK, "70.00");
+        assertEquals(Money.of(Currency.ISK, 70), amount);
+        assertEquals("70.00", amount.toAmountString());
+        assertEquals(amount, Money.parse(Currency.ISK, amount.toAmountString()));
+        assertEquals("-1.00", Money.of(Currency.ISK, -1).toAmountString());
+    }
+
+    @Test
+    public void testArithmetic() {
+        Money amount = Money.of(Currency.EUR, 7000);
+        assertEquals(Money.of(Currency.EUR, 7050), amount.plus(Money.of(Currency.EUR, 50)));
+        assertEquals(Money.of(Currency.EUR, 6950), amount.minus(Money.of(Currency.EUR, 50)));
+        assertTrue(amount.compareTo(Money.of(Currency.EUR, 7001)) < 0);
+        try {
+            amount.plus(Money.of(Currency.USD, 50));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testCurrencyLookup() {
+        for (Currency currency : Currency.values()) {
+            assertSame(currency, Currency.fromValue(currency.alpha));
+            assertSame(currency, Currency.fromId(currency.id));
+        }
+        assertSame(Currency.RUB, Currency.fromValue("RUB"));
+        try {
+            Currency.fromValue("XXX");
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            Currency.fromId(999);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import com.handpoint.ecommerce.core.exceptions.RateLimitExceededException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the TokenBucket and the RateLimiter of card acceptors and operations.
+ */
+public class RateLimiterTest {
+
+    @Test
+    public void testBurstThenRejects() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void testWaitsForNextPermit() throws Exception {
+        TokenBucket bucket = new TokenBucket(100, 1);
+        assertTrue(bucket.tryAcquire());
+        long start = System.nanoTime();
+        assertTrue(bucket.tryAcquire(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+        // The next permit is 10 ms away
+        assertFalse(bucket.tryAcquire(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRateChangesAtRuntime() throws Exception {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire(100, TimeUnit.MILLISECONDS));
+        bucket.setRate(1000, 1);
+        assertTrue(bucket.tryAcquire(100, TimeUnit.MILLISECONDS));
+        bucket.removeRate();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+    }
+
+    @Test
+    public void testGrantsNoMoreThanRateUnderContention() throws Exception {
+        final TokenBucket bucket = new TokenBucket(1, 100);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long start = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            results.add(executor.submit(() -> {
+                int granted = 0;
+                for (int i = 0; i < 10000; i++) {
+                    if (bucket.tryAcquire()) {
+                        granted++;
+                    }
+                }
+                return granted;
+            }));
+        }
+        int granted = 0;
+        for (Future<Integer> result : results) {
+            granted += result.get();
+        }
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+        executor.shutdown();
+        assertTrue(granted >= 100);
+        assertTrue(granted <= 101 + seconds);
+    }
+
+    @Test
+    public void testLimitsPerCardAcceptorAndOperation() throws Exception {
+        RateLimiter limiter = new RateLimiter(50);
+        assertTrue(limiter.tryAcquire("a", Operation.PAYMENT));
+        limiter.setDefaultLimit(Operation.PAYMENT, 1, 2);
+        assertTrue(limiter.tryAcquire("a", Operation.PAYMENT));
+        assertTrue(limiter.tryAcquire("a", Operation.PAYMENT));
+        assertFalse(limiter.tryAcquire("a", Operation.PAYMENT));
+        assertTrue(limiter.tryAcquire("b", Operation.PAYMENT));
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire("a", Operation.REFUND));
+        }
+
+        limiter.setLimit("a", Operation.PAYMENT, 1000, 10);
+        assertTrue(limiter.tryAcquire("a", Operation.PAYMENT));
+        assertEquals(1, limiter.get("b", Operation.PAYMENT).getPermitsPerSecond(), 0);
+        limiter.setDefaultLimit(Operation.PAYMENT, 5, 1);
+        assertEquals(1000, limiter.get("a", Operation.PAYMENT).getPermitsPerSecond(), 0);
+        assertEquals(5, limiter.get("b", Operation.PAYMENT).getPermitsPerSecond(), 0);
+        limiter.removeLimit("a", Operation.PAYMENT);
+        assertEquals(5, limiter.get("a", Operation.PAYMENT).getPermitsPerSecond(), 0);
+        limiter.removeDefaultLimit(Operation.PAYMENT);
+        assertEquals(0, limiter.get("a", Operation.PAYMENT).getPermitsPerSecond(), 0);
+    }
+
+    @Test
+    public void testClientRejectsOverLimit() throws Exception {
+        System.setProperty(ConfigEnum.BASE_URL_TEST.getValue(), "http://localhost:1");
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            client.setRetryPolicy(null);
+            client.getRateLimiter().setLimit("cardAcceptor", Operation.TOKENSTORE, 1, 1);
+            try {
+                client.getToken("TOKEN_1");
+                fail("Expected HpECommerceException");
+            } catch (RateLimitExceededException e) {
+                fail("First request is within the limit");
+            } catch (HpECommerceException e) {
+                // Connection refused
+            }
+            try {
+                client.getToken("TOKEN_1");
+                fail("Expected RateLimitExceededException");
+            } catch (RateLimitExceededException e) {
+                assertNotNull(e.terminalDateTime);
+            }
+        } finally {
+            System.clearProperty(ConfigEnum.BASE_URL_TEST.getValue());
+        }
+    }
+}
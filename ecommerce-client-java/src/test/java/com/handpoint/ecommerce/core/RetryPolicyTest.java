@@ -0,0 +1,103 @@
+package com.handpoint.ecommerce.core;
+
+import com.sun.jersey.api.client.ClientHandlerException;
+import org.junit.Test;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests which failures the RetryPolicy retries, its backoff and its retry budget.
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testIdempotentRequestIsRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 5, 10);
+        FailingRequest request = new FailingRequest(2, new ClientHandlerException(new SocketTimeoutException("Read timed out")));
+        assertEquals("response", policy.execute(true, request));
+        assertEquals(3, request.attempts.get());
+    }
+
+    @Test
+    public void testSentPaymentIsNotRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 5, 10);
+        FailingRequest request = new FailingRequest(1, new ClientHandlerException(new SocketTimeoutException("Read timed out")));
+        try {
+            policy.execute(false, request);
+            fail("Expected ClientHandlerException");
+        } catch (ClientHandlerException e) {
+            assertEquals(1, request.attempts.get());
+        }
+    }
+
+    @Test
+    public void testRefusedPaymentIsRetried() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 5, 10);
+        FailingRequest request = new FailingRequest(1, new ClientHandlerException(new ConnectException("Connection refused")));
+        assertEquals("response", policy.execute(false, request));
+        assertEquals(2, request.attempts.get());
+    }
+
+    @Test
+    public void testAttemptsAreLimited() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 5, 10);
+        FailingRequest request = new FailingRequest(5, new ClientHandlerException(new ConnectException("Connection refused")));
+        try {
+            policy.execute(false, request);
+            fail("Expected ClientHandlerException");
+        } catch (ClientHandlerException e) {
+            assertEquals(3, request.attempts.get());
+        }
+    }
+
+    @Test
+    public void testBudgetLimitsRetries() throws Exception {
+        RetryPolicy policy = new RetryPolicy(2, 0, 0, 10);
+        int attempts = 0;
+        for (int i = 0; i < 100; i++) {
+            FailingRequest request = new FailingRequest(Integer.MAX_VALUE, new ConnectException("Connection refused"));
+            try {
+                policy.execute(true, request);
+            } catch (ConnectException e) {
+                attempts += request.attempts.get();
+            }
+        }
+        // The initial burst of 10 retries, then one retry for every 10 requests
+        assertTrue("attempts " + attempts, attempts >= 100 + 10 + 9 && attempts <= 100 + 10 + 10);
+    }
+
+    @Test
+    public void testDecorrelatedJitter() {
+        RetryPolicy policy = new RetryPolicy(10, 10, 100, 10);
+        long delay = 0;
+        for (int i = 0; i < 1000; i++) {
+            long next = policy.nextDelay(delay);
+            assertTrue(next >= 10 && next <= Math.min(100, Math.max(10, delay * 3)));
+            delay = next;
+        }
+    }
+
+    private static class FailingRequest implements Callable<String> {
+        private final int failures;
+        private final Exception exception;
+        private final AtomicInteger attempts = new AtomicInteger();
+
+        FailingRequest(int failures, Exception exception) {
+            this.failures = failures;
+            this.exception = exception;
+        }
+
+        @Override
+        public String call() throws Exception {
+            if (attempts.incrementAndGet() <= failures) {
+                throw exception;
+            }
+            return "response";
+        }
+    }
+}
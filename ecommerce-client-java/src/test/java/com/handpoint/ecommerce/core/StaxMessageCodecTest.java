@@ -0,0 +1,163 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.messages.ErrorMessage;
+import com.handpoint.ecommerce.messages.payment.*;
+import com.handpoint.ecommerce.messages.token.Token;
+import com.handpoint.ecommerce.messages.token.TokenRequest;
+import org.junit.Test;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trip tests for the StAX codec against the xml written and read by JAXB.
+ */
+public class StaxMessageCodecTest {
+
+    private static final List<Class<?>> MESSAGES = Arrays.<Class<?>>asList(
+            AuthorizationRequest.class, PaymentRequest.class, RefundRequest.class, ReversalRequest.class,
+            CancellationRequest.class, TokenRequest.class, Authorization.class, Payment.class, Refund.class,
+            Reversal.class, Cancellation.class, Token.class);
+
+    private static StaxMessageCodec staxCodec = new StaxMessageCodec();
+    private static JaxbMessageCodec jaxbCodec = new JaxbMessageCodec();
+
+    @Test
+    public void testSupportsAllMessages() {
+        for (Class<?> messageType : MESSAGES) {
+            assertTrue(messageType.getSimpleName(), staxCodec.supports(messageType));
+        }
+        assertTrue(staxCodec.supports(ErrorMessage.class));
+    }
+
+    @Test
+    public void testWritesSameXmlAsJaxb() throws Exception {
+        for (Class<?> messageType : MESSAGES) {
+            assertWritesSameXml(messageType, filled(messageType));
+        }
+        assertWritesSameXml(ErrorMessage.class, errorMessage());
+    }
+
+    @Test
+    public void testWritesSameXmlAsJaxbWithoutNullFields() throws Exception {
+        for (Class<?> messageType : MESSAGES) {
+            assertWritesSameXml(messageType, messageType.newInstance());
+        }
+        AuthorizationRequest request = MessageCreator.authorizationRequest("WEB", Currency.ISK.alpha, "100", "token", null, null, null, null);
+        assertWritesSameXml(AuthorizationRequest.class, request);
+    }
+
+    @Test
+    public void testWritesCompactUtf8() throws Exception {
+        for (MessageCodec codec : Arrays.asList(staxCodec, jaxbCodec)) {
+            byte[] xml = encode(codec, Payment.class, filled(Payment.class));
+            String text = new String(xml, StandardCharsets.UTF_8);
+            assertFalse(text, text.contains(">\n") || text.contains(">  <"));
+            assertTrue(text, text.contains("Amount &lt;&amp;&gt; \"éð\""));
+        }
+    }
+
+    @Test
+    public void testReadsJaxbOutput() throws Exception {
+        for (Class<?> messageType : MESSAGES) {
+            Object message = filled(messageType);
+            assertSameFields(messageType, message, decode(staxCodec, messageType, encode(jaxbCodec, messageType, message)));
+        }
+    }
+
+    @Test
+    public void testJaxbReadsStaxOutput() throws Exception {
+        for (Class<?> messageType : MESSAGES) {
+            Object message = filled(messageType);
+            assertSameFields(messageType, message, decode(jaxbCodec, messageType, encode(staxCodec, messageType, message)));
+        }
+    }
+
+    @Test
+    public void testReadsErrorMessage() throws Exception {
+        byte[] xml = encode(jaxbCodec, ErrorMessage.class, errorMessage());
+        ErrorMessage errorMessage = staxCodec.decode(ErrorMessage.class, new ByteArrayInputStream(xml));
+        assertEquals("Invalid <request> & \"data\"", errorMessage.getReason());
+        assertEquals(Arrays.asList("detail1", "detail2"), errorMessage.getDetails());
+    }
+
+    @Test
+    public void testIgnoresUnknownElements() throws Exception {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<payment>\n  <unknown><nested>x</nested></unknown>\n"
+                + "  <amount>100</amount>\n  <currency>ISK</currency>\n</payment>";
+        Payment payment = staxCodec.decode(Payment.class, new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("100", payment.getAmount());
+        assertEquals("ISK", payment.getCurrency());
+        assertNull(payment.getCustomerReference());
+    }
+
+    private static void assertWritesSameXml(Class<?> messageType, Object message) throws Exception {
+        assertEquals(messageType.getSimpleName(), events(encode(jaxbCodec, messageType, message)),
+                events(encode(staxCodec, messageType, message)));
+    }
+
+    private static void assertSameFields(Class<?> messageType, Object expected, Object actual) throws Exception {
+        for (Method getter : messageType.getMethods()) {
+            if (getter.getName().startsWith("get") && getter.getParameterTypes().length == 0 && getter.getDeclaringClass() != Object.class) {
+                assertEquals(messageType.getSimpleName() + "." + getter.getName(), getter.invoke(expected), getter.invoke(actual));
+            }
+        }
+    }
+
+    /**
+     * Lists the elements and text of an xml document, leaving out whitespace between elements and the xml declaration.
+     */
+    private static List<String> events(byte[] xml) throws Exception {
+        List<String> events = new ArrayList<>();
+        XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(new ByteArrayInputStream(xml));
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                events.add("<" + reader.getLocalName() + ">");
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                events.add("</" + reader.getLocalName() + ">");
+            } else if (event == XMLStreamConstants.CHARACTERS && !reader.isWhiteSpace()) {
+                events.add(reader.getText());
+            }
+        }
+        return events;
+    }
+
+    /**
+     * Creates a message with every field set to a value that needs escaping.
+     */
+    private static Object filled(Class<?> messageType) throws Exception {
+        Object message = messageType.newInstance();
+        for (Method setter : messageType.getMethods()) {
+            if (setter.getName().startsWith("set") && Arrays.equals(setter.getParameterTypes(), new Class<?>[]{String.class})) {
+                setter.invoke(message, setter.getName().substring(3) + " <&> \"éð\"");
+            }
+        }
+        return message;
+    }
+
+    private static ErrorMessage errorMessage() {
+        ErrorMessage errorMessage = new ErrorMessage();
+        errorMessage.setReason("Invalid <request> & \"data\"");
+        errorMessage.setDetails(Arrays.asList("detail1", "detail2"));
+        return errorMessage;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> byte[] encode(MessageCodec codec, Class<T> messageType, Object message) throws Exception {
+        return codec.encode(messageType, (T) message);
+    }
+
+    private static Object decode(MessageCodec codec, Class<?> messageType, byte[] xml) throws Exception {
+        return codec.decode(messageType, new ByteArrayInputStream(xml));
+    }
+}
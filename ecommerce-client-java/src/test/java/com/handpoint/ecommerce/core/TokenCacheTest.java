@@ -0,0 +1,184 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.config.ConfigEnum;
+import com.handpoint.ecommerce.messages.token.Token;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.handpoint.ecommerce.core.LocalBixbyServer.respond;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the token cache evicts and expires tokens, survives a restart when mapped from a file, that the client
+ * answers token lookups from it and that lookups in flight do not cache answers older than an update.
+ */
+public class TokenCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer();
+
+    private static Token token(String maskedCardNumber) {
+        Token token = new Token();
+        token.setMaskedCardNumber(maskedCardNumber);
+        token.setExpiryDateMMYY("1230");
+        token.setCardTypeName("VISA");
+        return token;
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() throws Exception {
+        TokenCache cache = new TokenCache(8, TokenCache.DEFAULT_TTL_MILLIS);
+        assertEquals(8, cache.getCapacity());
+        for (int i = 0; i < 8; i++) {
+            cache.put(Environment.TEST, "ca", "T" + i, token("422222******222" + i));
+        }
+        Token cached = cache.get(Environment.TEST, "ca", "T3");
+        assertEquals("T3", cached.getToken());
+        assertEquals("422222******2223", cached.getMaskedCardNumber());
+        assertEquals("1230", cached.getExpiryDateMMYY());
+        assertEquals("VISA", cached.getCardTypeName());
+        assertNull(cache.get(Environment.TEST, "other", "T3"));
+        assertNull(cache.get(Environment.LIVE, "ca", "T3"));
+
+        cache.put(Environment.TEST, "ca", "T8", token("422222******2228"));
+        int cachedCount = 0;
+        for (int i = 0; i <= 8; i++) {
+            if (cache.get(Environment.TEST, "ca", "T" + i) != null) {
+                cachedCount++;
+            }
+        }
+        assertEquals(8, cachedCount);
+        cache.invalidate(Environment.TEST, "ca", "T8");
+        assertNull(cache.get(Environment.TEST, "ca", "T8"));
+    }
+
+    @Test
+    public void testLookupSentBeforeInvalidationIsNotCached() throws Exception {
+        TokenCache cache = new TokenCache(100, TokenCache.DEFAULT_TTL_MILLIS);
+        long generation = cache.generation(Environment.TEST, "ca", "T1");
+        cache.invalidate(Environment.TEST, "ca", "T1");
+        assertFalse(cache.put(Environment.TEST, "ca", "T1", token("422222******2222"), generation));
+        assertNull(cache.get(Environment.TEST, "ca", "T1"));
+
+        generation = cache.generation(Environment.TEST, "ca", "T1");
+        assertTrue(cache.put(Environment.TEST, "ca", "T1", token("422222******2222"), generation));
+        assertNotNull(cache.get(Environment.TEST, "ca", "T1"));
+    }
+
+    @Test
+    public void testExpires() throws Exception {
+        TokenCache cache = new TokenCache(100, 1000);
+        cache.put(Environment.TEST, "ca", "T1", token("422222******2222"));
+        assertNotNull(cache.get(Environment.TEST, "ca", "T1"));
+        Thread.sleep(2100);
+        assertNull(cache.get(Environment.TEST, "ca", "T1"));
+    }
+
+    @Test
+    public void testSnapshotSurvivesRestart() throws Exception {
+        File file = new File(folder.getRoot(), "tokens");
+        TokenCache cache = new TokenCache(file, 1000, TokenCache.DEFAULT_TTL_MILLIS);
+        cache.put(Environment.TEST, "ca", "T1", token("422222******2222"));
+        Token missing = token(null);
+        missing.setCardTypeName(null);
+        cache.put(Environment.TEST, "ca", "T2", missing);
+        cache.close();
+
+        cache = new TokenCache(file, 1000, TokenCache.DEFAULT_TTL_MILLIS);
+        assertEquals("422222******2222", cache.get(Environment.TEST, "ca", "T1").getMaskedCardNumber());
+        assertNull(cache.get(Environment.TEST, "ca", "T2").getMaskedCardNumber());
+        assertNull(cache.get(Environment.TEST, "ca", "T2").getCardTypeName());
+        cache.close();
+
+        cache = new TokenCache(file, 2000, TokenCache.DEFAULT_TTL_MILLIS);
+        assertNull(cache.get(Environment.TEST, "ca", "T1"));
+        cache.close();
+    }
+
+    @Test
+    public void testClientAnswersLookupsFromCache() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        server.handle((exchange, body) -> {
+            if ("GET".equals(exchange.getRequestMethod())) {
+                lookups.incrementAndGet();
+            }
+            respond(exchange, "<tokenStore><token>TOKEN_1</token><maskedCardNumber>422222******2222</maskedCardNumber>"
+                    + "<expiryDateMMYY>1230</expiryDateMMYY><cardTypeName>VISA</cardTypeName></tokenStore>");
+        });
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        client.setTokenCache(new TokenCache(1000, TimeUnit.MINUTES.toMillis(1)));
+        assertEquals("422222******2222", client.getToken("TOKEN_1").getMaskedCardNumber());
+        assertEquals("422222******2222", client.getToken("TOKEN_1").getMaskedCardNumber());
+        assertEquals(1, lookups.get());
+        assertEquals(1, client.getTokenCache().getHits());
+
+        client.deleteToken("TOKEN_1");
+        client.getToken("TOKEN_1");
+        assertEquals(2, lookups.get());
+    }
+
+    @Test
+    public void testClientsShareConfiguredCache() throws Exception {
+        System.setProperty(ConfigEnum.TOKEN_CACHE_CAPACITY.getValue(), "1000");
+        try {
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            ECommerceClient other = new ECommerceClient("other", "secret", Environment.LIVE);
+            assertNotNull(client.getTokenCache());
+            assertSame(client.getTokenCache(), other.getTokenCache());
+            client.close();
+            other.close();
+        } finally {
+            System.clearProperty(ConfigEnum.TOKEN_CACHE_CAPACITY.getValue());
+        }
+    }
+
+    @Test
+    public void testSlowLookupDoesNotOverwriteUpdate() throws Exception {
+        AtomicInteger lookups = new AtomicInteger();
+        CountDownLatch lookupReceived = new CountDownLatch(1);
+        CountDownLatch answerLookup = new CountDownLatch(1);
+        server.handle((exchange, body) -> {
+            String maskedCardNumber = "422222******2222";
+            if ("GET".equals(exchange.getRequestMethod())) {
+                lookups.incrementAndGet();
+                lookupReceived.countDown();
+                try {
+                    answerLookup.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                maskedCardNumber = "411111******1111";
+            }
+            respond(exchange, "<tokenStore><token>TOKEN_1</token><maskedCardNumber>" + maskedCardNumber
+                    + "</maskedCardNumber><expiryDateMMYY>1230</expiryDateMMYY><cardTypeName>VISA</cardTypeName></tokenStore>");
+        });
+        ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+        client.setTokenCache(new TokenCache(1000, TimeUnit.MINUTES.toMillis(1)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Token> slow = executor.submit(() -> client.getToken("TOKEN_1"));
+            assertTrue(lookupReceived.await(5, TimeUnit.SECONDS));
+            assertEquals("422222******2222", client.updateToken("TOKEN_1", "4222222222222", "1230").getMaskedCardNumber());
+            answerLookup.countDown();
+            assertEquals("411111******1111", slow.get(5, TimeUnit.SECONDS).getMaskedCardNumber());
+
+            assertEquals("422222******2222", client.getToken("TOKEN_1").getMaskedCardNumber());
+            assertEquals(1, lookups.get());
+        } finally {
+            executor.shutdownNow();
+            client.close();
+        }
+    }
+}
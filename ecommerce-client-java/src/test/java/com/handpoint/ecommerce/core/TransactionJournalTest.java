@@ -0,0 +1,137 @@
+package com.handpoint.ecommerce.core;
+
+import com.handpoint.ecommerce.core.exceptions.DeadlineExceededException;
+import com.handpoint.ecommerce.core.exceptions.HpECommerceException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the transaction journal recovers the transactions left unresolved, and that the client journals them.
+ */
+public class TransactionJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public LocalBixbyServer server = new LocalBixbyServer();
+
+    @Test
+    public void testRecoversUnresolved() throws Exception {
+        File file = new File(folder.getRoot(), "journal");
+        TransactionJournal journal = new TransactionJournal(file);
+        long paid = journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "70", "20260101120000000", "ref1");
+        long lost = journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "80", "20260101120000001", "ref2");
+        long refunded = journal.begin(ECommerceClient.REFUND, "ca", "ISK", "90", "20260101120000002", null);
+        journal.complete(paid, TransactionJournal.ANSWERED);
+        assertTrue(journal.resolve("ca", ECommerceClient.REFUND, "20260101120000002", TransactionJournal.CANCELLED));
+        assertEquals(1, journal.getUnresolved().size());
+        journal.close();
+
+        journal = new TransactionJournal(file);
+        List<TransactionJournal.Entry> recovered = journal.getRecovered();
+        assertEquals(1, recovered.size());
+        TransactionJournal.Entry entry = recovered.get(0);
+        assertEquals(lost, entry.getId());
+        assertEquals("80", entry.getAmount());
+        assertEquals("20260101120000001", entry.getTerminalDateTime());
+        assertEquals("ref2", entry.getCustomerReference());
+        assertTrue(journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "70", "20260101120000003", null) > refunded);
+        journal.complete(entry.getId(), TransactionJournal.CANCELLED);
+        assertEquals(1, journal.getUnresolved().size());
+        journal.close();
+    }
+
+    @Test
+    public void testTornRecordEndsJournal() throws Exception {
+        File file = new File(folder.getRoot(), "journal");
+        TransactionJournal journal = new TransactionJournal(file);
+        journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "70", "20260101120000000", null);
+        journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "80", "20260101120000001", null);
+        journal.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            // Corrupt the amount of the second record
+            int first = raf.readInt();
+            long amount = 8 + first + 8 + 1 + 8 + 8 + 2 + ECommerceClient.PAYMENT.length() + 2 + 2 + 2 + 3 + 2;
+            raf.seek(amount);
+            raf.write('9');
+        }
+        journal = new TransactionJournal(file);
+        assertEquals(1, journal.getRecovered().size());
+        assertEquals("70", journal.getRecovered().get(0).getAmount());
+        journal.close();
+    }
+
+    @Test
+    public void testCompactsWhenFull() throws Exception {
+        File file = new File(folder.getRoot(), "journal");
+        TransactionJournal journal = new TransactionJournal(file, 1024, true);
+        journal.begin(ECommerceClient.AUTHORIZATION, "ca", "ISK", "1", "20260101120000000", null);
+        for (int i = 0; i < 100; i++) {
+            long id = journal.begin(ECommerceClient.PAYMENT, "ca", "ISK", "70", "2026010112000" + i, null);
+            journal.complete(id, TransactionJournal.ANSWERED);
+        }
+        journal.close();
+        assertEquals(1024, file.length());
+        journal = new TransactionJournal(file, 1024, true);
+        assertEquals(1, journal.getRecovered().size());
+        assertEquals(ECommerceClient.AUTHORIZATION, journal.getRecovered().get(0).getTransactionType());
+        journal.close();
+    }
+
+    @Test(expected = IOException.class)
+    public void testFileOpenOnce() throws Exception {
+        File file = new File(folder.getRoot(), "journal");
+        TransactionJournal journal = new TransactionJournal(file);
+        try {
+            new TransactionJournal(file);
+        } finally {
+            journal.close();
+        }
+    }
+
+    @Test
+    public void testClientJournalsPayments() throws Exception {
+        TransactionJournal journal = new TransactionJournal(new File(folder.getRoot(), "journal"));
+        try {
+            LocalBixbyServer.pointClientsNowhere();
+            ECommerceClient client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            client.setTransactionJournal(journal);
+            try {
+                client.paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+                fail("Expected HpECommerceException");
+            } catch (HpECommerceException e) {
+                // Connection refused, the payment was not sent
+            }
+            assertTrue(journal.getUnresolved().isEmpty());
+
+            server.pointClientsHere();
+            client = new ECommerceClient("cardAcceptor", "secret", Environment.TEST);
+            client.setTransactionJournal(journal);
+            String terminalDateTime = null;
+            try {
+                client.withDeadline(Deadline.after(300, TimeUnit.MILLISECONDS)).paymentWithToken(Currency.ISK.alpha, "70", "token", "ref");
+                fail("Expected DeadlineExceededException");
+            } catch (DeadlineExceededException e) {
+                terminalDateTime = e.terminalDateTime;
+            }
+            List<TransactionJournal.Entry> unresolved = journal.getUnresolved();
+            assertEquals(1, unresolved.size());
+            assertEquals(ECommerceClient.PAYMENT, unresolved.get(0).getTransactionType());
+            assertEquals("cardAcceptor", unresolved.get(0).getCardAcceptor());
+            assertEquals(terminalDateTime, unresolved.get(0).getTerminalDateTime());
+            assertEquals("ref", unresolved.get(0).getCustomerReference());
+        } finally {
+            journal.close();
+        }
+    }
+}
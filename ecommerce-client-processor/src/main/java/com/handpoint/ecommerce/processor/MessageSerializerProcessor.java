@@ -0,0 +1,432 @@
+package com.handpoint.ecommerce.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.beans.Introspector;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Generates xml serializers and validators for the JAXB annotated message classes of the E-Commerce client.
+ * <p/>
+ * Every class annotated with XmlRootElement in com.handpoint.ecommerce.messages gets a serializer that writes and
+ * reads its fields one by one through their getters and setters, in the order JAXB writes them. The serializers are
+ * generated as nested classes of com.handpoint.ecommerce.core.GeneratedMessageSerializers, so adding a field to a
+ * message class updates its serializer on the next build.
+ * <p/>
+ * Supported fields are Strings, written as elements, and Lists of Strings with an XmlElementWrapper. Any other
+ * mapping is reported as a compile error.
+ * <p/>
+ * The NotNull and Size constraints of the message fields are compiled into a validate method per message class in
+ * com.handpoint.ecommerce.core.GeneratedMessageValidators, giving the same messages as Hibernate Validator without
+ * bootstrapping it. Other bean validation constraints are reported as a compile error.
+ */
+@SupportedAnnotationTypes(MessageSerializerProcessor.XML_ROOT_ELEMENT)
+public class MessageSerializerProcessor extends AbstractProcessor {
+
+    static final String XML_ROOT_ELEMENT = "javax.xml.bind.annotation.XmlRootElement";
+    static final String XML_ELEMENT = "javax.xml.bind.annotation.XmlElement";
+    static final String XML_ELEMENT_WRAPPER = "javax.xml.bind.annotation.XmlElementWrapper";
+    static final String XML_TRANSIENT = "javax.xml.bind.annotation.XmlTransient";
+    static final String CONSTRAINTS_PACKAGE = "javax.validation.constraints";
+    static final String NOT_NULL = CONSTRAINTS_PACKAGE + ".NotNull";
+    static final String SIZE = CONSTRAINTS_PACKAGE + ".Size";
+
+    static final String MESSAGES_PACKAGE = "com.handpoint.ecommerce.messages";
+    static final String SERIALIZERS_PACKAGE = "com.handpoint.ecommerce.core";
+    static final String SERIALIZERS_CLASS = "GeneratedMessageSerializers";
+    static final String VALIDATORS_CLASS = "GeneratedMessageValidators";
+
+    private static final String JAXB_DEFAULT = "##default";
+
+    private final Set<String> serializerNames = new HashSet<>();
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (generated || annotations.isEmpty()) {
+            return false;
+        }
+        List<TypeElement> messages = new ArrayList<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(processingEnv.getElementUtils().getTypeElement(XML_ROOT_ELEMENT))) {
+            if (element.getKind() == ElementKind.CLASS
+                    && processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString().startsWith(MESSAGES_PACKAGE)) {
+                messages.add((TypeElement) element);
+            }
+        }
+        if (messages.isEmpty()) {
+            return false;
+        }
+        messages.sort(Comparator.comparing(message -> message.getQualifiedName().toString()));
+
+        List<Message> models = new ArrayList<>();
+        boolean valid = true;
+        for (TypeElement message : messages) {
+            Message model = readMessage(message);
+            if (model == null) {
+                valid = false;
+            } else {
+                models.add(model);
+            }
+        }
+        generated = true;
+        if (valid) {
+            writeSerializers(models, messages);
+            writeValidators(models, messages);
+        }
+        return false;
+    }
+
+    /**
+     * Reads the xml mapping of a message class.
+     *
+     * @return the message model or null if the class has a mapping that is not supported
+     */
+    private Message readMessage(TypeElement type) {
+        String qualifiedName = type.getQualifiedName().toString();
+        Message message = new Message(qualifiedName, uniqueName(type.getSimpleName().toString()), rootElementName(type));
+        boolean valid = true;
+        for (TypeElement current : hierarchy(type)) {
+            for (Element member : current.getEnclosedElements()) {
+                if (member.getKind() != ElementKind.FIELD || member.getModifiers().contains(Modifier.STATIC)
+                        || member.getModifiers().contains(Modifier.TRANSIENT) || getAnnotation(member, XML_TRANSIENT) != null) {
+                    continue;
+                }
+                Field field = readField(type, (VariableElement) member);
+                if (field == null) {
+                    valid = false;
+                } else {
+                    message.fields.add(field);
+                }
+            }
+        }
+        return valid ? message : null;
+    }
+
+    private Field readField(TypeElement type, VariableElement member) {
+        String name = member.getSimpleName().toString();
+        String accessor = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        String element = annotationValue(getAnnotation(member, XML_ELEMENT), "name", name);
+        TypeMirror fieldType = member.asType();
+        boolean list;
+        String wrapper = null;
+        if (isString(fieldType)) {
+            list = false;
+        } else if (isStringList(fieldType) && getAnnotation(member, XML_ELEMENT_WRAPPER) != null) {
+            list = true;
+            wrapper = annotationValue(getAnnotation(member, XML_ELEMENT_WRAPPER), "name", name);
+        } else {
+            error(member, "Field type " + fieldType + " is not supported, use String or a List<String> with @XmlElementWrapper");
+            return null;
+        }
+        if (!hasMethod(type, "get" + accessor, 0) || !hasMethod(type, "set" + accessor, 1)) {
+            error(member, "Field " + name + " needs public get" + accessor + " and set" + accessor + " methods");
+            return null;
+        }
+        Field field = new Field(element, wrapper, accessor, list);
+        return readConstraints(member, field) ? field : null;
+    }
+
+    /**
+     * Reads the bean validation constraints of a field, in the order they are declared.
+     *
+     * @return false if the field has a constraint that is not supported
+     */
+    private boolean readConstraints(VariableElement member, Field field) {
+        String value = "message.get" + field.accessor + "()";
+        for (AnnotationMirror annotation : member.getAnnotationMirrors()) {
+            String annotationType = annotation.getAnnotationType().toString();
+            if (annotationType.equals(NOT_NULL)) {
+                field.constraints.add(new Constraint(value + " == null", annotationValue(annotation, "message", "may not be null")));
+            } else if (annotationType.equals(SIZE) && !field.list) {
+                int min = Integer.parseInt(annotationValue(annotation, "min", "0"));
+                int max = Integer.parseInt(annotationValue(annotation, "max", String.valueOf(Integer.MAX_VALUE)));
+                List<String> checks = new ArrayList<>();
+                if (min > 0) {
+                    checks.add(value + ".length() < " + min);
+                }
+                if (max < Integer.MAX_VALUE) {
+                    checks.add(value + ".length() > " + max);
+                }
+                if (!checks.isEmpty()) {
+                    String message = annotationValue(annotation, "message", "size must be between {min} and {max}")
+                            .replace("{min}", String.valueOf(min)).replace("{max}", String.valueOf(max));
+                    field.constraints.add(new Constraint(value + " != null && (" + String.join(" || ", checks) + ")", message));
+                }
+            } else if (annotationType.startsWith(CONSTRAINTS_PACKAGE + ".")) {
+                error(member, "Constraint " + annotationType + " is not supported by the generated validators");
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeSerializers(List<Message> messages, List<TypeElement> originatingElements) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(SERIALIZERS_PACKAGE).append(";\n\n")
+                .append("import javax.annotation.Generated;\n")
+                .append("import javax.xml.stream.XMLStreamException;\n")
+                .append("import javax.xml.stream.XMLStreamReader;\n")
+                .append("import javax.xml.stream.XMLStreamWriter;\n")
+                .append("import java.util.Arrays;\n")
+                .append("import java.util.Collections;\n")
+                .append("import java.util.List;\n\n")
+                .append("/**\n")
+                .append(" * Serializers for the messages in ").append(MESSAGES_PACKAGE).append(", generated from their JAXB annotations.\n")
+                .append(" */\n")
+                .append("@Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("final class ").append(SERIALIZERS_CLASS).append(" {\n\n")
+                .append("    static final List<MessageSerializer<?>> SERIALIZERS = Collections.unmodifiableList(Arrays.<MessageSerializer<?>>asList(");
+        for (int i = 0; i < messages.size(); i++) {
+            source.append(i == 0 ? "\n" : ",\n").append("            new ").append(messages.get(i).serializerName).append("()");
+        }
+        source.append("));\n\n")
+                .append("    private ").append(SERIALIZERS_CLASS).append("() {\n    }\n");
+        for (Message message : messages) {
+            writeSerializer(source, message);
+        }
+        source.append("}\n");
+        createSourceFile(SERIALIZERS_CLASS, source, originatingElements);
+    }
+
+    /**
+     * Writes a static validate method for every message class with constraints. Each returns the messages of the
+     * violated constraints, each followed by a newline, or null if the message is valid.
+     */
+    private void writeValidators(List<Message> messages, List<TypeElement> originatingElements) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(SERIALIZERS_PACKAGE).append(";\n\n")
+                .append("import javax.annotation.Generated;\n\n")
+                .append("/**\n")
+                .append(" * Validators for the messages in ").append(MESSAGES_PACKAGE).append(", generated from their bean validation constraints.\n")
+                .append(" */\n")
+                .append("@Generated(\"").append(getClass().getName()).append("\")\n")
+                .append("final class ").append(VALIDATORS_CLASS).append(" {\n\n")
+                .append("    private ").append(VALIDATORS_CLASS).append("() {\n    }\n");
+        for (Message message : messages) {
+            boolean constrained = false;
+            for (Field field : message.fields) {
+                constrained |= !field.constraints.isEmpty();
+            }
+            if (!constrained) {
+                continue;
+            }
+            source.append("\n    static String validate(").append(message.type).append(" message) {\n")
+                    .append("        StringBuilder violations = null;\n");
+            for (Field field : message.fields) {
+                for (Constraint constraint : field.constraints) {
+                    source.append("        if (").append(constraint.condition).append(") {\n")
+                            .append("            violations = violation(violations, ").append(literal(constraint.message)).append(");\n")
+                            .append("        }\n");
+                }
+            }
+            source.append("        return violations == null ? null : violations.toString();\n")
+                    .append("    }\n");
+        }
+        source.append("\n    private static StringBuilder violation(StringBuilder violations, String message) {\n")
+                .append("        return (violations == null ? new StringBuilder() : violations).append(message).append('\\n');\n")
+                .append("    }\n")
+                .append("}\n");
+        createSourceFile(VALIDATORS_CLASS, source, originatingElements);
+    }
+
+    private void createSourceFile(String className, StringBuilder source, List<TypeElement> originatingElements) {
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(SERIALIZERS_PACKAGE + "." + className,
+                    originatingElements.toArray(new Element[originatingElements.size()]));
+            try (Writer writer = file.openWriter()) {
+                writer.write(source.toString());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + className + ": " + e);
+        }
+    }
+
+    private static void writeSerializer(StringBuilder source, Message message) {
+        String type = message.type;
+        source.append("\n    private static final class ").append(message.serializerName)
+                .append(" extends MessageSerializer<").append(type).append("> {\n\n")
+                .append("        ").append(message.serializerName).append("() {\n")
+                .append("            super(").append(type).append(".class, \"").append(message.rootElement).append("\");\n")
+                .append("        }\n\n")
+                .append("        @Override\n")
+                .append("        protected ").append(type).append(" newMessage() {\n")
+                .append("            return new ").append(type).append("();\n")
+                .append("        }\n\n")
+                .append("        @Override\n")
+                .append("        protected void writeFields(").append(type).append(" message, XMLStreamWriter writer) throws XMLStreamException {\n");
+        for (Field field : message.fields) {
+            if (field.list) {
+                source.append("            writeList(writer, \"").append(field.wrapper).append("\", \"").append(field.element)
+                        .append("\", message.get").append(field.accessor).append("());\n");
+            } else {
+                source.append("            writeElement(writer, \"").append(field.element)
+                        .append("\", message.get").append(field.accessor).append("());\n");
+            }
+        }
+        source.append("        }\n\n")
+                .append("        @Override\n")
+                .append("        protected boolean readField(").append(type).append(" message, String element, XMLStreamReader reader) throws XMLStreamException {\n")
+                .append("            switch (element) {\n");
+        for (Field field : message.fields) {
+            if (field.list) {
+                source.append("                case \"").append(field.wrapper).append("\":\n")
+                        .append("                    message.set").append(field.accessor).append("(readList(reader, \"").append(field.element).append("\"));\n");
+            } else {
+                source.append("                case \"").append(field.element).append("\":\n")
+                        .append("                    message.set").append(field.accessor).append("(reader.getElementText());\n");
+            }
+            source.append("                    return true;\n");
+        }
+        source.append("                default:\n")
+                .append("                    return false;\n")
+                .append("            }\n")
+                .append("        }\n")
+                .append("    }\n");
+    }
+
+    /**
+     * @return the class and its mapped superclasses, superclasses first as JAXB writes their fields first
+     */
+    private List<TypeElement> hierarchy(TypeElement type) {
+        List<TypeElement> hierarchy = new ArrayList<>();
+        TypeElement current = type;
+        while (current != null && !current.getQualifiedName().contentEquals(Object.class.getName())) {
+            if (getAnnotation(current, XML_TRANSIENT) == null) {
+                hierarchy.add(0, current);
+            }
+            TypeMirror superclass = current.getSuperclass();
+            current = superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+        }
+        return hierarchy;
+    }
+
+    private String rootElementName(TypeElement type) {
+        String name = annotationValue(getAnnotation(type, XML_ROOT_ELEMENT), "name", null);
+        return name != null ? name : Introspector.decapitalize(type.getSimpleName().toString());
+    }
+
+    private String uniqueName(String simpleName) {
+        String name = simpleName + "Serializer";
+        for (int i = 2; !serializerNames.add(name); i++) {
+            name = simpleName + "Serializer" + i;
+        }
+        return name;
+    }
+
+    private boolean hasMethod(TypeElement type, String name, int parameters) {
+        for (Element member : processingEnv.getElementUtils().getAllMembers(type)) {
+            if (member.getKind() == ElementKind.METHOD && member.getSimpleName().contentEquals(name)
+                    && member.getModifiers().contains(Modifier.PUBLIC)
+                    && ((ExecutableElement) member).getParameters().size() == parameters) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isString(TypeMirror type) {
+        return type.toString().equals(String.class.getName());
+    }
+
+    private boolean isStringList(TypeMirror type) {
+        return type.toString().equals("java.util.List<java.lang.String>");
+    }
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (annotation.getAnnotationType().toString().equals(annotationType)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the value of the annotation attribute, or defaultValue if it is not set or set to the JAXB default
+     */
+    private static String annotationValue(AnnotationMirror annotation, String attribute, String defaultValue) {
+        if (annotation == null) {
+            return defaultValue;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                String value = String.valueOf(entry.getValue().getValue());
+                return value.isEmpty() || JAXB_DEFAULT.equals(value) ? defaultValue : value;
+            }
+        }
+        return defaultValue;
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"";
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private static final class Message {
+        final String type;
+        final String serializerName;
+        final String rootElement;
+        final List<Field> fields = new ArrayList<>();
+
+        Message(String type, String serializerName, String rootElement) {
+            this.type = type;
+            this.serializerName = serializerName;
+            this.rootElement = rootElement;
+        }
+    }
+
+    private static final class Field {
+        final String element;
+        final String wrapper;
+        final String accessor;
+        final boolean list;
+        final List<Constraint> constraints = new ArrayList<>();
+
+        Field(String element, String wrapper, String accessor, boolean list) {
+            this.element = element;
+            this.wrapper = wrapper;
+            this.accessor = accessor;
+            this.list = list;
+        }
+    }
+
+    private static final class Constraint {
+        final String condition;
+        final String message;
+
+        Constraint(String condition, String message) {
+            this.condition = condition;
+            this.message = message;
+        }
+    }
+}